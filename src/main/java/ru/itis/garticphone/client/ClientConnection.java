@@ -1,31 +1,135 @@
 package ru.itis.garticphone.client;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import ru.itis.garticphone.common.JsonMessageConnection;
 import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 public class ClientConnection implements Closeable {
-    private final Socket socket;
-    private final JsonMessageConnection connection;
+    private final String host;
+    private volatile int port;
+    private volatile JsonMessageConnection connection;
+    private volatile String sessionToken;
+    private volatile long receivedFrames;
+    // Сколько строк текущей пачки зрителя ещё впереди; пишет только поток чтения
+    private int spectatorFrames;
+    private Consumer<Message> handler;
+    private Consumer<Message> rejectionHandler = message -> { };
+    private final AtomicLong nextSeq = new AtomicLong(1);
+    private final Map<Long, Message> pending = new ConcurrentHashMap<>();
+    private volatile LatencyCollector latency;
+    // Пишут поток пользователя, тикер StrokeBuffer и поток чтения (PONG): кадр уходит в сокет целиком
+    private final Object writeLock = new Object();
 
     public ClientConnection(String host, int port) throws IOException {
-        this.socket = new Socket(host, port);
-        this.connection = new JsonMessageConnection(socket);
+        this.host = host;
+        this.port = port;
+        this.connection = new JsonMessageConnection(new Socket(host, port));
     }
 
     public void send(Message message) throws IOException {
-        connection.send(message);
+        trace(message);
+        write(connection, message);
+    }
+
+    private void write(JsonMessageConnection target, Message message) throws IOException {
+        synchronized (writeLock) {
+            target.send(message);
+        }
+    }
+
+    // Трассу возвращают только пересылаемые сообщения: DRAW и CHAT
+    private void trace(Message message) {
+        LatencyCollector collector = latency;
+        if (collector == null || (message.getType() != MessageType.DRAW && message.getType() != MessageType.CHAT)) {
+            return;
+        }
+        message.setTrace(collector.sample(System.nanoTime()));
+    }
+
+    // null выключает трассировку; без неё сообщения не несут лишних полей
+    public void setTracing(LatencyCollector latency) {
+        this.latency = latency;
+    }
+
+    public LatencyCollector getLatency() {
+        return latency;
+    }
+
+    // Рисунок и чат показываются сразу, сервер вместо копии отвечает ACK или ERROR с тем же seq
+    public void sendEchoed(Message message) throws IOException {
+        long seq = nextSeq.getAndIncrement();
+        message.setSeq(seq);
+        pending.put(seq, message);
+        trace(message);
+        if (handler != null) {
+            handler.accept(message);
+        }
+        try {
+            write(connection, message);
+        } catch (IOException e) {
+            pending.remove(seq);
+            throw e;
+        }
+    }
+
+    public void setRejectionHandler(Consumer<Message> rejectionHandler) {
+        this.rejectionHandler = rejectionHandler;
     }
 
     public void startListening(Consumer<Message> handler) {
+        this.handler = handler;
+        listen(connection);
+    }
+
+    private void listen(JsonMessageConnection source) {
         Thread t = new Thread(() -> {
             try {
                 Message msg;
-                while ((msg = connection.receive()) != null) {
+                while ((msg = source.receive()) != null) {
+                    LatencyCollector collector = latency;
+                    if (collector != null && msg.getTrace() != null) {
+                        collector.record(msg.getTrace(), System.nanoTime());
+                    }
+                    if (msg.getType() == MessageType.SPECTATE) {
+                        spectatorFrames = JsonParser.parseString(msg.getPayload()).getAsJsonObject()
+                                .get("frames").getAsInt();
+                        continue;
+                    }
+                    if (spectatorFrames > 0) {
+                        spectatorFrames--;
+                    } else if (msg.getType() == MessageType.SESSION) {
+                        sessionToken = msg.getPayload();
+                    } else if (isSequenced(msg.getType())) {
+                        receivedFrames++;
+                    }
+                    if (msg.getType() == MessageType.PING) {
+                        write(source, new Message(MessageType.PONG, 0, 0, null, null));
+                        continue;
+                    }
+                    if (msg.getType() == MessageType.REDIRECT) {
+                        follow(msg);
+                        return;
+                    }
+                    if (msg.getType() == MessageType.ACK) {
+                        pending.remove(msg.getSeq());
+                        continue;
+                    }
+                    if (msg.getType() == MessageType.ERROR && msg.getSeq() != null) {
+                        Message rejected = pending.remove(msg.getSeq());
+                        if (rejected != null) {
+                            rejectionHandler.accept(rejected);
+                        }
+                    }
                     handler.accept(msg);
                 }
             } catch (Exception ignored) {
@@ -35,6 +139,66 @@ public class ClientConnection implements Closeable {
         t.start();
     }
 
+    // Кадры вне нумерации сервера: их нет в буфере повтора, и lastSeq их не учитывает
+    private static boolean isSequenced(MessageType type) {
+        return type != MessageType.REDIRECT && type != MessageType.GALLERY && type != MessageType.REPLAY;
+    }
+
+    // Сервер уходит на обновление: с токеном сессия продолжается на новом процессе,
+    // без токена соединение просто открывается заново, а REDIRECT передаётся обработчику
+    private void follow(Message redirect) throws IOException {
+        JsonObject data = JsonParser.parseString(redirect.getPayload()).getAsJsonObject();
+        port = data.get("port").getAsInt();
+        if (data.has("token")) {
+            sessionToken = data.get("token").getAsString();
+            resume();
+            return;
+        }
+        JsonMessageConnection old = connection;
+        connection = new JsonMessageConnection(new Socket(host, port));
+        try {
+            old.close();
+        } catch (IOException ignored) {
+        }
+        listen(connection);
+        handler.accept(redirect);
+    }
+
+    // Переподключение к той же сессии: сервер дошлёт кадры после lastSeq
+    public void resume() throws IOException {
+        if (sessionToken == null) {
+            throw new IOException("Session token is not received yet");
+        }
+        JsonMessageConnection old = connection;
+        try {
+            old.close();
+        } catch (IOException ignored) {
+        }
+
+        JsonMessageConnection fresh = new JsonMessageConnection(new Socket(host, port));
+        JsonObject data = new JsonObject();
+        data.addProperty("token", sessionToken);
+        data.addProperty("lastSeq", receivedFrames);
+        write(fresh, new Message(MessageType.RESUME, 0, 0, null, data.toString()));
+
+        connection = fresh;
+        if (handler != null) {
+            listen(fresh);
+        }
+    }
+
+    public String getSessionToken() {
+        return sessionToken;
+    }
+
+    public long getReceivedFrames() {
+        return receivedFrames;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
     @Override
     public void close() throws IOException {
         connection.close();
@@ -0,0 +1,99 @@
+package ru.itis.garticphone.client;
+
+import ru.itis.garticphone.common.Trace;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Распределения задержек по участкам пути сообщения; корзины — степени двойки в микросекундах
+public class LatencyCollector {
+    private static final int BUCKETS = 40;
+
+    public enum Hop {
+        // Сеть в обе стороны: полный круг минус время внутри сервера
+        NETWORK,
+        // От разбора кадра в ClientHandler до конца обработки в GameService
+        HANDLER,
+        // От конца обработки до записи в сокет: очередь игрока и блокировка записи
+        OUTBOUND,
+        // Полный круг на часах клиента
+        TOTAL
+    }
+
+    private final double sampleRate;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<Hop, AtomicLongArray> histograms = new EnumMap<>(Hop.class);
+    private final Map<Hop, AtomicLong> counts = new EnumMap<>(Hop.class);
+
+    public LatencyCollector(double sampleRate) {
+        this.sampleRate = sampleRate;
+        for (Hop hop : Hop.values()) {
+            histograms.put(hop, new AtomicLongArray(BUCKETS));
+            counts.put(hop, new AtomicLong());
+        }
+    }
+
+    // null — сообщение не попало в выборку и уходит без трассы
+    public Trace sample(long now) {
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return null;
+        }
+        return new Trace(nextId.getAndIncrement(), now);
+    }
+
+    public void record(Trace trace, long now) {
+        if (trace.getReceived() == 0 || trace.getWritten() == 0) {
+            return;
+        }
+        long total = now - trace.getSent();
+        long server = trace.getWritten() - trace.getReceived();
+        add(Hop.TOTAL, total);
+        add(Hop.HANDLER, trace.getHandled() - trace.getReceived());
+        add(Hop.OUTBOUND, trace.getWritten() - trace.getHandled());
+        add(Hop.NETWORK, total - server);
+    }
+
+    private void add(Hop hop, long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        histograms.get(hop).incrementAndGet(bucket);
+        counts.get(hop).incrementAndGet();
+    }
+
+    public long getCount(Hop hop) {
+        return counts.get(hop).get();
+    }
+
+    // Верхняя граница корзины, в которую попадает перцентиль; точность — в пределах степени двойки
+    public long percentileMicros(Hop hop, double percentile) {
+        long total = getCount(hop);
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        AtomicLongArray histogram = histograms.get(hop);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += histogram.get(bucket);
+            if (seen >= rank) {
+                return bucket == 0 ? 0 : 1L << bucket;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Hop hop : Hop.values()) {
+            sb.append(hop).append(": n=").append(getCount(hop))
+                    .append(" p50<=").append(percentileMicros(hop, 50)).append("us")
+                    .append(" p99<=").append(percentileMicros(hop, 99)).append("us\n");
+        }
+        return sb.toString();
+    }
+}
@@ -2,14 +2,31 @@ package ru.itis.garticphone.client;
 
 import ru.itis.garticphone.common.JsonMessageConnection;
 import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.OutboundQueue;
+import ru.itis.garticphone.common.log.Log;
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.nio.channels.FileChannel;
+import java.util.function.IntConsumer;
 
 public class Player {
+    private static final int REPLAY_CAPACITY = 256;
+    private static final int DRAW_LANE_LIMIT = 512;
+    private static final int FILE_CHUNK = 64 * 1024;
+
     private final int id;
-    private String name;
-    private final JsonMessageConnection connection;
-    private PlayerState state;
+    private volatile String name;
+    private JsonMessageConnection connection;
+    private volatile PlayerState state;
+    private String sessionToken;
+    private final Message[] replay = new Message[REPLAY_CAPACITY];
+    private long sentCount;
+    private volatile long lastSeen = System.nanoTime();
+    private final OutboundQueue outbound = new OutboundQueue(DRAW_LANE_LIMIT);
+    private volatile IntConsumer canvasResync;
 
 
     public Player(int id, String name, Socket socket) throws IOException {
@@ -19,7 +36,7 @@ public class Player {
         this.connection = new JsonMessageConnection(socket);
     }
 
-    // Тестовый конструктор
+    // Игрок без соединения: тесты и восстановление комнат из журнала
     public Player(int id, String name) {
         this.id = id;
         this.name = name;
@@ -32,11 +49,58 @@ public class Player {
             Message msg = Message.parse(json);
             connection.send(msg);
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.warn("Failed to send line", e);
         }
     }
 
+    // Сообщение встаёт в полосу по приоритету; START/CORRECT/ROUND_UPDATE обгоняют очередь мазков
     public void send(Message message) {
+        outbound.offer(message);
+        outbound.drain(this::writeSequenced, this::flush);
+        if (outbound.isOverflowed()) {
+            Log.warn("Closing slow consumer: {}", id);
+            try {
+                close();
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+        int room = outbound.takeResync();
+        IntConsumer resync = canvasResync;
+        if (room >= 0 && resync != null) {
+            resync.accept(room);
+        }
+    }
+
+    // Вызывается с id комнаты, когда очередь выбросила мазки и холст получателя нужно прислать заново
+    public void setCanvasResync(IntConsumer canvasResync) {
+        this.canvasResync = canvasResync;
+    }
+
+    private synchronized void writeSequenced(Message message) {
+        sentCount++;
+        replay[(int) (sentCount % REPLAY_CAPACITY)] = message;
+        if (connection != null) {
+            try {
+                connection.write(message);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private synchronized void flush() {
+        if (connection != null) {
+            try {
+                connection.flush();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    // Служебные кадры (SESSION) не входят в нумерацию и не попадают в буфер повтора
+    public synchronized void sendUnsequenced(Message message) {
+        write(message);
+    }
+
+    private void write(Message message) {
         if (connection != null) {
             try {
                 connection.send(message);
@@ -44,16 +108,144 @@ public class Player {
         }
     }
 
+    // Пакет кадров для зрителя: минует очередь и буфер повтора
+    public synchronized void sendEncoded(String frame) {
+        if (connection != null) {
+            try {
+                connection.sendEncoded(frame);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    // Файл галереи уходит в сокет без копирования в кучу; как и пакет зрителя, минует очередь и буфер повтора.
+    // Монитор держится на один кусок из целых строк, чтобы живые кадры вставали между ними, а не ждали весь файл
+    public void sendFile(FileChannel file, long position, long count) throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long chunkEnd = lineBoundary(file, position, end);
+            synchronized (this) {
+                if (connection == null) {
+                    return;
+                }
+                connection.sendFile(file, position, chunkEnd - position);
+            }
+            position = chunkEnd;
+        }
+    }
+
+    // Позиция после последнего '\n' в пределах FILE_CHUNK; строка длиннее куска уходит целиком
+    private static long lineBoundary(FileChannel file, long from, long end) throws IOException {
+        long limit = Math.min(end, from + FILE_CHUNK);
+        if (limit == end) {
+            return end;
+        }
+        ByteBuffer block = ByteBuffer.allocate(4096);
+        for (long pos = limit; pos > from; ) {
+            int length = (int) Math.min(block.capacity(), pos - from);
+            readBlock(file, block, pos - length, length);
+            for (int i = length - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    return pos - length + i + 1;
+                }
+            }
+            pos -= length;
+        }
+        for (long pos = limit; pos < end; ) {
+            int length = (int) Math.min(block.capacity(), end - pos);
+            readBlock(file, block, pos, length);
+            for (int i = 0; i < length; i++) {
+                if (block.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += length;
+        }
+        return end;
+    }
+
+    private static void readBlock(FileChannel file, ByteBuffer block, long position, int length) throws IOException {
+        block.clear().limit(length);
+        while (block.hasRemaining()) {
+            if (file.read(block, position + block.position()) < 0) {
+                throw new EOFException("File ended at " + (position + block.position()));
+            }
+        }
+    }
+
+    // Пустой слот — кадр до restartSequence: дослать нечего, нужно полное состояние
+    public synchronized boolean replayFrom(long lastReceived) {
+        if (lastReceived < 0 || lastReceived > sentCount || lastReceived < sentCount - REPLAY_CAPACITY) {
+            return false;
+        }
+        for (long seq = lastReceived + 1; seq <= sentCount; seq++) {
+            if (replay[(int) (seq % REPLAY_CAPACITY)] == null) {
+                return false;
+            }
+        }
+        for (long seq = lastReceived + 1; seq <= sentCount; seq++) {
+            write(replay[(int) (seq % REPLAY_CAPACITY)]);
+        }
+        return true;
+    }
+
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    // Нумерация продолжается со счётчика клиента, например после восстановления из журнала
+    public synchronized void restartSequence(long lastReceived) {
+        sentCount = lastReceived;
+        Arrays.fill(replay, null);
+    }
+
+    public synchronized JsonMessageConnection attach(JsonMessageConnection newConnection) {
+        JsonMessageConnection old = connection;
+        connection = newConnection;
+        return old;
+    }
+
+    public synchronized void detach() {
+        connection = null;
+    }
+
+    public synchronized JsonMessageConnection getConnection() {
+        return connection;
+    }
+
     public Message receiveLine() throws IOException, ClassNotFoundException {
         return connection.receive();
     }
 
     public void close() throws IOException {
-        connection.close();
+        JsonMessageConnection current = getConnection();
+        if (current != null) {
+            current.close();
+        }
     }
 
     public Socket getSocket() {
-        return connection != null ? connection.getSocket() : null;
+        JsonMessageConnection current = getConnection();
+        return current != null ? current.getSocket() : null;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public void touch(long now) {
+        this.lastSeen = now;
+    }
+
+    public long getDroppedDraws() {
+        return outbound.getDroppedDraws();
+    }
+
+    public String getSessionToken() {
+        return sessionToken;
+    }
+
+    public void setSessionToken(String sessionToken) {
+        this.sessionToken = sessionToken;
     }
 
     public int getId() {
@@ -82,6 +274,10 @@ public class Player {
         return state == PlayerState.IN_GAME;
     }
 
+    public boolean isSpectating() {
+        return state == PlayerState.SPECTATING;
+    }
+
     public boolean isDisconnected() {
         return state == PlayerState.DISCONNECTED;
     }
@@ -4,5 +4,6 @@ public enum PlayerState {
     CONNECTED,
     IN_LOBBY,
     IN_GAME,
+    SPECTATING,
     DISCONNECTED
 }
@@ -0,0 +1,258 @@
+package ru.itis.garticphone.client;
+
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+import ru.itis.garticphone.common.Stroke;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Точки мазка копятся между кадрами и уходят одной ломаной раз в кадр, упрощённой по Рамеру — Дугласу — Пекеру.
+// Каждая ломаная начинается с последней отправленной точки, поэтому StrokeLog на сервере склеивает их обратно
+public class StrokeBuffer implements Closeable {
+    private final Consumer<Stroke> sink;
+    private final double tolerance;
+    private final Object sendLock = new Object();
+    private ScheduledExecutorService ticker;
+
+    private float[] points = new float[256];
+    private int count;
+    private boolean active;
+    private String color;
+    private float size;
+    private boolean hasSent;
+    private float sentX;
+    private float sentY;
+    // Последняя точка, отброшенная как слишком близкая: в конце мазка она всё равно отправляется
+    private boolean skipped;
+    private float skippedX;
+    private float skippedY;
+    private long inputPoints;
+    private long sentPoints;
+    private long sentStrokes;
+
+    public StrokeBuffer(Consumer<Stroke> sink, double tolerance) {
+        this.sink = sink;
+        this.tolerance = tolerance;
+    }
+
+    // Мазки уходят через sendEchoed: рисующий видит свою ломаную сразу, сервер отвечает ACK
+    public static StrokeBuffer forConnection(ClientConnection connection, int roomId, int playerId,
+                                             String playerName, double tolerance) {
+        return new StrokeBuffer(stroke -> {
+            try {
+                connection.sendEchoed(new Message(MessageType.DRAW, roomId, playerId, playerName, stroke.toJson()));
+            } catch (IOException ignored) {
+            }
+        }, tolerance);
+    }
+
+    public synchronized void start(long frameMillis) {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "stroke-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::flush, frameMillis, frameMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void begin(float x, float y, String color, float size) {
+        end();
+        synchronized (this) {
+            this.active = true;
+            this.color = color;
+            this.size = size;
+            this.hasSent = false;
+            this.skipped = false;
+            this.count = 0;
+            inputPoints++;
+            append(x, y);
+        }
+    }
+
+    // Точка ближе tolerance к предыдущей не меняет рисунок сильнее, чем упрощение, и не попадает в буфер
+    public synchronized void add(float x, float y) {
+        if (!active) {
+            return;
+        }
+        inputPoints++;
+        float lastX = count > 0 ? points[count - 2] : sentX;
+        float lastY = count > 0 ? points[count - 1] : sentY;
+        double dx = x - lastX;
+        double dy = y - lastY;
+        if (dx * dx + dy * dy < tolerance * tolerance) {
+            skipped = true;
+            skippedX = x;
+            skippedY = y;
+            return;
+        }
+        skipped = false;
+        append(x, y);
+    }
+
+    private void append(float x, float y) {
+        if (count == points.length) {
+            points = Arrays.copyOf(points, count * 2);
+        }
+        points[count++] = x;
+        points[count++] = y;
+    }
+
+    public void end() {
+        synchronized (sendLock) {
+            Stroke stroke;
+            synchronized (this) {
+                if (!active) {
+                    return;
+                }
+                if (skipped) {
+                    append(skippedX, skippedY);
+                    skipped = false;
+                }
+                stroke = take(true);
+                active = false;
+            }
+            send(stroke);
+        }
+    }
+
+    public void flush() {
+        synchronized (sendLock) {
+            Stroke stroke;
+            synchronized (this) {
+                stroke = active ? take(false) : null;
+            }
+            send(stroke);
+        }
+    }
+
+    private void send(Stroke stroke) {
+        if (stroke != null) {
+            sink.accept(stroke);
+        }
+    }
+
+    // Одиночная точка ждёт следующей, пока мазок не закончен; законченная уходит точкой из двух совпадающих
+    private Stroke take(boolean ending) {
+        int total = count + (hasSent ? 2 : 0);
+        if (count == 0 || (total < 4 && !ending)) {
+            return null;
+        }
+        float[] polyline = new float[Math.max(total, 4)];
+        int offset = 0;
+        if (hasSent) {
+            polyline[0] = sentX;
+            polyline[1] = sentY;
+            offset = 2;
+        }
+        System.arraycopy(points, 0, polyline, offset, count);
+        if (total < 4) {
+            polyline[2] = polyline[0];
+            polyline[3] = polyline[1];
+        }
+        count = 0;
+        float[] simplified = simplify(polyline, tolerance);
+        hasSent = true;
+        sentX = simplified[simplified.length - 2];
+        sentY = simplified[simplified.length - 1];
+        sentPoints += simplified.length / 2 - (offset > 0 ? 1 : 0);
+        sentStrokes++;
+        return new Stroke(simplified, color, size);
+    }
+
+    // Рамер — Дуглас — Пекер без рекурсии: концы остаются, из середины отрезка остаётся точка дальше tolerance от хорды
+    static float[] simplify(float[] polyline, double tolerance) {
+        int n = polyline.length / 2;
+        if (n <= 2) {
+            return polyline;
+        }
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        double limit = tolerance * tolerance;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double ax = polyline[2 * first];
+            double ay = polyline[2 * first + 1];
+            double bx = polyline[2 * last] - ax;
+            double by = polyline[2 * last + 1] - ay;
+            double length = bx * bx + by * by;
+            double worst = -1;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double px = polyline[2 * i] - ax;
+                double py = polyline[2 * i + 1] - ay;
+                double distance;
+                if (length == 0) {
+                    distance = px * px + py * py;
+                } else {
+                    double cross = px * by - py * bx;
+                    distance = cross * cross / length;
+                }
+                if (distance > worst) {
+                    worst = distance;
+                    index = i;
+                }
+            }
+            if (index >= 0 && worst > limit) {
+                keep[index] = true;
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+
+        int kept = 0;
+        for (boolean k : keep) {
+            if (k) {
+                kept++;
+            }
+        }
+        float[] result = new float[kept * 2];
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                result[j++] = polyline[2 * i];
+                result[j++] = polyline[2 * i + 1];
+            }
+        }
+        return result;
+    }
+
+    public synchronized long getInputPoints() {
+        return inputPoints;
+    }
+
+    public synchronized long getSentPoints() {
+        return sentPoints;
+    }
+
+    public synchronized long getSentStrokes() {
+        return sentStrokes;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (ticker != null) {
+                ticker.shutdownNow();
+                ticker = null;
+            }
+        }
+        end();
+    }
+}
@@ -1,33 +1,132 @@
 package ru.itis.garticphone.common;
 
+import ru.itis.garticphone.jfr.MessageDecodeEvent;
+import ru.itis.garticphone.jfr.SocketWriteEvent;
+
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 
 public class JsonMessageConnection implements Closeable {
     private final Socket socket;
     private final BufferedReader reader;
     private final BufferedWriter writer;
+    private TrafficCapture capture;
+    private int captureId;
+    private boolean captureClosed;
+    private int unflushed;
 
     public JsonMessageConnection(Socket socket) throws IOException {
         this.socket = socket;
         this.writer = new BufferedWriter(
-                new OutputStreamWriter(socket.getOutputStream())
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)
         );
         this.reader = new BufferedReader(
-                new InputStreamReader(socket.getInputStream())
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)
         );
     }
 
     public void send(Message message) throws IOException {
-        writer.write(Message.toJson(message));
+        write(message);
+        flush();
+    }
+
+    public void write(Message message) throws IOException {
+        Trace trace = message.getTrace();
+        // Отметку записи ставит только сервер, и только для трассы, которую он сам принял
+        if (trace != null && trace.getReceived() != 0 && trace.getWritten() == 0) {
+            trace.setWritten(System.nanoTime());
+            message.setTrace(trace);
+        }
+        String json = Message.toJson(message);
+        writer.write(json);
         writer.newLine();
+        unflushed += json.length() + 1;
+    }
+
+    // Кадр уже закодирован и может содержать несколько строк-сообщений
+    public void sendEncoded(String frame) throws IOException {
+        writer.write(frame);
+        unflushed += frame.length();
+        flush();
+    }
+
+    // Готовые UTF-8 строки из файла; у сокета от ServerSocketChannel байты идут из файла в сокет внутри ядра (sendfile)
+    public void sendFile(FileChannel file, long position, long count) throws IOException {
+        flush();
+        long end = position + count;
+        SocketChannel channel = socket.getChannel();
+        if (channel != null && channel.isBlocking()) {
+            while (position < end) {
+                long sent = file.transferTo(position, end - position, channel);
+                if (sent == 0 && position >= file.size()) {
+                    throw new EOFException("File ended at " + position);
+                }
+                position += sent;
+            }
+            return;
+        }
+        OutputStream out = socket.getOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, 64 * 1024));
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            int read = file.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("File ended at " + position);
+            }
+            out.write(buffer.array(), 0, read);
+            position += read;
+        }
+        out.flush();
+    }
+
+    public void flush() throws IOException {
+        SocketWriteEvent event = new SocketWriteEvent();
+        event.begin();
         writer.flush();
+        event.end();
+        int bytes = unflushed;
+        unflushed = 0;
+        if (event.shouldCommit()) {
+            event.remote = String.valueOf(socket.getRemoteSocketAddress());
+            event.bytes = bytes;
+            event.commit();
+        }
     }
 
     public Message receive() throws IOException {
         String line = reader.readLine();
         if (line == null) return null;
-        return Message.parse(line);
+        if (capture != null) {
+            capture.record(captureId, line);
+        }
+        MessageDecodeEvent event = new MessageDecodeEvent();
+        event.begin();
+        Message message = Message.parse(line);
+        event.end();
+        if (event.shouldCommit()) {
+            event.messageType = message == null || message.getType() == null ? null : message.getType().name();
+            event.bytes = line.length();
+            event.commit();
+        }
+        return message;
+    }
+
+    // Входящие кадры этого соединения записываются вместе со временем прихода
+    public void setCapture(TrafficCapture capture, int connectionId) {
+        this.capture = capture;
+        this.captureId = connectionId;
+    }
+
+    // Закрытие пишется владельцем соединения один раз, как бы оно ни кончилось: EOF, таймаут, сброс или нечитаемый кадр
+    public synchronized void recordClose() {
+        if (capture != null && !captureClosed) {
+            captureClosed = true;
+            capture.record(captureId, null);
+        }
     }
 
     public Socket getSocket() {
@@ -35,7 +134,9 @@ public class JsonMessageConnection implements Closeable {
     }
 
     @Override
+    // Сначала сокет: закрытие BufferedReader ждёт его блокировку, которую держит поток, висящий в readLine()
     public void close() throws IOException {
+        socket.close();
         try {
             reader.close();
         } catch (IOException ignored) {
@@ -44,7 +145,6 @@ public class JsonMessageConnection implements Closeable {
             writer.close();
         } catch (IOException ignored) {
         }
-        socket.close();
     }
 
     public boolean isOpen() {
@@ -0,0 +1,45 @@
+package ru.itis.garticphone.common;
+
+public final class JsonWriter {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private JsonWriter() {
+    }
+
+    public static StringBuilder appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20) {
+                continue;
+            }
+            sb.append(value, start, i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+            start = i + 1;
+        }
+        sb.append(value, start, length);
+        return sb.append('"');
+    }
+
+    public static StringBuilder appendField(StringBuilder sb, String name, String value) {
+        sb.append('"').append(name).append("\":");
+        return value == null ? sb.append("null") : appendString(sb, value);
+    }
+
+    public static StringBuilder appendField(StringBuilder sb, String name, long value) {
+        return sb.append('"').append(name).append("\":").append(value);
+    }
+
+    public static String quote(String value) {
+        return appendString(new StringBuilder(value.length() + 2), value).toString();
+    }
+}
@@ -8,7 +8,21 @@ public class Message {
     private int playerId;
     private String playerName;
     private String payload;
+    private Long seq;
+    private Trace trace;
+    private transient String encoded;
+    // Только на сервере: очередь отправки не выбрасывает такое сообщение под нагрузкой
+    private transient boolean essential;
     private static final Gson gson = new Gson();
+    private static final String[] TYPE_PREFIXES = new String[MessageType.values().length];
+    private static final String SERVER = "SERVER";
+    private static final String SERVER_FIELD = ",\"playerName\":\"SERVER\"";
+
+    static {
+        for (MessageType type : MessageType.values()) {
+            TYPE_PREFIXES[type.ordinal()] = "{\"type\":\"" + type.name() + "\"";
+        }
+    }
 
     public Message() {
     }
@@ -21,8 +35,36 @@ public class Message {
         this.payload = payload;
     }
 
+    // Ручная сериализация без рефлексии; результат кешируется, так что рассылка
+    // одного сообщения всей комнате кодирует его один раз
     public static String toJson(Message message) {
-        return gson.toJson(message);
+        String cached = message.encoded;
+        if (cached != null) {
+            return cached;
+        }
+        String payload = message.payload;
+        StringBuilder sb = new StringBuilder(64 + (payload != null ? payload.length() + 16 : 0));
+        sb.append(message.type != null ? TYPE_PREFIXES[message.type.ordinal()] : "{\"type\":null");
+        sb.append(",\"roomId\":").append(message.roomId);
+        sb.append(",\"playerId\":").append(message.playerId);
+        String name = message.playerName;
+        if (SERVER.equals(name)) {
+            sb.append(SERVER_FIELD);
+        } else if (name != null) {
+            JsonWriter.appendString(sb.append(",\"playerName\":"), name);
+        }
+        if (payload != null) {
+            JsonWriter.appendString(sb.append(",\"payload\":"), payload);
+        }
+        if (message.seq != null) {
+            sb.append(",\"seq\":").append(message.seq.longValue());
+        }
+        if (message.trace != null) {
+            message.trace.appendJson(sb.append(",\"trace\":"));
+        }
+        String json = sb.append('}').toString();
+        message.encoded = json;
+        return json;
     }
 
     public static Message parse(String json) {
@@ -44,12 +86,21 @@ public class Message {
     }
 
 
+    public boolean isEssential() {
+        return essential;
+    }
+
+    public void setEssential(boolean essential) {
+        this.essential = essential;
+    }
+
     public MessageType getType() {
         return type;
     }
 
     public void setType(MessageType type) {
         this.type = type;
+        this.encoded = null;
     }
 
     public int getRoomId() {
@@ -58,6 +109,7 @@ public class Message {
 
     public void setRoomId(int roomId) {
         this.roomId = roomId;
+        this.encoded = null;
     }
 
     public int getPlayerId() {
@@ -66,6 +118,7 @@ public class Message {
 
     public void setPlayerId(int playerId) {
         this.playerId = playerId;
+        this.encoded = null;
     }
 
     public String getPlayerName() {
@@ -74,6 +127,7 @@ public class Message {
 
     public void setPlayerName(String playerName) {
         this.playerName = playerName;
+        this.encoded = null;
     }
 
     public String getPayload() {
@@ -82,5 +136,24 @@ public class Message {
 
     public void setPayload(String payload) {
         this.payload = payload;
+        this.encoded = null;
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+        this.encoded = null;
+    }
+
+    public Trace getTrace() {
+        return trace;
+    }
+
+    public void setTrace(Trace trace) {
+        this.trace = trace;
+        this.encoded = null;
     }
 }
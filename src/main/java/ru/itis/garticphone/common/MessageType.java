@@ -13,5 +13,16 @@ public enum MessageType {
     FINAL_CHAIN,
     LEAVE,
     ERROR,
-    PLAYER_STATUS
+    PLAYER_STATUS,
+    CANVAS_SNAPSHOT,
+    SESSION,
+    RESUME,
+    PING,
+    PONG,
+    ACK,
+    LEADERBOARD,
+    SPECTATE,
+    REDIRECT,
+    REPLAY,
+    GALLERY
 }
@@ -0,0 +1,159 @@
+package ru.itis.garticphone.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+public class OutboundQueue {
+
+    public enum Lane {
+        CONTROL,
+        CHAT,
+        DRAW,
+        BULK
+    }
+
+    private static final Lane[] LANES = Lane.values();
+    // Шаги цепочек не выбрасываются; получатель, у которого их скопилось столько лимитов полосы, отключается
+    private static final int ESSENTIAL_LIMIT_FACTOR = 4;
+
+    private final List<ArrayDeque<Message>> lanes;
+    private final int drawLimit;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private long droppedDraws;
+    private int resyncRoom = -1;
+    private boolean overflowed;
+
+    public OutboundQueue(int drawLimit) {
+        this.drawLimit = drawLimit;
+        this.lanes = new ArrayList<>(LANES.length);
+        for (int i = 0; i < LANES.length; i++) {
+            lanes.add(new ArrayDeque<>());
+        }
+    }
+
+    public static Lane laneOf(MessageType type) {
+        if (type == null) {
+            return Lane.CONTROL;
+        }
+        return switch (type) {
+            case CHAT, GUESS -> Lane.CHAT;
+            case DRAW, CANVAS_SNAPSHOT -> Lane.DRAW;
+            case FINAL_CHAIN -> Lane.BULK;
+            default -> Lane.CONTROL;
+        };
+    }
+
+    public synchronized void offer(Message message) {
+        ArrayDeque<Message> lane = lanes.get(laneOf(message.getType()).ordinal());
+        lane.addLast(message);
+        if (lane.size() > drawLimit && lane == lanes.get(Lane.DRAW.ordinal())) {
+            collapseStrokes(lane);
+            overflowed = lane.size() > drawLimit * ESSENTIAL_LIMIT_FACTOR;
+        }
+    }
+
+    // Сначала выбрасывается то, что стёрла более поздняя очистка холста. Если этого мало, уходят все
+    // ожидающие мазки и снимки, а получатель ждёт свежий снимок холста (takeResync); шаги цепочек остаются
+    private void collapseStrokes(ArrayDeque<Message> lane) {
+        Message lastClear = null;
+        for (Message message : lane) {
+            if (isDroppable(message) && Stroke.isClear(message.getPayload())) {
+                lastClear = message;
+            }
+        }
+        if (lastClear != null) {
+            Iterator<Message> it = lane.iterator();
+            Message message;
+            while ((message = it.next()) != lastClear) {
+                if (isDroppable(message)) {
+                    it.remove();
+                    countDropped(message);
+                }
+            }
+        }
+        if (lane.size() <= drawLimit) {
+            return;
+        }
+        Iterator<Message> it = lane.iterator();
+        while (it.hasNext()) {
+            Message message = it.next();
+            if (isDroppable(message)) {
+                it.remove();
+                countDropped(message);
+                resyncRoom = message.getRoomId();
+            }
+        }
+    }
+
+    private static boolean isDroppable(Message message) {
+        return !message.isEssential()
+                && (message.getType() == MessageType.DRAW || message.getType() == MessageType.CANVAS_SNAPSHOT);
+    }
+
+    private void countDropped(Message message) {
+        if (message.getType() == MessageType.DRAW) {
+            droppedDraws++;
+        }
+    }
+
+    // Комната, чей холст у получателя разошёлся с сервером после выброса мазков, или -1; сбрасывается при чтении
+    public synchronized int takeResync() {
+        int room = resyncRoom;
+        resyncRoom = -1;
+        return room;
+    }
+
+    // Шагов цепочек в очереди больше допустимого: получатель не успевает читать
+    public synchronized boolean isOverflowed() {
+        return overflowed;
+    }
+
+    private synchronized Message poll() {
+        for (ArrayDeque<Message> lane : lanes) {
+            Message message = lane.pollFirst();
+            if (message != null) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    public synchronized boolean isEmpty() {
+        for (ArrayDeque<Message> lane : lanes) {
+            if (!lane.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Пишет тот поток, который успел захватить очередь; остальные только кладут сообщения и уходят
+    public void drain(Consumer<Message> writer, Runnable afterBatch) {
+        while (!isEmpty()) {
+            if (!draining.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                Message message;
+                while ((message = poll()) != null) {
+                    writer.accept(message);
+                }
+                afterBatch.run();
+            } finally {
+                draining.set(false);
+            }
+        }
+    }
+
+    public synchronized long getDroppedDraws() {
+        return droppedDraws;
+    }
+
+    public synchronized int size(Lane lane) {
+        return lanes.get(lane.ordinal()).size();
+    }
+}
@@ -0,0 +1,143 @@
+package ru.itis.garticphone.common;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.util.Arrays;
+
+public class Stroke {
+    private static final String DEFAULT_COLOR = "black";
+    private static final float DEFAULT_SIZE = 2;
+
+    private final float[] points;
+    private final String color;
+    private final float size;
+
+    public Stroke(float[] points, String color, float size) {
+        this.points = points;
+        this.color = color != null ? color : DEFAULT_COLOR;
+        this.size = size;
+    }
+
+    // Поддерживаются оба формата: отрезок {x1,y1,x2,y2} и ломаная {points:[x,y,...]}
+    public static Stroke parse(String payload) {
+        if (payload == null || payload.isBlank()) {
+            return null;
+        }
+        try {
+            JsonObject json = JsonParser.parseString(payload).getAsJsonObject();
+            String color = json.has("color") ? json.get("color").getAsString() : DEFAULT_COLOR;
+            float size = json.has("size") ? json.get("size").getAsFloat() : DEFAULT_SIZE;
+
+            float[] points;
+            if (json.has("points")) {
+                JsonArray array = json.getAsJsonArray("points");
+                if (array.size() < 2 || array.size() % 2 != 0) {
+                    return null;
+                }
+                points = new float[array.size()];
+                int i = 0;
+                for (JsonElement element : array) {
+                    points[i++] = element.getAsFloat();
+                }
+            } else if (json.has("x1") && json.has("y1") && json.has("x2") && json.has("y2")) {
+                points = new float[]{
+                        json.get("x1").getAsFloat(),
+                        json.get("y1").getAsFloat(),
+                        json.get("x2").getAsFloat(),
+                        json.get("y2").getAsFloat()
+                };
+            } else {
+                return null;
+            }
+            return new Stroke(points, color, size);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public static boolean isClear(String payload) {
+        if (payload == null || !payload.contains("\"clear\"")) {
+            return false;
+        }
+        try {
+            JsonObject json = JsonParser.parseString(payload).getAsJsonObject();
+            return json.has("clear") && json.get("clear").getAsBoolean();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public boolean continues(Stroke previous) {
+        int last = previous.points.length - 2;
+        return size == previous.size
+                && color.equals(previous.color)
+                && points[0] == previous.points[last]
+                && points[1] == previous.points[last + 1];
+    }
+
+    public Stroke append(Stroke next) {
+        float[] merged = Arrays.copyOf(points, points.length + next.points.length - 2);
+        System.arraycopy(next.points, 2, merged, points.length, next.points.length - 2);
+        return new Stroke(merged, color, size);
+    }
+
+    public Stroke withoutHead(int pointsToDrop) {
+        return new Stroke(Arrays.copyOfRange(points, pointsToDrop * 2, points.length), color, size);
+    }
+
+    public int pointCount() {
+        return points.length / 2;
+    }
+
+    public float[] getPoints() {
+        return points;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public float getSize() {
+        return size;
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(points.length * 6 + 48);
+        appendJson(sb);
+        return sb.toString();
+    }
+
+    public void appendJson(StringBuilder sb) {
+        sb.append("{\"points\":[");
+        for (int i = 0; i < points.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendNumber(sb, points[i]);
+        }
+        sb.append("],\"color\":\"");
+        for (int i = 0; i < color.length(); i++) {
+            char c = color.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            if (c >= 0x20) {
+                sb.append(c);
+            }
+        }
+        sb.append("\",\"size\":");
+        appendNumber(sb, size);
+        sb.append('}');
+    }
+
+    private static void appendNumber(StringBuilder sb, float value) {
+        if (value == (int) value) {
+            sb.append((int) value);
+        } else {
+            sb.append(value);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ru.itis.garticphone.common;
+
+// Отметки времени одного сообщения: sent — часы клиента, остальные — часы сервера (System.nanoTime)
+public class Trace {
+    private long id;
+    private long sent;
+    private long received;
+    private long handled;
+    private long written;
+
+    public Trace() {
+    }
+
+    public Trace(long id, long sent) {
+        this.id = id;
+        this.sent = sent;
+    }
+
+    public void appendJson(StringBuilder sb) {
+        sb.append("{\"id\":").append(id)
+                .append(",\"sent\":").append(sent);
+        if (received != 0) {
+            sb.append(",\"received\":").append(received)
+                    .append(",\"handled\":").append(handled)
+                    .append(",\"written\":").append(written);
+        }
+        sb.append('}');
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public void setReceived(long received) {
+        this.received = received;
+    }
+
+    public long getHandled() {
+        return handled;
+    }
+
+    public void setHandled(long handled) {
+        this.handled = handled;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public void setWritten(long written) {
+        this.written = written;
+    }
+}
@@ -0,0 +1,131 @@
+package ru.itis.garticphone.common;
+
+import ru.itis.garticphone.common.log.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Запись входящего трафика: строка "<соединение>\t<нс от начала записи>\t<кадр>", пустой кадр — закрытие соединения
+public class TrafficCapture implements Closeable {
+
+    public record Frame(int connectionId, long nanos, String line) {
+        public boolean isClose() {
+            return line == null;
+        }
+    }
+
+    private final BufferedWriter out;
+    private final long startNanos = System.nanoTime();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "capture-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Frame> queue = new ArrayList<>();
+    private boolean writeScheduled;
+    private boolean closed;
+
+    public TrafficCapture(Path file) throws IOException {
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    // Поток чтения только ставит отметку времени; запись на диск идёт пачками в отдельном потоке
+    public void record(int connectionId, String line) {
+        Frame frame = new Frame(connectionId, System.nanoTime() - startNanos, line);
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            queue.add(frame);
+            if (!writeScheduled) {
+                writeScheduled = true;
+                writer.execute(this::writeBatch);
+            }
+        }
+    }
+
+    private void writeBatch() {
+        List<Frame> batch;
+        synchronized (queue) {
+            batch = new ArrayList<>(queue);
+            queue.clear();
+            writeScheduled = false;
+        }
+        try {
+            for (Frame frame : batch) {
+                out.write(Integer.toString(frame.connectionId()));
+                out.write('\t');
+                out.write(Long.toString(frame.nanos()));
+                out.write('\t');
+                if (frame.line() != null) {
+                    out.write(frame.line());
+                }
+                out.newLine();
+            }
+            out.flush();
+        } catch (IOException e) {
+            Log.error("Traffic capture write failed", e);
+        }
+    }
+
+    public static List<Frame> read(Path file) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int first = line.indexOf('\t');
+                int second = line.indexOf('\t', first + 1);
+                if (first < 0 || second < 0) {
+                    continue;
+                }
+                String frame = line.substring(second + 1);
+                frames.add(new Frame(
+                        Integer.parseInt(line.substring(0, first)),
+                        Long.parseLong(line.substring(first + 1, second)),
+                        frame.isEmpty() ? null : frame
+                ));
+            }
+        }
+        return frames;
+    }
+
+    public void flush() {
+        if (writer.isShutdown()) {
+            return;
+        }
+        try {
+            writer.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        synchronized (queue) {
+            closed = true;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,251 @@
+package ru.itis.garticphone.common.log;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Потоки игры только кладут запись в кольцо без блокировок; форматирование и вывод — в одном фоновом потоке
+public class AsyncLogger implements Closeable {
+
+    public enum Level {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR
+    }
+
+    private static final long REPEAT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Ячейка кольца: sequence == позиция — свободна для записи, позиция + 1 — заполнена
+    private static final class Slot {
+        volatile long sequence;
+        Level level;
+        long time;
+        String thread;
+        String template;
+        Object arg;
+        Object second;
+        boolean hasSecond;
+        long value;
+        boolean hasValue;
+        Throwable error;
+        int suppressed;
+    }
+
+    // Окно повторов одного шаблона: сверх лимита за секунду записи только подсчитываются
+    private static final class Window {
+        final AtomicLong start;
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicInteger suppressed = new AtomicInteger();
+
+        Window(long now) {
+            this.start = new AtomicLong(now);
+        }
+    }
+
+    private final PrintStream out;
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Пишет только фоновый поток; volatile — чтобы flush() из других потоков видел прогресс
+    private volatile long head;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final int repeatLimit;
+    private final StringBuilder line = new StringBuilder(256);
+    private final Thread writer;
+    private volatile Level level;
+    private volatile boolean closed;
+
+    public AsyncLogger(PrintStream out, int capacity, Level level, int repeatLimit) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.out = out;
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        this.level = level;
+        this.repeatLimit = repeatLimit;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            slots[i].sequence = i;
+        }
+        this.writer = new Thread(this::drainLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public boolean isEnabled(Level candidate) {
+        return candidate.ordinal() >= level.ordinal();
+    }
+
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    public void log(Level level, String template, Object arg) {
+        if (isEnabled(level)) {
+            offer(level, template, arg, null, false, 0, false, null);
+        }
+    }
+
+    // Второй аргумент подставляется во второй {}; склеивать строку до проверки уровня не нужно
+    public void log(Level level, String template, Object arg, Object second) {
+        if (isEnabled(level)) {
+            offer(level, template, arg, second, true, 0, false, null);
+        }
+    }
+
+    public void log(Level level, String template, long value) {
+        if (isEnabled(level)) {
+            offer(level, template, null, null, false, value, true, null);
+        }
+    }
+
+    public void log(Level level, String template, Throwable error) {
+        if (isEnabled(level)) {
+            offer(level, template, null, null, false, 0, false, error);
+        }
+    }
+
+    private void offer(Level level, String template, Object arg, Object second, boolean hasSecond,
+                       long value, boolean hasValue, Throwable error) {
+        int suppressed = 0;
+        if (repeatLimit > 0) {
+            long now = System.nanoTime();
+            Window window = windows.get(template);
+            if (window == null) {
+                window = windows.computeIfAbsent(template, t -> new Window(now));
+            }
+            long start = window.start.get();
+            if (now - start >= REPEAT_WINDOW_NANOS && window.start.compareAndSet(start, now)) {
+                window.count.set(0);
+                suppressed = window.suppressed.getAndSet(0);
+            }
+            if (window.count.incrementAndGet() > repeatLimit) {
+                window.suppressed.incrementAndGet();
+                return;
+            }
+        }
+
+        long position = tail.get();
+        Slot slot;
+        while (true) {
+            slot = slots[(int) (position & mask)];
+            long difference = slot.sequence - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // Кольцо заполнено: игровой поток не ждёт диск, запись теряется и учитывается
+                dropped.incrementAndGet();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+        slot.level = level;
+        slot.time = System.currentTimeMillis();
+        slot.thread = Thread.currentThread().getName();
+        slot.template = template;
+        slot.arg = arg;
+        slot.second = second;
+        slot.hasSecond = hasSecond;
+        slot.value = value;
+        slot.hasValue = hasValue;
+        slot.error = error;
+        slot.suppressed = suppressed;
+        slot.sequence = position + 1;
+    }
+
+    private void drainLoop() {
+        while (!closed) {
+            if (drain() == 0) {
+                out.flush();
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        drain();
+        out.flush();
+    }
+
+    private int drain() {
+        int count = 0;
+        while (true) {
+            Slot slot = slots[(int) (head & mask)];
+            if (slot.sequence != head + 1) {
+                return count;
+            }
+            write(slot);
+            slot.template = null;
+            slot.arg = null;
+            slot.second = null;
+            slot.error = null;
+            slot.thread = null;
+            slot.sequence = head + slots.length;
+            head++;
+            count++;
+        }
+    }
+
+    private void write(Slot slot) {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(slot.time)).append(' ')
+                .append(slot.level).append(" [").append(slot.thread).append("] ");
+        String template = slot.template;
+        int marker = template.indexOf("{}");
+        if (marker < 0) {
+            line.append(template);
+        } else {
+            line.append(template, 0, marker);
+            if (slot.hasValue) {
+                line.append(slot.value);
+            } else {
+                line.append(slot.arg);
+            }
+            int next = slot.hasSecond ? template.indexOf("{}", marker + 2) : -1;
+            if (next < 0) {
+                line.append(template, marker + 2, template.length());
+            } else {
+                line.append(template, marker + 2, next).append(slot.second)
+                        .append(template, next + 2, template.length());
+            }
+        }
+        if (slot.suppressed > 0) {
+            line.append(" (").append(slot.suppressed).append(" similar suppressed)");
+        }
+        out.println(line);
+        if (slot.error != null) {
+            slot.error.printStackTrace(out);
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    // Дожидается вывода всего, что было в кольце на момент вызова
+    public void flush() {
+        long target = tail.get();
+        while (head < target && writer.isAlive()) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
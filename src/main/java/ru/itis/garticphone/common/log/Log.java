@@ -0,0 +1,60 @@
+package ru.itis.garticphone.common.log;
+
+import ru.itis.garticphone.common.log.AsyncLogger.Level;
+
+// Общий логгер процесса; уровень задаётся -Dgarticphone.log.level=DEBUG|INFO|WARN|ERROR
+public final class Log {
+    private static final AsyncLogger LOGGER = new AsyncLogger(System.out, 8192,
+            Level.valueOf(System.getProperty("garticphone.log.level", "INFO")), 20);
+
+    private Log() {
+    }
+
+    public static boolean isEnabled(Level level) {
+        return LOGGER.isEnabled(level);
+    }
+
+    public static void setLevel(Level level) {
+        LOGGER.setLevel(level);
+    }
+
+    public static void debug(String template, Object arg) {
+        LOGGER.log(Level.DEBUG, template, arg);
+    }
+
+    public static void debug(String template, long value) {
+        LOGGER.log(Level.DEBUG, template, value);
+    }
+
+    public static void info(String template, Object arg) {
+        LOGGER.log(Level.INFO, template, arg);
+    }
+
+    public static void info(String template, Object arg, Object second) {
+        LOGGER.log(Level.INFO, template, arg, second);
+    }
+
+    public static void info(String template, long value) {
+        LOGGER.log(Level.INFO, template, value);
+    }
+
+    public static void warn(String template, Object arg) {
+        LOGGER.log(Level.WARN, template, arg);
+    }
+
+    public static void warn(String template, long value) {
+        LOGGER.log(Level.WARN, template, value);
+    }
+
+    public static void warn(String template, Throwable error) {
+        LOGGER.log(Level.WARN, template, error);
+    }
+
+    public static void error(String template, Throwable error) {
+        LOGGER.log(Level.ERROR, template, error);
+    }
+
+    public static void flush() {
+        LOGGER.flush();
+    }
+}
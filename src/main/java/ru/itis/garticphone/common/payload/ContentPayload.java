@@ -0,0 +1,13 @@
+package ru.itis.garticphone.common.payload;
+
+import static ru.itis.garticphone.common.JsonWriter.appendField;
+
+public record ContentPayload(String content, String contentType, int roundNumber) implements Payload {
+    @Override
+    public void appendJson(StringBuilder sb) {
+        sb.append('{');
+        appendField(sb, "content", content).append(',');
+        appendField(sb, "contentType", contentType).append(',');
+        appendField(sb, "roundNumber", roundNumber).append('}');
+    }
+}
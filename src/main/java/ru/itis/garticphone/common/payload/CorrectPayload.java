@@ -0,0 +1,13 @@
+package ru.itis.garticphone.common.payload;
+
+import static ru.itis.garticphone.common.JsonWriter.appendField;
+
+public record CorrectPayload(String correctPlayer, String word, int score) implements Payload {
+    @Override
+    public void appendJson(StringBuilder sb) {
+        sb.append('{');
+        appendField(sb, "correctPlayer", correctPlayer).append(',');
+        appendField(sb, "word", word).append(',');
+        appendField(sb, "score", score).append('}');
+    }
+}
@@ -0,0 +1,12 @@
+package ru.itis.garticphone.common.payload;
+
+import static ru.itis.garticphone.common.JsonWriter.appendField;
+
+public record ErrorPayload(String code, String message) implements Payload {
+    @Override
+    public void appendJson(StringBuilder sb) {
+        sb.append('{');
+        appendField(sb, "code", code).append(',');
+        appendField(sb, "message", message).append('}');
+    }
+}
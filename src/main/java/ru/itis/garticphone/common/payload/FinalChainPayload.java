@@ -0,0 +1,26 @@
+package ru.itis.garticphone.common.payload;
+
+import java.util.List;
+
+import static ru.itis.garticphone.common.JsonWriter.appendField;
+
+public record FinalChainPayload(List<Link> chain) implements Payload {
+
+    public record Link(String type, String value) {
+    }
+
+    @Override
+    public void appendJson(StringBuilder sb) {
+        sb.append("{\"contentType\":\"FINAL_CHAIN\",\"chain\":[");
+        for (int i = 0; i < chain.size(); i++) {
+            Link link = chain.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('{');
+            appendField(sb, "type", link.type()).append(',');
+            appendField(sb, "value", link.value()).append('}');
+        }
+        sb.append("]}");
+    }
+}
@@ -0,0 +1,28 @@
+package ru.itis.garticphone.common.payload;
+
+import java.util.List;
+
+import static ru.itis.garticphone.common.JsonWriter.appendField;
+
+public record LeaderboardPayload(List<Entry> leaders, int guessed, int chatMessages) implements Payload {
+
+    public record Entry(String name, int score) {
+    }
+
+    @Override
+    public void appendJson(StringBuilder sb) {
+        sb.append("{\"leaders\":[");
+        for (int i = 0; i < leaders.size(); i++) {
+            Entry entry = leaders.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('{');
+            appendField(sb, "name", entry.name()).append(',');
+            appendField(sb, "score", entry.score()).append('}');
+        }
+        sb.append("],");
+        appendField(sb, "guessed", guessed).append(',');
+        appendField(sb, "chatMessages", chatMessages).append('}');
+    }
+}
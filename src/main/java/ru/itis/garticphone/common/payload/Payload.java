@@ -0,0 +1,11 @@
+package ru.itis.garticphone.common.payload;
+
+public interface Payload {
+    void appendJson(StringBuilder sb);
+
+    default String toJson() {
+        StringBuilder sb = new StringBuilder(64);
+        appendJson(sb);
+        return sb.toString();
+    }
+}
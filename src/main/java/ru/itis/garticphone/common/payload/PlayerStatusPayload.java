@@ -0,0 +1,20 @@
+package ru.itis.garticphone.common.payload;
+
+import ru.itis.garticphone.common.JsonWriter;
+
+public final class PlayerStatusPayload implements Payload {
+    private final StringBuilder body = new StringBuilder(64).append('{');
+
+    public PlayerStatusPayload add(String name, boolean ready) {
+        if (body.length() > 1) {
+            body.append(',');
+        }
+        JsonWriter.appendString(body, name).append(':').append(ready);
+        return this;
+    }
+
+    @Override
+    public void appendJson(StringBuilder sb) {
+        sb.append(body).append('}');
+    }
+}
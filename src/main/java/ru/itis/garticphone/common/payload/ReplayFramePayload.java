@@ -0,0 +1,15 @@
+package ru.itis.garticphone.common.payload;
+
+import ru.itis.garticphone.common.Message;
+
+import static ru.itis.garticphone.common.JsonWriter.appendField;
+
+// Кадр повтора: исходное сообщение целиком, чтобы клиент не спутал его с живым
+public record ReplayFramePayload(long offset, Message frame) implements Payload {
+    @Override
+    public void appendJson(StringBuilder sb) {
+        sb.append('{');
+        appendField(sb, "offset", offset).append(',');
+        sb.append("\"frame\":").append(Message.toJson(frame)).append('}');
+    }
+}
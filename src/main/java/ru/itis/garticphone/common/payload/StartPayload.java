@@ -0,0 +1,18 @@
+package ru.itis.garticphone.common.payload;
+
+import static ru.itis.garticphone.common.JsonWriter.appendField;
+
+public record StartPayload(int roundDuration, int totalPlayers, String stage, int drawerId) implements Payload {
+    @Override
+    public void appendJson(StringBuilder sb) {
+        sb.append('{');
+        appendField(sb, "roundDuration", roundDuration).append(',');
+        appendField(sb, "totalPlayers", totalPlayers).append(',');
+        appendField(sb, "stage", stage);
+        if (drawerId >= 0) {
+            sb.append(',');
+            appendField(sb, "drawerId", drawerId);
+        }
+        sb.append('}');
+    }
+}
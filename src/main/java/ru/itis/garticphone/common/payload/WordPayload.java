@@ -0,0 +1,11 @@
+package ru.itis.garticphone.common.payload;
+
+import static ru.itis.garticphone.common.JsonWriter.appendField;
+
+public record WordPayload(String word) implements Payload {
+    @Override
+    public void appendJson(StringBuilder sb) {
+        sb.append('{');
+        appendField(sb, "word", word).append('}');
+    }
+}
@@ -0,0 +1,18 @@
+package ru.itis.garticphone.gateway;
+
+public record Backend(String host, int port) {
+
+    // Формат host:port
+    public static Backend parse(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected host:port, got " + address);
+        }
+        return new Backend(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
@@ -0,0 +1,67 @@
+package ru.itis.garticphone.gateway;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+public class ConsistentHashRing<T> {
+    private final int virtualNodes;
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+    private final Set<T> nodes = new LinkedHashSet<>();
+
+    public ConsistentHashRing(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    // Каждый узел занимает virtualNodes точек кольца, поэтому при добавлении узла
+    // к нему переезжает примерно 1/n ключей, а не почти все
+    public synchronized void add(T node) {
+        if (!nodes.add(node)) {
+            return;
+        }
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hash(node + "#" + i), node);
+        }
+    }
+
+    public synchronized void remove(T node) {
+        if (!nodes.remove(node)) {
+            return;
+        }
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.remove(hash(node + "#" + i), node);
+        }
+    }
+
+    public synchronized T nodeFor(long key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        SortedMap<Long, T> tail = ring.tailMap(mix(key));
+        return tail.isEmpty() ? ring.firstEntry().getValue() : tail.get(tail.firstKey());
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    public synchronized boolean contains(T node) {
+        return nodes.contains(node);
+    }
+
+    private static long hash(String value) {
+        long h = 1125899906842597L;
+        for (int i = 0; i < value.length(); i++) {
+            h = 31 * h + value.charAt(i);
+        }
+        return mix(h);
+    }
+
+    // Финализатор SplitMix64: соседние id комнат разлетаются по всему кольцу
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,356 @@
+package ru.itis.garticphone.gateway;
+
+import com.google.gson.JsonParser;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+import ru.itis.garticphone.common.log.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Шлюз перед несколькими GameServer: по первой строке клиента выбирает бэкенд
+// и дальше просто перекачивает байты в обе стороны
+public class RoomGateway {
+    private static final int PORT = 8000;
+    private static final int VIRTUAL_NODES = 128;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_FIRST_LINE = 64 * 1024;
+    private static final int SESSION_CACHE = 100_000;
+    private static final byte[] JOIN_MARKER = "\"JOIN\"".getBytes(StandardCharsets.US_ASCII);
+
+    private static class Route {
+        private final Backend backend;
+        private int connections;
+
+        private Route(Backend backend) {
+            this.backend = backend;
+        }
+    }
+
+    private record SessionRoute(Backend backend, int roomId) {
+    }
+
+    private final int port;
+    private final ConsistentHashRing<Backend> ring = new ConsistentHashRing<>(VIRTUAL_NODES);
+    private final Map<Integer, Route> rooms = new HashMap<>();
+    private final Map<String, SessionRoute> sessions = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SessionRoute> eldest) {
+            return size() > SESSION_CACHE;
+        }
+    };
+    private final ExecutorService pumps = Executors.newCachedThreadPool();
+    private volatile ServerSocket listener;
+
+    public RoomGateway(int port) {
+        this.port = port;
+    }
+
+    // Аргументы: <порт> <host:port бэкенда>...; в stdin принимаются команды add/remove host:port
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        RoomGateway gateway = new RoomGateway(port);
+        for (int i = 1; i < args.length; i++) {
+            gateway.addBackend(Backend.parse(args[i]));
+        }
+        gateway.open();
+        Log.info("Gateway started on port {}", gateway.getLocalPort());
+
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = console.readLine()) != null) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length != 2) {
+                continue;
+            }
+            switch (parts[0]) {
+                case "add" -> gateway.addBackend(Backend.parse(parts[1]));
+                case "remove" -> gateway.removeBackend(Backend.parse(parts[1]));
+                default -> System.out.println("Commands: add host:port, remove host:port");
+            }
+        }
+    }
+
+    public void open() throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.bind(new InetSocketAddress(port));
+        listener = socket;
+        Thread acceptor = new Thread(this::acceptLoop, "gateway-acceptor");
+        acceptor.start();
+    }
+
+    private void acceptLoop() {
+        while (!listener.isClosed()) {
+            try {
+                Socket client = listener.accept();
+                pumps.execute(() -> handle(client));
+            } catch (IOException e) {
+                if (!listener.isClosed()) {
+                    Log.warn("Gateway accept failed", e);
+                }
+            }
+        }
+    }
+
+    // Новые комнаты распределяются по кольцу; комната с живыми соединениями остаётся на своём бэкенде,
+    // поэтому добавление бэкенда переносит только комнаты, которые начинаются заново
+    public void addBackend(Backend backend) {
+        ring.add(backend);
+    }
+
+    public void removeBackend(Backend backend) {
+        ring.remove(backend);
+    }
+
+    // Соединение клиента: бэкенд, комната, в маршруте которой оно учтено, и токен его сессии
+    private static class Link {
+        private final Backend backend;
+        private int roomId;
+        private Route route;
+        private volatile String token;
+
+        private Link(Backend backend, int roomId, Route route) {
+            this.backend = backend;
+            this.roomId = roomId;
+            this.route = route;
+        }
+    }
+
+    private void handle(Socket client) {
+        Link link = null;
+        Socket server = null;
+        try {
+            client.setTcpNoDelay(true);
+            InputStream clientIn = new BufferedInputStream(client.getInputStream(), BUFFER_SIZE);
+            byte[] first = readLine(clientIn);
+            if (first == null) {
+                return;
+            }
+            Message hello = parse(first);
+            SessionRoute resumed = resumedRoute(hello);
+            int roomId = resumed != null ? resumed.roomId() : hello != null && hello.getType() != null ? hello.getRoomId() : 0;
+            Route route = pin(roomId, resumed != null ? resumed.backend() : null, false);
+            if (route == null) {
+                return;
+            }
+            link = new Link(route.backend, roomId, route);
+            Backend backend = route.backend;
+
+            server = new Socket(backend.host(), backend.port());
+            server.setTcpNoDelay(true);
+            OutputStream serverOut = server.getOutputStream();
+            serverOut.write(first);
+            serverOut.flush();
+
+            InputStream serverIn = new BufferedInputStream(server.getInputStream(), BUFFER_SIZE);
+            Socket upstream = server;
+            Link connection = link;
+            pumps.execute(() -> pumpFromServer(serverIn, client, upstream, connection));
+            pumpFromClient(clientIn, serverOut, link);
+        } catch (IOException ignored) {
+        } finally {
+            if (link != null) {
+                unpin(link.roomId, link.route);
+            }
+            close(client);
+            if (server != null) {
+                close(server);
+            }
+        }
+    }
+
+    // RESUME идёт на бэкенд, где живёт сессия, а не туда, куда номер комнаты хешируется сейчас
+    private SessionRoute resumedRoute(Message hello) {
+        if (hello == null || hello.getType() != MessageType.RESUME) {
+            return null;
+        }
+        String token = tokenOf(hello.getPayload());
+        synchronized (sessions) {
+            return token != null ? sessions.get(token) : null;
+        }
+    }
+
+    // Первый кадр сервера — SESSION: токен запоминается, чтобы RESUME попал на тот же бэкенд
+    private void pumpFromServer(InputStream serverIn, Socket client, Socket server, Link link) {
+        try {
+            OutputStream clientOut = client.getOutputStream();
+            byte[] first = readLine(serverIn);
+            if (first == null) {
+                return;
+            }
+            Message session = parse(first);
+            if (session != null && session.getType() == MessageType.SESSION && session.getPayload() != null) {
+                link.token = session.getPayload();
+                remember(link);
+            }
+            clientOut.write(first);
+            clientOut.flush();
+            pump(serverIn, clientOut);
+        } catch (IOException ignored) {
+        } finally {
+            close(client);
+            close(server);
+        }
+    }
+
+    // Клиентские строки идут построчно: JOIN после LEAVE переводит соединение в новую комнату того же бэкенда.
+    // Комната, живущая на другом бэкенде, отсюда недостижима, и соединение закрывается: клиент входит в неё заново
+    private void pumpFromClient(InputStream clientIn, OutputStream serverOut, Link link) throws IOException {
+        byte[] line;
+        while ((line = readLine(clientIn)) != null) {
+            if (contains(line, JOIN_MARKER)) {
+                Message join = parse(line);
+                if (join != null && join.getType() == MessageType.JOIN && join.getRoomId() != link.roomId) {
+                    Route next = pin(join.getRoomId(), link.backend, true);
+                    if (next == null) {
+                        Log.warn("Room {} lives on another backend, closing connection", join.getRoomId());
+                        return;
+                    }
+                    unpin(link.roomId, link.route);
+                    link.roomId = join.getRoomId();
+                    link.route = next;
+                    remember(link);
+                }
+            }
+            serverOut.write(line);
+            if (clientIn.available() == 0) {
+                serverOut.flush();
+            }
+        }
+    }
+
+    private void remember(Link link) {
+        String token = link.token;
+        if (token == null) {
+            return;
+        }
+        synchronized (sessions) {
+            sessions.put(token, new SessionRoute(link.backend, link.roomId));
+        }
+    }
+
+    // Комната закрепляется за preferred, если у неё нет живого маршрута. Если комната уже живёт на другом
+    // бэкенде, RESUME всё равно идёт на preferred, но в маршруте комнаты не учитывается, а JOIN получает null:
+    // на preferred он создал бы вторую комнату с тем же номером
+    private Route pin(int roomId, Backend preferred, boolean joining) {
+        synchronized (rooms) {
+            boolean preferredAlive = preferred != null && ring.contains(preferred);
+            Route route = rooms.get(roomId);
+            boolean alive = route != null && ring.contains(route.backend);
+            if (alive && preferredAlive && !route.backend.equals(preferred)) {
+                return joining ? null : new Route(preferred);
+            }
+            if (!alive) {
+                Backend backend = preferredAlive ? preferred : ring.nodeFor(roomId);
+                if (backend == null) {
+                    return null;
+                }
+                route = new Route(backend);
+                rooms.put(roomId, route);
+            }
+            route.connections++;
+            return route;
+        }
+    }
+
+    private void unpin(int roomId, Route route) {
+        synchronized (rooms) {
+            if (rooms.get(roomId) == route && --route.connections <= 0) {
+                rooms.remove(roomId);
+            }
+        }
+    }
+
+    public Backend backendFor(int roomId) {
+        synchronized (rooms) {
+            Route route = rooms.get(roomId);
+            return route != null ? route.backend : ring.nodeFor(roomId);
+        }
+    }
+
+    private static void pump(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+            if (in.available() == 0) {
+                out.flush();
+            }
+        }
+    }
+
+    // Строка читается побайтно из буферизованного потока, чтобы не забрать лишнего у последующей перекачки
+    private static boolean contains(byte[] line, byte[] marker) {
+        outer:
+        for (int i = 0; i + marker.length <= line.length; i++) {
+            for (int j = 0; j < marker.length; j++) {
+                if (line[i + j] != marker[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte[] readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        int b;
+        while ((b = in.read()) >= 0) {
+            line.write(b);
+            if (b == '\n' || line.size() >= MAX_FIRST_LINE) {
+                return line.toByteArray();
+            }
+        }
+        return line.size() > 0 ? line.toByteArray() : null;
+    }
+
+    private static Message parse(byte[] line) {
+        try {
+            return Message.parse(new String(line, StandardCharsets.UTF_8).trim());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String tokenOf(String payload) {
+        try {
+            return JsonParser.parseString(payload).getAsJsonObject().get("token").getAsString();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public int getLocalPort() {
+        return listener.getLocalPort();
+    }
+
+    public void stop() {
+        try {
+            listener.close();
+        } catch (IOException ignored) {
+        }
+        pumps.shutdownNow();
+    }
+}
@@ -0,0 +1,28 @@
+package ru.itis.garticphone.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("ru.itis.garticphone.Broadcast")
+@Label("Room Broadcast")
+@Category({"Gartic Phone", "Room"})
+@Description("Рассылка одного сообщения игрокам комнаты, зрителям и в запись раунда")
+@StackTrace(false)
+public class BroadcastEvent extends jdk.jfr.Event {
+    @Label("Room")
+    public int roomId;
+
+    @Label("Message Type")
+    public String messageType;
+
+    @Label("Recipients")
+    public int recipients;
+
+    @Label("Frame Size")
+    @DataAmount
+    public int bytes;
+}
@@ -0,0 +1,25 @@
+package ru.itis.garticphone.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("ru.itis.garticphone.ChainReveal")
+@Label("Chain Reveal")
+@Category({"Gartic Phone", "Room"})
+@Description("Сборка и рассылка итоговой цепочки DEAF_PHONE")
+@StackTrace(false)
+public class ChainRevealEvent extends jdk.jfr.Event {
+    @Label("Room")
+    public int roomId;
+
+    @Label("Steps")
+    public int steps;
+
+    @Label("Frame Size")
+    @DataAmount
+    public int bytes;
+}
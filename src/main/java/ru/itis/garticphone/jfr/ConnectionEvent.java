@@ -0,0 +1,23 @@
+package ru.itis.garticphone.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("ru.itis.garticphone.Connection")
+@Label("Client Connection")
+@Category({"Gartic Phone", "Protocol"})
+@Description("Жизнь соединения в ClientHandler от подключения до закрытия")
+@StackTrace(false)
+public class ConnectionEvent extends jdk.jfr.Event {
+    @Label("Player")
+    public int playerId;
+
+    @Label("Messages")
+    public long messages;
+
+    @Label("Resumed")
+    public boolean resumed;
+}
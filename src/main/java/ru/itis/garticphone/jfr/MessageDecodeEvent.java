@@ -0,0 +1,22 @@
+package ru.itis.garticphone.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("ru.itis.garticphone.MessageDecode")
+@Label("Message Decode")
+@Category({"Gartic Phone", "Protocol"})
+@Description("Разбор одной входящей строки JSON в Message")
+@StackTrace(false)
+public class MessageDecodeEvent extends jdk.jfr.Event {
+    @Label("Message Type")
+    public String messageType;
+
+    @Label("Size")
+    @DataAmount
+    public int bytes;
+}
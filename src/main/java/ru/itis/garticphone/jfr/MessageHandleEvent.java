@@ -0,0 +1,26 @@
+package ru.itis.garticphone.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("ru.itis.garticphone.MessageHandle")
+@Label("Message Handle")
+@Category({"Gartic Phone", "Protocol"})
+@Description("Обработка сообщения в GameService.routeMessage, включая ожидание блокировок комнаты")
+@StackTrace(false)
+public class MessageHandleEvent extends jdk.jfr.Event {
+    @Label("Message Type")
+    public String messageType;
+
+    @Label("Room")
+    public int roomId;
+
+    @Label("Player")
+    public int playerId;
+
+    @Label("Throttled")
+    public boolean throttled;
+}
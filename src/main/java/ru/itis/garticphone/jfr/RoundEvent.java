@@ -0,0 +1,28 @@
+package ru.itis.garticphone.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Начинается в handleStart и фиксируется в endRound, поэтому длительность события — длительность раунда
+@Name("ru.itis.garticphone.Round")
+@Label("Round")
+@Category({"Gartic Phone", "Room"})
+@Description("Раунд от START до конца раунда")
+@StackTrace(false)
+public class RoundEvent extends jdk.jfr.Event {
+    @Label("Room")
+    public int roomId;
+
+    @Label("Mode")
+    public String mode;
+
+    @Label("Players")
+    public int players;
+
+    @Label("Guessed")
+    @Description("Раунд закончился раньше таймера: верной догадкой или выходом игроков")
+    public boolean guessed;
+}
@@ -0,0 +1,23 @@
+package ru.itis.garticphone.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+// Пишется только долгая запись: быстрый flush в записи не нужен, а медленный означает полный буфер сокета
+@Name("ru.itis.garticphone.SocketWriteStall")
+@Label("Socket Write Stall")
+@Category({"Gartic Phone", "Protocol"})
+@Description("Сброс исходящих кадров в сокет, занявший больше порога")
+@Threshold("20 ms")
+public class SocketWriteEvent extends jdk.jfr.Event {
+    @Label("Remote Address")
+    public String remote;
+
+    @Label("Size")
+    @DataAmount
+    public int bytes;
+}
@@ -0,0 +1,234 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+import ru.itis.garticphone.common.log.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Файл галереи — готовый ответ на GALLERY: строка-заголовок {gallery, chains} и по кадру GALLERY с цепочкой.
+// Кадры идут вне нумерации seq, поэтому у всех тип GALLERY: клиент не считает их при RESUME.
+// Отдаётся в сокет через FileChannel.transferTo, минуя кучу; горячие файлы держатся открытыми в LRU.
+// На диске остаются только retainFiles последних файлов, более старые удаляются вместе со ссылками на них
+public class ChainGallery implements Closeable {
+    static final String EXTENSION = ".gallery";
+    private static final int DEFAULT_RETAIN_FILES = 1000;
+
+    // Открытый файл и число текущих передач: вытесненный из LRU закрывается последней из них
+    private static final class Entry {
+        private final FileChannel channel;
+        private final long size;
+        private int users;
+        private boolean evicted;
+
+        private Entry(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    private final Path dir;
+    private final int openLimit;
+    private final int retainFiles;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "gallery-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<Integer, Path> latest = new ConcurrentHashMap<>();
+    private final LinkedHashMap<Path, Entry> open = new LinkedHashMap<>(16, 0.75f, true);
+    // Файлы на диске от старых к новым; меняется только в потоке записи
+    private final ArrayDeque<Path> stored = new ArrayDeque<>();
+
+    public ChainGallery(Path dir, int openLimit) throws IOException {
+        this(dir, openLimit, DEFAULT_RETAIN_FILES);
+    }
+
+    public ChainGallery(Path dir, int openLimit, int retainFiles) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.openLimit = Math.max(1, openLimit);
+        this.retainFiles = Math.max(1, retainFiles);
+        try (Stream<Path> files = Files.list(this.dir)) {
+            files.filter(path -> path.getFileName().toString().endsWith(EXTENSION))
+                    .sorted(Comparator.comparingLong(ChainGallery::modifiedMillis))
+                    .forEach(stored::add);
+        }
+        writer.execute(this::trim);
+    }
+
+    // Кадры собираются и кодируются в потоке записи; файл появляется под своим именем только целиком
+    public void store(int roomId, Supplier<List<Message>> chains) {
+        writer.execute(() -> {
+            String name = "room-" + roomId + "-" + System.currentTimeMillis() + EXTENSION;
+            Path path = dir.resolve(name);
+            Path temp = dir.resolve(name + ".tmp");
+            try {
+                List<Message> frames = chains.get();
+                try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    Message header = new Message(MessageType.GALLERY, roomId, 0, "SERVER",
+                            "{\"gallery\":\"" + name + "\",\"chains\":" + frames.size() + "}");
+                    out.write(Message.toJson(header));
+                    out.write('\n');
+                    for (Message frame : frames) {
+                        out.write(Message.toJson(new Message(MessageType.GALLERY, roomId, 0, "SERVER",
+                                frame.getPayload())));
+                        out.write('\n');
+                    }
+                }
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+                latest.put(roomId, path);
+                stored.add(path);
+                trim();
+            } catch (IOException | RuntimeException e) {
+                Log.error("Gallery write failed", e);
+            }
+        });
+    }
+
+    private void trim() {
+        while (stored.size() > retainFiles) {
+            Path old = stored.poll();
+            latest.values().removeIf(old::equals);
+            discard(old);
+            try {
+                Files.deleteIfExists(old);
+            } catch (IOException e) {
+                Log.error("Gallery delete failed", e);
+            }
+        }
+    }
+
+    private static long modifiedMillis(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    public Path getLatest(int roomId) {
+        return latest.get(roomId);
+    }
+
+    public Path resolve(String name) {
+        if (name.contains("/") || name.contains("\\") || !name.endsWith(EXTENSION)) {
+            return null;
+        }
+        Path path = dir.resolve(name);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    public void send(Path path, Player player) throws IOException {
+        Entry entry = acquire(path);
+        try {
+            player.sendFile(entry.channel, 0, entry.size);
+        } finally {
+            release(entry);
+        }
+    }
+
+    private synchronized Entry acquire(Path path) throws IOException {
+        Entry entry = open.get(path);
+        if (entry == null) {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            entry = new Entry(channel, channel.size());
+            open.put(path, entry);
+            evictOverLimit();
+        }
+        entry.users++;
+        return entry;
+    }
+
+    private synchronized void release(Entry entry) {
+        entry.users--;
+        if (entry.evicted && entry.users == 0) {
+            closeQuietly(entry.channel);
+        }
+    }
+
+    private void evictOverLimit() {
+        Iterator<Entry> iterator = open.values().iterator();
+        while (open.size() > openLimit && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            eldest.evicted = true;
+            if (eldest.users == 0) {
+                closeQuietly(eldest.channel);
+            }
+        }
+    }
+
+    // Удалённый файл больше не выдаётся; идущие передачи дочитывают уже открытый канал
+    private synchronized void discard(Path path) {
+        Entry entry = open.remove(path);
+        if (entry != null) {
+            entry.evicted = true;
+            if (entry.users == 0) {
+                closeQuietly(entry.channel);
+            }
+        }
+    }
+
+    synchronized int getOpenCount() {
+        return open.size();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // Дожидается записи всего, что было поставлено в очередь до вызова
+    public void flush() {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+        }
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Entry entry : new ArrayList<>(open.values())) {
+                entry.evicted = true;
+                if (entry.users == 0) {
+                    closeQuietly(entry.channel);
+                }
+            }
+            open.clear();
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package ru.itis.garticphone.server;
 
 import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.JsonMessageConnection;
 import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+import ru.itis.garticphone.common.TrafficCapture;
+import ru.itis.garticphone.jfr.ConnectionEvent;
+import ru.itis.garticphone.common.log.Log;
 
 import java.io.IOException;
 import java.net.Socket;
@@ -9,32 +14,69 @@ import java.net.Socket;
 public class ClientHandler implements Runnable {
 
     private final Socket socket;
-    private final Player player;
+    private final JsonMessageConnection connection;
+    private volatile Player player;
     private final GameService gameService;
 
     public ClientHandler(Socket socket, int playerId, GameService gameService) throws IOException {
+        this(socket, playerId, gameService, null);
+    }
+
+    public ClientHandler(Socket socket, int playerId, GameService gameService, TrafficCapture capture) throws IOException {
         this.socket = socket;
+        socket.setSoTimeout(GameService.READ_TIMEOUT_MILLIS);
         this.player = new Player(playerId, "Player" + playerId, socket);
+        this.connection = player.getConnection();
+        if (capture != null) {
+            connection.setCapture(capture, playerId);
+        }
         this.gameService = gameService;
     }
 
     @Override
     public void run() {
+        ConnectionEvent event = new ConnectionEvent();
+        event.begin();
+        long messages = 0;
+        boolean resumedSession = false;
         try {
             gameService.onConnect(player);
 
             Message message;
-            while ((message = player.receiveLine()) != null) {
+            while ((message = connection.receive()) != null) {
+                messages++;
+                if (message.getType() == MessageType.RESUME) {
+                    Player resumed = gameService.resume(player, message);
+                    if (resumed != null) {
+                        player = resumed;
+                        resumedSession = true;
+                    }
+                    continue;
+                }
+                if (message.getTrace() != null) {
+                    message.getTrace().setReceived(System.nanoTime());
+                }
                 gameService.routeMessage(player, message);
             }
         } catch (Exception e) {
-            System.out.println("Client disconnected: " + player.getId());
+            Log.info("Client disconnected: {}", player.getId());
         } finally {
-            gameService.onDisconnect(player);
+            connection.recordClose();
+            // После RESUME с другого сокета игрок уже привязан к новому соединению
+            if (player.getConnection() == connection) {
+                gameService.onDisconnect(player);
+            }
             try {
-                player.close();
+                connection.close();
             } catch (IOException ignored) {
             }
+            event.end();
+            if (event.shouldCommit()) {
+                event.playerId = player.getId();
+                event.messages = messages;
+                event.resumed = resumedSession;
+                event.commit();
+            }
         }
     }
 
@@ -45,4 +87,4 @@ public class ClientHandler implements Runnable {
     public Socket getSocket() {
         return socket;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,119 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+public class ConnectionReaper {
+    private static final int WHEEL_SIZE = 64;
+
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier clock;
+    private final long tickNanos;
+    private final long pingIntervalNanos;
+    private final long deadlineNanos;
+    private final List<Set<Player>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private int cursor;
+    private boolean started;
+    private long reaped;
+
+    public ConnectionReaper(ScheduledExecutorService scheduler, long tickMillis, long pingIntervalMillis, long deadlineMillis) {
+        this(scheduler, System::nanoTime, tickMillis, pingIntervalMillis, deadlineMillis);
+    }
+
+    public ConnectionReaper(ScheduledExecutorService scheduler, LongSupplier clock,
+                            long tickMillis, long pingIntervalMillis, long deadlineMillis) {
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pingIntervalMillis);
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new HashSet<>());
+        }
+    }
+
+    public synchronized void register(Player player) {
+        if (!started) {
+            started = true;
+            long tick = TimeUnit.NANOSECONDS.toMillis(tickNanos);
+            scheduler.scheduleAtFixedRate(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+        }
+        schedule(player, pingIntervalNanos);
+    }
+
+    public synchronized void unregister(Player player) {
+        for (Set<Player> slot : wheel) {
+            if (slot.remove(player)) {
+                return;
+            }
+        }
+    }
+
+    void tick() {
+        tick(clock.getAsLong());
+    }
+
+    // Каждый тик проверяется только одна ячейка колеса, а не все соединения сервера
+    void tick(long now) {
+        List<Player> toPing = new ArrayList<>();
+        List<Player> toClose = new ArrayList<>();
+        synchronized (this) {
+            Set<Player> slot = wheel.get(cursor);
+            cursor = (cursor + 1) % WHEEL_SIZE;
+            if (slot.isEmpty()) {
+                return;
+            }
+            List<Player> due = new ArrayList<>(slot);
+            slot.clear();
+
+            for (Player player : due) {
+                if (player.isDisconnected() || player.getConnection() == null) {
+                    continue;
+                }
+                long idle = now - player.getLastSeen();
+                if (idle >= deadlineNanos) {
+                    reaped++;
+                    toClose.add(player);
+                } else if (idle >= pingIntervalNanos) {
+                    toPing.add(player);
+                    schedule(player, Math.min(pingIntervalNanos, deadlineNanos - idle));
+                } else {
+                    schedule(player, pingIntervalNanos - idle);
+                }
+            }
+        }
+
+        for (Player player : toClose) {
+            try {
+                player.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (!toPing.isEmpty()) {
+            Message ping = new Message(MessageType.PING, 0, 0, "SERVER", null);
+            for (Player player : toPing) {
+                player.send(ping);
+            }
+        }
+    }
+
+    private void schedule(Player player, long delayNanos) {
+        long ticks = Math.max(1, (delayNanos + tickNanos - 1) / tickNanos);
+        ticks = Math.min(ticks, WHEEL_SIZE - 1);
+        wheel.get((int) ((cursor + ticks - 1) % WHEEL_SIZE)).add(player);
+    }
+
+    public synchronized long getReaped() {
+        return reaped;
+    }
+}
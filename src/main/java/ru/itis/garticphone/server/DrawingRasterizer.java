@@ -0,0 +1,263 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.common.Stroke;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Рисунок DEAF_PHONE — подряд идущие шаги DRAW одной цепочки; он растеризуется в PNG-миниатюру
+// на ограниченном пуле (Java2D без экрана), готовые миниатюры лежат в LRU с лимитом по байтам
+public class DrawingRasterizer implements Closeable {
+    static final int WIDTH = 160;
+    static final int HEIGHT = 120;
+    private static final int PADDING = 4;
+    private static final int QUEUE_LIMIT = 64;
+    private static final Map<String, Color> NAMED_COLORS = Map.of(
+            "black", Color.BLACK, "white", Color.WHITE, "red", Color.RED, "green", Color.GREEN,
+            "blue", Color.BLUE, "yellow", Color.YELLOW, "orange", Color.ORANGE, "gray", Color.GRAY,
+            "pink", Color.PINK, "purple", new Color(128, 0, 128));
+
+    static {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+    }
+
+    // Номера комнат переиспользуются, поэтому в ключе есть хеш содержимого рисунка
+    public record Key(int roomId, int chainId, int step, long contentHash) {
+        static Key of(int roomId, int chainId, int step, List<ChainStep> drawing) {
+            long hash = 0xcbf29ce484222325L;
+            for (ChainStep part : drawing) {
+                for (byte b : part.getDrawing()) {
+                    hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+                }
+                hash = (hash ^ '\n') * 0x100000001b3L;
+            }
+            return new Key(roomId, chainId, step, hash);
+        }
+    }
+
+    private final ThreadPoolExecutor workers;
+    private final long cacheBytes;
+    private final LinkedHashMap<Key, byte[]> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Key, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private long cachedBytes;
+
+    public DrawingRasterizer(int threads, long cacheBytes) {
+        this.cacheBytes = cacheBytes;
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_LIMIT), task -> {
+            Thread thread = new Thread(task, "rasterizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Миниатюры всех рисунков цепочки: индекс первого шага рисунка → PNG. Не успевшие к сроку
+    // рисунки в ответ не попадают и дорисовываются в кэш для следующих запросов
+    public Map<Integer, byte[]> renderChain(int roomId, int chainId, List<ChainStep> steps, long timeoutMillis) {
+        return renderChainAsync(roomId, chainId, steps, timeoutMillis).join();
+    }
+
+    // То же без ожидания: результат завершается, когда готовы все рисунки или истёк срок
+    public CompletableFuture<Map<Integer, byte[]>> renderChainAsync(int roomId, int chainId, List<ChainStep> steps,
+                                                                    long timeoutMillis) {
+        Map<Integer, CompletableFuture<byte[]>> pending = new HashMap<>();
+        int start = -1;
+        for (int i = 0; i <= steps.size(); i++) {
+            boolean drawing = i < steps.size() && !steps.get(i).isTextStep();
+            if (drawing && start < 0) {
+                start = i;
+            } else if (!drawing && start >= 0) {
+                pending.put(start, render(Key.of(roomId, chainId, start, steps.subList(start, i)), steps.subList(start, i)));
+                start = -1;
+            }
+        }
+
+        return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[0]))
+                .exceptionally(e -> null)
+                .completeOnTimeout(null, timeoutMillis, TimeUnit.MILLISECONDS)
+                .thenApply(ignored -> {
+                    Map<Integer, byte[]> images = new HashMap<>();
+                    for (Map.Entry<Integer, CompletableFuture<byte[]>> entry : pending.entrySet()) {
+                        CompletableFuture<byte[]> future = entry.getValue();
+                        byte[] png = future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+                        if (png != null) {
+                            images.put(entry.getKey(), png);
+                        }
+                    }
+                    return images;
+                });
+    }
+
+    public CompletableFuture<byte[]> render(Key key, List<ChainStep> drawing) {
+        byte[] cached = getCached(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        List<byte[]> payloads = new ArrayList<>(drawing.size());
+        for (ChainStep step : drawing) {
+            payloads.add(step.getDrawing());
+        }
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            return running;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    byte[] png = rasterize(payloads);
+                    if (png != null) {
+                        put(key, png);
+                    }
+                    future.complete(png);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Очередь полна: рисунок уйдёт штрихами, как без растеризатора
+            inFlight.remove(key, future);
+            future.complete(null);
+        }
+        return future;
+    }
+
+    // null — в рисунке нет ни одного распознанного штриха
+    static byte[] rasterize(List<byte[]> payloads) {
+        List<Stroke> strokes = new ArrayList<>();
+        for (byte[] payload : payloads) {
+            String json = new String(payload, StandardCharsets.UTF_8);
+            if (Stroke.isClear(json)) {
+                strokes.clear();
+                continue;
+            }
+            Stroke stroke = Stroke.parse(json);
+            if (stroke != null) {
+                strokes.add(stroke);
+            }
+        }
+        if (strokes.isEmpty()) {
+            return null;
+        }
+
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (Stroke stroke : strokes) {
+            float[] points = stroke.getPoints();
+            for (int i = 0; i < points.length; i += 2) {
+                minX = Math.min(minX, points[i]);
+                maxX = Math.max(maxX, points[i]);
+                minY = Math.min(minY, points[i + 1]);
+                maxY = Math.max(maxY, points[i + 1]);
+            }
+        }
+        // Рисунок вписывается в миниатюру целиком с сохранением пропорций
+        double scale = Math.min((WIDTH - 2.0 * PADDING) / Math.max(1, maxX - minX),
+                (HEIGHT - 2.0 * PADDING) / Math.max(1, maxY - minY));
+        double offsetX = (WIDTH - (maxX - minX) * scale) / 2 - minX * scale;
+        double offsetY = (HEIGHT - (maxY - minY) * scale) / 2 - minY * scale;
+
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, WIDTH, HEIGHT);
+            for (Stroke stroke : strokes) {
+                float[] points = stroke.getPoints();
+                Path2D.Float path = new Path2D.Float();
+                path.moveTo(points[0] * scale + offsetX, points[1] * scale + offsetY);
+                for (int i = 2; i < points.length; i += 2) {
+                    path.lineTo(points[i] * scale + offsetX, points[i + 1] * scale + offsetY);
+                }
+                g.setColor(color(stroke.getColor()));
+                g.setStroke(new BasicStroke((float) Math.max(1, stroke.getSize() * scale),
+                        BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                g.draw(path);
+            }
+        } finally {
+            g.dispose();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static Color color(String name) {
+        if (name.startsWith("#") && name.length() == 7) {
+            try {
+                return new Color(Integer.parseInt(name.substring(1), 16));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return NAMED_COLORS.getOrDefault(name.toLowerCase(), Color.BLACK);
+    }
+
+    public synchronized byte[] getCached(Key key) {
+        return cache.get(key);
+    }
+
+    private synchronized void put(Key key, byte[] png) {
+        byte[] old = cache.put(key, png);
+        cachedBytes += png.length - (old == null ? 0 : old.length);
+        Iterator<byte[]> iterator = cache.values().iterator();
+        while (cachedBytes > cacheBytes && iterator.hasNext()) {
+            cachedBytes -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    // Комната закрыта или начала новую игру: её миниатюры больше не понадобятся
+    public synchronized void evictRoom(int roomId) {
+        Iterator<Map.Entry<Key, byte[]>> iterator = cache.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, byte[]> entry = iterator.next();
+            if (entry.getKey().roomId() == roomId) {
+                cachedBytes -= entry.getValue().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+}
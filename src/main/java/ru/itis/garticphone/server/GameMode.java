@@ -3,5 +3,11 @@ package ru.itis.garticphone.server;
 public enum GameMode {
     LOBBY,
     GUESS_DRAWING,
-    DEAF_PHONE
-}
\ No newline at end of file
+    DEAF_PHONE,
+    STAGE;
+
+    // STAGE — тот же режим угадывания рисунка, но для сотен зрителей-угадывающих
+    public boolean isDrawing() {
+        return this == GUESS_DRAWING || this == STAGE;
+    }
+}
@@ -1,52 +1,286 @@
 package ru.itis.garticphone.server;
 
-import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.TrafficCapture;
+import ru.itis.garticphone.common.log.Log;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.HashMap;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GameServer {
 
     private static final int PORT = 8080;
+    private static final int DEFAULT_BACKLOG = 1024;
+    private static final int GALLERY_OPEN_FILES = 64;
+    private static final int GALLERY_RETAINED_FILES = 1000;
+    private static final long THUMBNAIL_CACHE_BYTES = 16 * 1024 * 1024;
 
-    private final Map<Socket, Player> players = new HashMap<>();
+    private final int port;
+    private final int acceptors;
+    private final int backlog;
+    private final Map<Socket, ClientHandler> handlers = new ConcurrentHashMap<>();
     private final ExecutorService executorService = Executors.newCachedThreadPool();
     private final ScheduledExecutorService roundScheduler = Executors.newScheduledThreadPool(1);
-    private final GameService gameService = new GameService(roundScheduler);
+    private final RoomJournal journal;
+    private final ReplayRecorder recorder;
+    private final GameService gameService;
+    private final DrawingRasterizer rasterizer = new DrawingRasterizer(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2), THUMBNAIL_CACHE_BYTES);
+    private final List<ServerSocketChannel> channels = new ArrayList<>();
+    private volatile TrafficCapture capture;
+    private volatile ChainGallery gallery;
+    private final AtomicInteger nextPlayerId = new AtomicInteger(1);
+    private volatile int localPort;
+    private boolean stopped;
+    // start() ждёт stop(), а не акцепторов: на время передачи комнат они закрываются и могут открыться снова
+    private final CountDownLatch stopLatch = new CountDownLatch(1);
 
-    private int nextPlayerId = 1;
+    public GameServer() {
+        this(PORT, 1, DEFAULT_BACKLOG);
+    }
+
+    public GameServer(int port, int acceptors, int backlog) {
+        this(port, acceptors, backlog, null);
+    }
+
+    // С журналом комнаты поднимаются после перезапуска, а новые id игроков не пересекаются со старыми
+    public GameServer(int port, int acceptors, int backlog, RoomJournal journal) {
+        this(port, acceptors, backlog, journal, null);
+    }
 
-    public static void main(String[] args) {
-        new GameServer().start();
+    public GameServer(int port, int acceptors, int backlog, RoomJournal journal, ReplayRecorder recorder) {
+        this.port = port;
+        this.acceptors = Math.max(1, acceptors);
+        this.backlog = backlog;
+        this.journal = journal;
+        this.recorder = recorder;
+        this.gameService = new GameService(roundScheduler, journal, recorder);
+        gameService.setRasterizer(rasterizer);
+        nextPlayerId.set(gameService.getMaxPlayerId() + 1);
+    }
+
+    // Аргументы: [порт] [число акцепторов] [backlog] [--journal=каталог] [--replays=каталог] [--capture=файл] [--gallery=каталог] [--handoff-port=порт] [--takeover=порт]
+    public static void main(String[] args) throws IOException {
+        List<String> positional = new ArrayList<>();
+        RoomJournal journal = null;
+        ReplayRecorder recorder = null;
+        TrafficCapture capture = null;
+        ChainGallery gallery = null;
+        int handoffPort = -1;
+        int takeoverPort = -1;
+        for (String arg : args) {
+            if (arg.startsWith("--journal=")) {
+                journal = RoomJournal.open(Path.of(arg.substring("--journal=".length())));
+            } else if (arg.startsWith("--replays=")) {
+                recorder = new ReplayRecorder(Path.of(arg.substring("--replays=".length())));
+            } else if (arg.startsWith("--capture=")) {
+                capture = new TrafficCapture(Path.of(arg.substring("--capture=".length())));
+            } else if (arg.startsWith("--gallery=")) {
+                gallery = new ChainGallery(Path.of(arg.substring("--gallery=".length())), GALLERY_OPEN_FILES,
+                        GALLERY_RETAINED_FILES);
+            } else if (arg.startsWith("--handoff-port=")) {
+                handoffPort = Integer.parseInt(arg.substring("--handoff-port=".length()));
+            } else if (arg.startsWith("--takeover=")) {
+                takeoverPort = Integer.parseInt(arg.substring("--takeover=".length()));
+            } else {
+                positional.add(arg);
+            }
+        }
+        int port = positional.size() > 0 ? Integer.parseInt(positional.get(0)) : PORT;
+        int acceptors = positional.size() > 1 ? Integer.parseInt(positional.get(1)) : Runtime.getRuntime().availableProcessors();
+        int backlog = positional.size() > 2 ? Integer.parseInt(positional.get(2)) : DEFAULT_BACKLOG;
+
+        GameServer server = new GameServer(port, acceptors, backlog, journal, recorder);
+        server.setCapture(capture);
+        server.setGallery(gallery);
+        if (takeoverPort > 0) {
+            server.open();
+            RoomHandoff.takeOver(server, takeoverPort);
+        }
+        if (handoffPort > 0) {
+            RoomHandoff.listen(server, new ServerSocket(handoffPort, 1, InetAddress.getLoopbackAddress()));
+        }
+        server.start();
     }
 
     public void start() {
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            System.out.println("Game server started on port " + PORT);
-            while (!serverSocket.isClosed()) {
-                Socket clientSocket = serverSocket.accept();
-                int id = getNextPlayerId();
-                ClientHandler handler = new ClientHandler(clientSocket, id, gameService);
-                synchronized (players) {
-                    players.put(clientSocket, handler.getPlayer());
-                }
-                executorService.submit(handler); // Пул потоков
+        try {
+            open();
+            Log.info("Game server started on port {} with {} acceptor(s)", localPort, acceptors);
+            stopLatch.await();
+        } catch (IOException e) {
+            Log.error("Game server failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stop();
+        }
+    }
+
+    // С SO_REUSEPORT у каждого акцептора свой слушающий сокет и своя очередь в ядре,
+    // иначе акцепторы делят один канал
+    public synchronized void open() throws IOException {
+        if (stopped || !channels.isEmpty()) {
+            return;
+        }
+        ServerSocketChannel first = ServerSocketChannel.open();
+        boolean reusePort = first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        if (reusePort) {
+            first.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        // Повторное открытие после отменённой передачи занимает тот же порт, даже если он был выбран системой
+        first.bind(new InetSocketAddress(localPort != 0 ? localPort : port), backlog);
+        localPort = first.socket().getLocalPort();
+        channels.add(first);
+
+        for (int i = 0; i < acceptors; i++) {
+            ServerSocketChannel channel = first;
+            if (reusePort && i > 0) {
+                channel = ServerSocketChannel.open();
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                channel.bind(new InetSocketAddress(localPort), backlog);
+                channels.add(channel);
             }
+            ServerSocketChannel source = channel;
+            Thread thread = new Thread(() -> acceptLoop(source), "acceptor-" + i);
+            thread.start();
+        }
+    }
+
+    private void acceptLoop(ServerSocketChannel channel) {
+        while (channel.isOpen()) {
+            try {
+                SocketChannel client = channel.accept();
+                executorService.submit(() -> serve(client.socket())); // Пул потоков
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                Log.warn("Accept failed", e);
+            }
+        }
+    }
+
+    private void serve(Socket clientSocket) {
+        ClientHandler handler;
+        try {
+            handler = new ClientHandler(clientSocket, getNextPlayerId(), gameService, capture);
         } catch (IOException e) {
-            e.printStackTrace();
+            try {
+                clientSocket.close();
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+        handlers.put(clientSocket, handler);
+        try {
+            handler.run();
         } finally {
-            executorService.shutdownNow();
-            roundScheduler.shutdownNow();
+            handlers.remove(clientSocket);
+        }
+    }
+
+    // Старый процесс перестаёт принимать соединения и замораживает комнаты; снимок уходит новому процессу
+    public List<RoomSnapshot> beginDrain() {
+        closeChannels();
+        return gameService.freeze();
+    }
+
+    // Новый процесс принял комнаты: клиентам отправляется REDIRECT, после чего процесс завершается
+    public void finishDrain(int targetPort) {
+        for (ClientHandler handler : handlers.values()) {
+            gameService.redirect(handler.getPlayer(), targetPort);
+        }
+        stop();
+    }
+
+    // Передача не удалась: текущие игроки продолжают играть здесь, акцепторы снова слушают прежний порт
+    public void abortDrain() {
+        gameService.thaw();
+        try {
+            open();
+        } catch (IOException e) {
+            Log.error("Could not reopen listeners after aborted handoff", e);
+        }
+    }
+
+    public void adopt(List<RoomSnapshot> rooms) {
+        gameService.adopt(rooms);
+        nextPlayerId.accumulateAndGet(gameService.getMaxPlayerId() + 1, Math::max);
+    }
+
+    private synchronized void closeChannels() {
+        for (ServerSocketChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+        channels.clear();
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        stopLatch.countDown();
+        closeChannels();
+        executorService.shutdownNow();
+        roundScheduler.shutdownNow();
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (recorder != null) {
+            recorder.close();
         }
+        if (capture != null) {
+            try {
+                capture.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (gallery != null) {
+            gallery.close();
+        }
+        rasterizer.close();
+        Log.flush();
+    }
+
+    public void setGallery(ChainGallery gallery) {
+        this.gallery = gallery;
+        gameService.setGallery(gallery);
+    }
+
+    // Запись входящего трафика для TrafficReplay; действует на соединения, принятые после вызова
+    public void setCapture(TrafficCapture capture) {
+        this.capture = capture;
+    }
+
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    public int getConnectedCount() {
+        return handlers.size();
     }
 
     private int getNextPlayerId() {
-        return nextPlayerId++;
+        return nextPlayerId.getAndIncrement();
     }
 }
@@ -1,82 +1,498 @@
 package ru.itis.garticphone.server;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import ru.itis.garticphone.client.Player;
 import ru.itis.garticphone.client.PlayerState;
+import ru.itis.garticphone.common.JsonMessageConnection;
 import ru.itis.garticphone.common.Message;
 import ru.itis.garticphone.common.MessageType;
+import ru.itis.garticphone.common.Trace;
+import ru.itis.garticphone.common.payload.ContentPayload;
+import ru.itis.garticphone.common.payload.CorrectPayload;
+import ru.itis.garticphone.common.payload.ErrorPayload;
+import ru.itis.garticphone.common.payload.FinalChainPayload;
+import ru.itis.garticphone.common.payload.PlayerStatusPayload;
+import ru.itis.garticphone.common.payload.ReplayFramePayload;
+import ru.itis.garticphone.common.payload.StartPayload;
+import ru.itis.garticphone.common.payload.WordPayload;
+import ru.itis.garticphone.jfr.BroadcastEvent;
+import ru.itis.garticphone.jfr.ChainRevealEvent;
+import ru.itis.garticphone.jfr.MessageHandleEvent;
+import ru.itis.garticphone.jfr.RoundEvent;
+import ru.itis.garticphone.common.log.Log;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 
+import static java.util.Base64.getDecoder;
 import static java.util.Base64.getEncoder;
 
 public class GameService {
-    private final Map<Integer, GameState> rooms = new HashMap<>();
-    private final Map<Integer, String> secretWords = new HashMap<>();
+    private static final int SESSION_GRACE_SECONDS = 30;
+    private static final long EMPTY_ROOM_TTL_MILLIS = 60_000;
+    private static final long FINISHED_ROOM_TTL_MILLIS = 10 * 60_000;
+    private static final long EVICTION_PERIOD_MILLIS = 30_000;
+    private static final long PENDING_FLUSH_MILLIS = 100;
+    private static final long PING_INTERVAL_MILLIS = 15_000;
+    private static final long IDLE_DEADLINE_MILLIS = 45_000;
+    private static final long STAGE_TICK_MILLIS = 1000;
+    private static final long SPECTATOR_TICK_MILLIS = 100;
+    private static final int SPECTATOR_WRITERS = 2;
+    private static final int REPLAY_STREAMS = 4;
+    private static final int REPLAY_STREAM_QUEUE = 16;
+    private static final long SNAPSHOT_PERIOD_MILLIS = 60_000;
+    private static final long THUMBNAIL_WAIT_MILLIS = 200;
+    private static final long GALLERY_THUMBNAIL_WAIT_MILLIS = 5000;
+    private static final double MIN_REPLAY_SPEED = 0.25;
+    private static final double MAX_REPLAY_SPEED = 64;
+    static final int READ_TIMEOUT_MILLIS = (int) (IDLE_DEADLINE_MILLIS + PING_INTERVAL_MILLIS);
+
+    private static final Message INVALID_RESUME = errorMessage("400", "Invalid resume payload");
+    private static final Message SESSION_EXPIRED = errorMessage("410", "Session expired");
+    private static final Message INVALID_LAST_SEQ = errorMessage("416", "Resume position is ahead of sent frames");
+    private static final Message TYPE_NOT_SET = errorMessage("400", "Message type is not set");
+    private static final Message JOIN_FROM_GAME = errorMessage("400", "Cannot join room from game state");
+    private static final Message READY_NOT_IN_LOBBY = errorMessage("400", "READY is allowed only in lobby");
+    private static final Message START_NOT_IN_LOBBY = errorMessage("400", "START is allowed only from lobby");
+    private static final Message CHAT_NOT_AVAILABLE = errorMessage("400", "Chat is not available in this state");
+    private static final Message NOT_IN_GAME = errorMessage("400", "Game actions are allowed only in game");
+    private static final Message ROOM_NOT_FOUND = errorMessage("404", "Room not found");
+    private static final Message EMPTY_DRAWING = errorMessage("400", "Empty drawing payload");
+    private static final Message EMPTY_GUESS = errorMessage("400", "Empty guess or secret word is not set");
+    private static final Message NOT_HOST = errorMessage("403", "Only host can start the game");
+    private static final Message NOT_ENOUGH_READY = errorMessage("412", "Not enough ready players");
+    private static final Message TEXT_SUBMIT_WRONG_MODE = errorMessage("400", "Invalid mode for TEXT_SUBMIT");
+    private static final Message EMPTY_TEXT = errorMessage("400", "Text payload is empty");
+    private static final Message NOT_DRAWER = errorMessage("403", "Only the drawer can draw this round");
+    private static final Message DRAWER_CANNOT_GUESS = errorMessage("403", "The drawer cannot guess");
+    private static final Message SPECTATE_FROM_ROOM = errorMessage("400", "SPECTATE is allowed only outside a room");
+    private static final Message INVALID_REPLAY = errorMessage("400", "Invalid replay request");
+    private static final Message REPLAY_NOT_FOUND = errorMessage("404", "Replay not found");
+    private static final Message GALLERY_NOT_FOUND = errorMessage("404", "Gallery not found");
+    private static final Message STREAMS_BUSY = errorMessage("503", "Too many replay streams");
+    private static final Message THROTTLED = errorMessage("429", "Too many messages");
+
+    // Чтение по id идёт без блокировки; составные операции (создание, обход, вытеснение) — под synchronized (rooms)
+    private final Map<Integer, GameState> rooms = new ConcurrentHashMap<>();
+    private final Map<Integer, String> secretWords = new ConcurrentHashMap<>();
     private final List<String> words = new ArrayList<>();
     private final ScheduledExecutorService roundScheduler;
-    private final Gson gson = new Gson();
+    private final SessionManager sessions;
+    private final RateLimiter rateLimiter = new RateLimiter();
+    private final ConnectionReaper reaper;
+    private final RoomJournal journal;
+    private final ReplayRecorder recorder;
+    private final LongSupplier clock;
+    // Дедлайны раундов — мс эпохи: они переживают перезапуск через журнал и передачу комнат другому процессу,
+    // поэтому в рабочем режиме это настоящее время; в симуляции часы виртуальные вместе с clock
+    private final LongSupplier wallClock;
+    private final Random random;
+    // Повтор в реальном времени занимает поток на весь раунд, поэтому потоков и очередь ограничены
+    private final ExecutorService replayStreams = new ThreadPoolExecutor(REPLAY_STREAMS, REPLAY_STREAMS,
+            0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(REPLAY_STREAM_QUEUE), task -> {
+        Thread thread = new Thread(task, "replay-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService spectatorWriters = Executors.newFixedThreadPool(SPECTATOR_WRITERS, task -> {
+        Thread thread = new Thread(task, "spectator-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean evictionStarted;
+    private final AtomicBoolean pendingFlushStarted = new AtomicBoolean();
+    private volatile boolean frozen;
+    private volatile ChainGallery gallery;
+    private volatile DrawingRasterizer rasterizer;
+    private volatile long thumbnailWaitMillis = THUMBNAIL_WAIT_MILLIS;
 
     public GameService(ScheduledExecutorService roundScheduler) {
+        this(roundScheduler, null);
+    }
+
+    public GameService(ScheduledExecutorService roundScheduler, RoomJournal journal) {
+        this(roundScheduler, journal, null);
+    }
+
+    public GameService(ScheduledExecutorService roundScheduler, RoomJournal journal, ReplayRecorder recorder) {
+        this(roundScheduler, journal, recorder, System::nanoTime, System::currentTimeMillis, new Random());
+    }
+
+    // Часы и генератор подменяются в симуляции: планировщик с виртуальным временем прогоняет тысячи раундов без ожидания.
+    // Время эпохи отсчитывается от момента создания по тем же часам
+    public GameService(ScheduledExecutorService roundScheduler, RoomJournal journal, ReplayRecorder recorder,
+                       LongSupplier clock, Random random) {
+        this(roundScheduler, journal, recorder, clock, wallClockOf(clock), random);
+    }
+
+    public GameService(ScheduledExecutorService roundScheduler, RoomJournal journal, ReplayRecorder recorder,
+                       LongSupplier clock, LongSupplier wallClock, Random random) {
         this.roundScheduler = roundScheduler;
+        this.recorder = recorder;
+        this.clock = clock;
+        this.wallClock = wallClock;
+        this.random = random;
+        this.sessions = new SessionManager(roundScheduler, SESSION_GRACE_SECONDS);
+        this.reaper = new ConnectionReaper(roundScheduler, clock, 1000, PING_INTERVAL_MILLIS, IDLE_DEADLINE_MILLIS);
+        this.journal = journal;
         loadWords();
+        if (journal != null) {
+            restore(journal.getRecovered());
+            roundScheduler.scheduleAtFixedRate(() -> journal.snapshot(this::snapshotRooms),
+                    SNAPSHOT_PERIOD_MILLIS, SNAPSHOT_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static LongSupplier wallClockOf(LongSupplier clock) {
+        long originMillis = System.currentTimeMillis();
+        long originNanos = clock.getAsLong();
+        return () -> originMillis + TimeUnit.NANOSECONDS.toMillis(clock.getAsLong() - originNanos);
+    }
+
+    // Игроки восстановленных комнат ждут RESUME со своим прежним токеном, как после обрыва связи
+    private void restore(List<RoomSnapshot> snapshots) {
+        for (RoomSnapshot snapshot : snapshots) {
+            GameState room = new GameState(snapshot.getRoomId(), snapshot.getMode(), clock, random);
+            PlayerState state = snapshot.getStatus() == RoomStatus.LOBBY ? PlayerState.IN_LOBBY : PlayerState.IN_GAME;
+            for (RoomSnapshot.PlayerRecord record : snapshot.getPlayers()) {
+                Player player = new Player(record.getId(), record.getName());
+                player.setCanvasResync(roomId -> resyncCanvas(player, roomId));
+                player.setState(state);
+                room.addPlayer(player);
+                if (record.isReady()) {
+                    room.toggleReady(player.getId());
+                }
+                if (record.getToken() != null) {
+                    sessions.restore(player, record.getToken(), () -> handleLeave(player));
+                }
+            }
+            room.setHost(snapshot.getHostId());
+            room.restoreRound(snapshot.getRound(), snapshot.getDrawerId());
+            room.setTimerSeconds(snapshot.getDuration());
+            for (Map.Entry<Integer, List<RoomSnapshot.StepRecord>> chain : snapshot.getChains().entrySet()) {
+                List<ChainStep> steps = new ArrayList<>();
+                for (RoomSnapshot.StepRecord step : chain.getValue()) {
+                    steps.add(step.getText() != null
+                            ? new ChainStep(step.getText())
+                            : new ChainStep(getDecoder().decode(step.getDrawing())));
+                }
+                room.getChains().put(chain.getKey(), steps);
+            }
+            if (snapshot.getWord() != null) {
+                secretWords.put(room.getRoomId(), snapshot.getWord());
+            }
+            room.setStatus(snapshot.getStatus());
+            synchronized (rooms) {
+                rooms.put(room.getRoomId(), room);
+            }
+            if (snapshot.getStatus() == RoomStatus.IN_ROUND) {
+                scheduleRoundEnd(room, Math.max(0, snapshot.getDeadline() - wallClock.getAsLong()));
+                if (room.getMode() == GameMode.STAGE) {
+                    startStageTicker(room);
+                }
+            }
+            startEviction();
+        }
+    }
+
+    public void adopt(List<RoomSnapshot> snapshots) {
+        restore(snapshots);
+    }
+
+    // На время передачи комнат сообщения игроков отбрасываются, а таймеры раундов останавливаются
+    public List<RoomSnapshot> freeze() {
+        frozen = true;
+        synchronized (rooms) {
+            for (GameState room : rooms.values()) {
+                room.cancelRoundTimer();
+                room.cancelStageTicker();
+            }
+        }
+        return snapshotRooms();
+    }
+
+    public void thaw() {
+        synchronized (rooms) {
+            for (GameState room : rooms.values()) {
+                if (room.getStatus() == RoomStatus.IN_ROUND) {
+                    scheduleRoundEnd(room, Math.max(0, room.getRoundDeadline() - wallClock.getAsLong()));
+                    if (room.getMode() == GameMode.STAGE) {
+                        startStageTicker(room);
+                    }
+                }
+            }
+        }
+        frozen = false;
+    }
+
+    // Игрок в комнате получает токен для RESUME на новом процессе, остальные просто переподключаются
+    public void redirect(Player player, int port) {
+        JsonObject data = new JsonObject();
+        data.addProperty("port", port);
+        if (player.isInLobby() || player.isInGame()) {
+            data.addProperty("token", player.getSessionToken());
+        }
+        player.sendUnsequenced(new Message(MessageType.REDIRECT, 0, player.getId(), "SERVER", data.toString()));
+        try {
+            player.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    List<RoomSnapshot> snapshotRooms() {
+        List<RoomSnapshot> snapshots = new ArrayList<>();
+        synchronized (rooms) {
+            for (GameState room : rooms.values()) {
+                snapshots.add(RoomSnapshot.of(room, secretWords.get(room.getRoomId())));
+            }
+        }
+        return snapshots;
+    }
+
+    private void journal(JournalEvent event) {
+        if (journal != null) {
+            journal.append(event);
+        }
+    }
+
+    public int getMaxPlayerId() {
+        int max = 0;
+        synchronized (rooms) {
+            for (GameState room : rooms.values()) {
+                for (Player player : room.getPlayers()) {
+                    max = Math.max(max, player.getId());
+                }
+            }
+        }
+        return max;
     }
 
     public void onConnect(Player player) {
         player.setState(PlayerState.CONNECTED);
+        String token = sessions.open(player);
+        player.sendUnsequenced(new Message(MessageType.SESSION, 0, player.getId(), "SERVER", token));
+        player.setCanvasResync(roomId -> resyncCanvas(player, roomId));
+        player.touch(clock.getAsLong());
+        reaper.register(player);
     }
 
     public void onDisconnect(Player player) {
+        if (frozen) {
+            return;
+        }
+        boolean inRoom = player.isInLobby() || player.isInGame();
+        if (inRoom && sessions.suspend(player, () -> handleLeave(player))) {
+            return;
+        }
         handleLeave(player);
     }
 
+    public Player resume(Player connecting, Message message) {
+        String token;
+        long lastReceived;
+        try {
+            JsonObject data = JsonParser.parseString(message.getPayload()).getAsJsonObject();
+            token = data.get("token").getAsString();
+            lastReceived = data.get("lastSeq").getAsLong();
+        } catch (Exception e) {
+            sendError(connecting, INVALID_RESUME);
+            return null;
+        }
+        if (lastReceived < 0) {
+            sendError(connecting, INVALID_RESUME);
+            return null;
+        }
+
+        // Проверка до переподключения: отклонённый RESUME не должен отцепить соединение от игрока
+        Player known = sessions.find(token);
+        if (known == null) {
+            sendError(connecting, SESSION_EXPIRED);
+            return null;
+        }
+        boolean restored = sessions.isRestored(token);
+        if (!restored && lastReceived > known.getSentCount()) {
+            sendError(connecting, INVALID_LAST_SEQ);
+            return null;
+        }
+
+        Player resumed = sessions.resume(token, connecting.getConnection());
+        if (resumed == null) {
+            sendError(connecting, SESSION_EXPIRED);
+            return null;
+        }
+        sessions.close(connecting);
+        reaper.unregister(connecting);
+        resumed.touch(clock.getAsLong());
+        reaper.unregister(resumed);
+        reaper.register(resumed);
+
+        if (restored) {
+            resumed.restartSequence(lastReceived);
+        }
+        resumed.sendUnsequenced(new Message(MessageType.SESSION, 0, resumed.getId(), "SERVER", token));
+        if (restored || !resumed.replayFrom(lastReceived)) {
+            resendRoomState(resumed);
+        }
+        return resumed;
+    }
+
+    private void resendRoomState(Player player) {
+        synchronized (rooms) {
+            for (GameState room : rooms.values()) {
+                if (room.getPlayers().contains(player)) {
+                    player.send(playersStatusMessage(room));
+                    if (room.getMode().isDrawing()) {
+                        sendCanvasSnapshot(player, room);
+                    }
+                }
+            }
+        }
+    }
+
     public void routeMessage(Player player, Message message) {
+        if (frozen) {
+            return;
+        }
         if (player.isDisconnected()) {
-            System.out.println("Ignoring message from disconnected player: " + player.getId());
+            Log.warn("Ignoring message from disconnected player: {}", player.getId());
             return;
         }
 
+        long now = clock.getAsLong();
+        player.touch(now);
+
         if (message.getType() == null) {
-            sendError(player, "400", "Message type is not set");
+            sendError(player, TYPE_NOT_SET);
+            return;
+        }
+
+        MessageHandleEvent event = new MessageHandleEvent();
+        event.begin();
+        Message pending;
+        while ((pending = rateLimiter.pollPending(player, now)) != null) {
+            dispatch(player, pending);
+        }
+
+        GameState room = rooms.get(message.getRoomId());
+        if (message.getType() == MessageType.DRAW && !mayDraw(player, room)) {
+            reject(player, message, NOT_DRAWER);
+            commit(event, player, message, false);
+            return;
+        }
+
+        // Общий бюджет комнаты тратят только её участники: чужой roomId в сообщении не расходует его
+        GameState memberRoom = room != null && room.getPlayers().contains(player) ? room : null;
+        RateLimitPolicy.Action throttled = rateLimiter.check(player, memberRoom, message, now);
+        if (throttled != null) {
+            if (throttled == RateLimitPolicy.Action.COALESCE) {
+                startPendingFlush();
+            } else if (throttled == RateLimitPolicy.Action.DISCONNECT) {
+                try {
+                    player.close();
+                } catch (IOException ignored) {
+                }
+            } else if (throttled == RateLimitPolicy.Action.DROP && message.getSeq() != null) {
+                reject(player, message, THROTTLED);
+            }
+            commit(event, player, message, true);
             return;
         }
 
+        dispatch(player, message);
+        // Любое принятое сообщение участника продлевает жизнь комнаты, в том числе чат после конца игры
+        if (room != null && room.getPlayers().contains(player)) {
+            room.touch(now);
+        }
+        commit(event, player, message, false);
+    }
+
+    private static void commit(MessageHandleEvent event, Player player, Message message, boolean throttled) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.messageType = message.getType().name();
+            event.roomId = message.getRoomId();
+            event.playerId = player.getId();
+            event.throttled = throttled;
+            event.commit();
+        }
+    }
+
+    // В режимах с рисующим мазок принимается только от него и только во время раунда;
+    // остальное отбрасывается до лимитера и рассылки
+    private static boolean mayDraw(Player player, GameState room) {
+        if (room == null || !room.getMode().isDrawing()) {
+            return true;
+        }
+        return room.getStatus() == RoomStatus.IN_ROUND && room.isDrawer(player.getId());
+    }
+
+    private void dispatch(Player player, Message message) {
         switch (message.getType()) {
             case JOIN:
                 if (player.isInLobby() || player.isConnected()) {
                     handleJoin(player, message);
                 } else {
-                    sendError(player, "400", "Cannot join room from game state");
+                    sendError(player, JOIN_FROM_GAME);
                 }
                 break;
             case LEAVE:
                 handleLeave(player);
                 break;
+            case REPLAY:
+                handleReplay(player, message);
+                break;
+            case GALLERY:
+                handleGallery(player, message);
+                break;
+            case SPECTATE:
+                if (player.isConnected()) {
+                    handleSpectate(player, message);
+                } else {
+                    sendError(player, SPECTATE_FROM_ROOM);
+                }
+                break;
+            case PING:
+                player.send(new Message(MessageType.PONG, 0, 0, "SERVER", null));
+                break;
+            case PONG:
+                break;
             case READY:
                 if (player.isInLobby()) {
                     handleReady(player, message);
                 } else {
-                    sendError(player, "400", "READY is allowed only in lobby");
+                    sendError(player, READY_NOT_IN_LOBBY);
                 }
                 break;
             case START:
-                if (player.isInLobby()) {
+                // После конца раунда хозяин запускает следующий, не выходя в лобби
+                if (player.isInLobby() || (player.isInGame() && isFinished(message.getRoomId()))) {
                     handleStart(player, message);
                 } else {
-                    sendError(player, "400", "START is allowed only from lobby");
+                    sendError(player, START_NOT_IN_LOBBY);
                 }
                 break;
             case CHAT:
                 if (player.isInLobby() || player.isInGame()) {
                     handleChat(player, message);
                 } else {
-                    sendError(player, "400", "Chat is not available in this state");
+                    reject(player, message, CHAT_NOT_AVAILABLE);
                 }
                 break;
             case DRAW:
@@ -91,7 +507,7 @@ public class GameService {
                         }
                     }
                 } else {
-                    sendError(player, "400", "Game actions are allowed only in game");
+                    reject(player, message, NOT_IN_GAME);
                 }
                 break;
             default:
@@ -113,51 +529,143 @@ public class GameService {
             gameState = rooms.get(roomId);
             if (gameState == null) {
                 GameMode mode = GameMode.valueOf(message.getPayload());
-                gameState = new GameState(roomId, mode);
+                gameState = new GameState(roomId, mode, clock, random);
                 rooms.put(roomId, gameState);
                 gameState.setHost(player.getId());
+                startEviction();
             }
             gameState.addPlayer(player);
+            gameState.touch(clock.getAsLong());
         }
+        journal(JournalEvent.join(roomId, gameState.getMode(), player));
 
-        player.setState(PlayerState.IN_LOBBY);
+        // В STAGE зрители подходят всё время: во время раунда они сразу становятся угадывающими
+        boolean lateGuesser = gameState.getMode() == GameMode.STAGE && gameState.getStatus() == RoomStatus.IN_ROUND;
+        player.setState(lateGuesser ? PlayerState.IN_GAME : PlayerState.IN_LOBBY);
         broadcastPlayersUpdate(gameState);
+
+        if (gameState.getMode().isDrawing()) {
+            sendCanvasSnapshot(player, gameState);
+        }
+    }
+
+    // Зритель не входит в список игроков и получает рассылку комнаты пачками через SpectatorHub
+    private void handleSpectate(Player player, Message message) {
+        GameState room;
+        synchronized (rooms) {
+            room = rooms.get(message.getRoomId());
+            if (room == null) {
+                sendError(player, ROOM_NOT_FOUND);
+                return;
+            }
+            room.touch(clock.getAsLong());
+        }
+
+        player.setState(PlayerState.SPECTATING);
+        if (room.getMode() != GameMode.STAGE) {
+            player.send(playersStatusMessage(room));
+        }
+        if (room.getMode().isDrawing()) {
+            sendCanvasSnapshot(player, room);
+        }
+        spectatorHub(room).add(player);
+    }
+
+    private SpectatorHub spectatorHub(GameState room) {
+        synchronized (room) {
+            SpectatorHub hub = room.getSpectatorHub();
+            if (hub == null) {
+                hub = new SpectatorHub(spectatorWriters);
+                hub.setTicker(roundScheduler.scheduleAtFixedRate(hub::publish,
+                        SPECTATOR_TICK_MILLIS, SPECTATOR_TICK_MILLIS, TimeUnit.MILLISECONDS));
+                room.setSpectatorHub(hub);
+            }
+            return hub;
+        }
+    }
+
+    // Очередь игрока выбросила мазки: снимок (пусть и пустой) заменяет весь его холст
+    private void resyncCanvas(Player player, int roomId) {
+        GameState room = rooms.get(roomId);
+        if (room == null || !room.getMode().isDrawing()) {
+            return;
+        }
+        StrokeLog log = room.getStrokeLog();
+        player.send(new Message(MessageType.CANVAS_SNAPSHOT, roomId, 0, "SERVER", log.getSnapshotPayload()));
+        for (String stroke : log.getTail()) {
+            player.send(new Message(MessageType.DRAW, roomId, 0, "SERVER", stroke));
+        }
+    }
+
+    private void sendCanvasSnapshot(Player player, GameState room) {
+        StrokeLog log = room.getStrokeLog();
+        if (log.isEmpty()) {
+            return;
+        }
+        player.send(new Message(
+                MessageType.CANVAS_SNAPSHOT,
+                room.getRoomId(),
+                0,
+                "SERVER",
+                log.getSnapshotPayload()
+        ));
+        for (String stroke : log.getTail()) {
+            player.send(new Message(MessageType.DRAW, room.getRoomId(), 0, "SERVER", stroke));
+        }
     }
 
     public void handleLeave(Player player) {
         player.setState(PlayerState.DISCONNECTED);
+        sessions.close(player);
+        rateLimiter.forget(player);
+        reaper.unregister(player);
         synchronized (rooms) {
             for (GameState room : rooms.values()) {
                 if (room.getPlayers().contains(player)) {
-                    room.removePlayer(player);
+                    boolean drawerLeft = room.removePlayer(player);
+                    room.touch(clock.getAsLong());
+                    journal(JournalEvent.leave(room.getRoomId(), player.getId()));
                     broadcastPlayersUpdate(room);
+                    // Новый рисующий не знает слова, а холст чужой: раунд заканчивается сразу, слово раскрывается
+                    if (drawerLeft && room.getMode().isDrawing() && room.getStatus() == RoomStatus.IN_ROUND) {
+                        scheduleRoundEnd(room, 0);
+                    }
+                }
+                SpectatorHub hub = room.getSpectatorHub();
+                if (hub != null) {
+                    hub.remove(player);
                 }
             }
         }
     }
 
+    // В STAGE список из сотен имён на каждый вход дал бы O(n²) трафика; зрители видят таблицу лидеров
     private void broadcastPlayersUpdate(GameState room) {
-        Map<String, Boolean> playersStatus = new HashMap<>();
+        if (room.getMode() == GameMode.STAGE) {
+            return;
+        }
+        broadcast(room, playersStatusMessage(room), null);
+    }
+
+    private Message playersStatusMessage(GameState room) {
+        PlayerStatusPayload playersStatus = new PlayerStatusPayload();
         for (Player p : room.getPlayers()) {
-            playersStatus.put(p.getName(), room.getReadyPlayers().contains(p.getId()));
+            playersStatus.add(p.getName(), room.getReadyPlayers().contains(p.getId()));
         }
-        Message msg = new Message(
+        return new Message(
                 MessageType.PLAYER_STATUS,
                 room.getRoomId(),
                 0,
                 "SERVER",
-                gson.toJson(playersStatus)
+                playersStatus.toJson()
         );
-        for (Player p : room.getPlayers()) {
-            p.send(msg);
-        }
     }
 
     private void handleChat(Player from, Message message) {
         int roomId = message.getRoomId();
         GameState room = rooms.get(roomId);
         if (room == null) {
-            sendError(from, "404", "Room not found");
+            reject(from, message, ROOM_NOT_FOUND);
             return;
         }
 
@@ -169,27 +677,34 @@ public class GameService {
                 from.getName(),
                 payload
         );
-        for (Player player : room.getPlayers()) {
-            player.send(response);
+        if (room.getMode() == GameMode.STAGE && !room.isDrawer(from.getId())) {
+            room.getStage().offerChat(response);
+            acknowledge(room, from, message);
+            return;
         }
+        relay(room, from, message, response);
     }
 
     private void handleDraw(Player from, Message message) {
         int roomId = message.getRoomId();
         GameState room = rooms.get(roomId);
         if (room == null) {
-            sendError(from, "404", "Room not found");
+            reject(from, message, ROOM_NOT_FOUND);
             return;
         }
 
         if (room.getMode() == GameMode.DEAF_PHONE) {
             if (message.getPayload() == null) {
-                sendError(from, "400", "Empty drawing payload");
+                reject(from, message, EMPTY_DRAWING);
                 return;
             }
-            room.getChains()
-                    .computeIfAbsent(from.getId(), id -> new ArrayList<>())
-                    .add(new ChainStep(message.getPayload().getBytes()));
+            byte[] drawing = message.getPayload().getBytes();
+            List<ChainStep> chain = room.getChains().computeIfAbsent(from.getId(), id -> new ArrayList<>());
+            chain.add(new ChainStep(drawing));
+            journal(JournalEvent.submit(roomId, from.getId(), chain.size() - 1,
+                    null, getEncoder().encodeToString(drawing)));
+        } else if (room.getMode().isDrawing() && message.getPayload() != null) {
+            room.getStrokeLog().append(message.getPayload());
         }
 
         Message response = new Message(
@@ -199,70 +714,166 @@ public class GameService {
                 from.getName(),
                 message.getPayload()
         );
+        // Рисунок DEAF_PHONE — шаг цепочки, а не мазок поверх холста: пропуск исказил бы его у следующего игрока
+        response.setEssential(room.getMode() == GameMode.DEAF_PHONE);
+        relay(room, from, message, response);
+    }
+
+    // Клиент с локальным эхо помечает сообщение seq: ему отправляется ACK вместо собственной копии
+    private void relay(GameState room, Player from, Message request, Message response) {
+        Long seq = request.getSeq();
+        Trace trace = request.getTrace();
+        if (seq == null && trace == null) {
+            broadcast(room, response, null);
+            return;
+        }
+        broadcast(room, response, from);
+        if (trace != null) {
+            // Отметки трассы — реальное время, как received в ClientHandler и written в соединении
+            trace.setHandled(System.nanoTime());
+        }
+        if (seq != null) {
+            acknowledge(room, from, request);
+            return;
+        }
+        // Трасса возвращается только отправителю, остальные получают общий закодированный кадр
+        Message own = new Message(response.getType(), response.getRoomId(), response.getPlayerId(),
+                response.getPlayerName(), response.getPayload());
+        own.setTrace(trace);
+        from.send(own);
+    }
+
+    private void acknowledge(GameState room, Player from, Message request) {
+        if (request.getSeq() == null) {
+            return;
+        }
+        Message ack = new Message(MessageType.ACK, room.getRoomId(), from.getId(), "SERVER", null);
+        ack.setSeq(request.getSeq());
+        ack.setTrace(request.getTrace());
+        from.send(ack);
+    }
+
+    private void broadcast(GameState room, Message message, Player exclude) {
+        BroadcastEvent event = new BroadcastEvent();
+        event.begin();
+        int recipients = 0;
         for (Player player : room.getPlayers()) {
-            player.send(response);
+            if (player != exclude) {
+                player.send(message);
+                recipients++;
+            }
+        }
+        SpectatorHub hub = room.getSpectatorHub();
+        if (hub != null) {
+            hub.offer(message);
+        }
+        if (recorder != null) {
+            recorder.record(room.getRoomId(), message);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.roomId = room.getRoomId();
+            event.messageType = message.getType().name();
+            event.recipients = recipients;
+            event.bytes = Message.toJson(message).length();
+            event.commit();
+        }
+    }
+
+    private void reject(Player player, Message request, Message error) {
+        if (request.getSeq() == null) {
+            sendError(player, error);
+            return;
         }
+        Message rejection = new Message(MessageType.ERROR, request.getRoomId(), 0, "SERVER", error.getPayload());
+        rejection.setSeq(request.getSeq());
+        sendError(player, rejection);
     }
 
+    // Догадка идёт только на сверку с загаданным словом и никому не пересылается
     private void handleGuess(Player from, Message message) {
         int roomId = message.getRoomId();
+        GameState room = rooms.get(roomId);
+        if (room == null) {
+            sendError(from, ROOM_NOT_FOUND);
+            return;
+        }
+        if (room.isDrawer(from.getId())) {
+            sendError(from, DRAWER_CANNOT_GUESS);
+            return;
+        }
+
         String guess = message.getPayload();
         String secret = secretWords.get(roomId);
         if (secret == null || guess == null || guess.isBlank()) {
-            sendError(from, "400", "Empty guess or secret word is not set");
+            sendError(from, EMPTY_GUESS);
             return;
         }
 
-        if (secret.equalsIgnoreCase(guess.trim())) {
-            Map<String, Object> payloadData = new HashMap<>();
-            payloadData.put("correctPlayer", from.getName());
-            payloadData.put("word", secret);
-            payloadData.put("score", 1);
-
-            Message correct = new Message(
-                    MessageType.CORRECT,
-                    roomId,
-                    from.getId(),
-                    from.getName(),
-                    gson.toJson(payloadData)
-            );
-
-            GameState room = rooms.get(roomId);
-            if (room == null) {
-                return;
+        if (!secret.equalsIgnoreCase(guess.trim())) {
+            // Верная догадка содержит слово; в запись раунда попадает только её итог (CORRECT, ROUND_UPDATE)
+            if (recorder != null) {
+                recorder.record(roomId, new Message(MessageType.GUESS, roomId, from.getId(), from.getName(), guess));
             }
-            for (Player player : room.getPlayers()) {
-                player.send(correct);
+            return;
+        }
+        if (room.getMode() == GameMode.STAGE) {
+            int score = room.getStage().recordCorrect(from);
+            if (score > 0) {
+                from.send(new Message(
+                        MessageType.CORRECT,
+                        roomId,
+                        from.getId(),
+                        from.getName(),
+                        new CorrectPayload(from.getName(), secret, score).toJson()
+                ));
             }
-            endRound(roomId);
+            return;
         }
+
+        Message correct = new Message(
+                MessageType.CORRECT,
+                roomId,
+                from.getId(),
+                from.getName(),
+                new CorrectPayload(from.getName(), secret, 1).toJson()
+        );
+
+        broadcast(room, correct, null);
+        endRound(roomId);
     }
 
     private void handleReady(Player player, Message message) {
         int roomId = message.getRoomId();
         GameState room = rooms.get(roomId);
         if (room == null) {
-            sendError(player, "404", "Room not found");
+            sendError(player, ROOM_NOT_FOUND);
             return;
         }
         room.toggleReady(player.getId());
+        journal(JournalEvent.ready(roomId, player.getId(), room.getReadyPlayers().contains(player.getId())));
         broadcastPlayersUpdate(room);
     }
 
+    private boolean isFinished(int roomId) {
+        GameState room = rooms.get(roomId);
+        return room != null && room.getStatus() == RoomStatus.FINISHED;
+    }
+
     private void handleStart(Player player, Message message) {
         int roomId = message.getRoomId();
         GameState room = rooms.get(roomId);
         if (room == null) {
-            sendError(player, "404", "Room not found");
+            sendError(player, ROOM_NOT_FOUND);
             return;
         }
 
         if (!room.isHost(player.getId())) {
-            sendError(player, "403", "Only host can start the game");
+            sendError(player, NOT_HOST);
             return;
         }
         if (!room.allReady()) {
-            sendError(player, "412", "Not enough ready players");
+            sendError(player, NOT_ENOUGH_READY);
             return;
         }
 
@@ -273,38 +884,96 @@ public class GameService {
         }
 
         room.setTimerSeconds(roundDuration);
-        room.resetRound();
+        // Следующий раунд той же игры передаёт роль рисующего дальше по кругу
+        if (room.getStatus() == RoomStatus.FINISHED && room.getMode().isDrawing()) {
+            room.nextRound();
+        } else {
+            room.resetRound();
+        }
 
-        if (room.getMode() == GameMode.GUESS_DRAWING) {
-            String word = generateWord();
+        String word = null;
+        if (room.getMode().isDrawing()) {
+            word = generateWord();
             secretWords.put(roomId, word);
+            room.getStrokeLog().clear();
         } else if (room.getMode() == GameMode.DEAF_PHONE) {
             room.clearChains();
+            evictThumbnails(room.getRoomId());
         }
 
-        Map<String, Object> payloadData = new HashMap<>();
-        payloadData.put("roundDuration", roundDuration);
-        payloadData.put("totalPlayers", room.getPlayers().size());
-        payloadData.put("stage", room.getMode() == GameMode.GUESS_DRAWING ? "DRAW" : "TEXT_SUBMIT");
+        StartPayload payload = new StartPayload(
+                roundDuration,
+                room.getPlayers().size(),
+                room.getMode().isDrawing() ? "DRAW" : "TEXT_SUBMIT",
+                room.getMode().isDrawing() ? room.getDrawerId() : -1
+        );
 
         Message start = new Message(
                 MessageType.START,
                 roomId,
                 player.getId(),
                 player.getName(),
-                gson.toJson(payloadData)
+                payload.toJson()
         );
 
         for (Player p : room.getPlayers()) {
-            p.send(start);
             p.setState(PlayerState.IN_GAME);
         }
+        if (recorder != null) {
+            recorder.begin(roomId);
+        }
+        broadcast(room, start, null);
+
+        if (word != null) {
+            sendWordToDrawer(room, word);
+        }
+
+        room.setStatus(RoomStatus.IN_ROUND);
+        RoundEvent round = new RoundEvent();
+        round.begin();
+        room.setRoundEvent(round);
+        scheduleRoundEnd(room, TimeUnit.SECONDS.toMillis(roundDuration));
+        journal(JournalEvent.start(roomId, word, roundDuration, room.getRoundDeadline(), room.getDrawerId(),
+                room.getRound()));
+        if (room.getMode() == GameMode.STAGE) {
+            room.getStage().newRound();
+            startStageTicker(room);
+        }
+    }
+
+    private void startStageTicker(GameState room) {
+        room.cancelStageTicker();
+        room.setStageTicker(roundScheduler.scheduleAtFixedRate(() -> tickStage(room),
+                STAGE_TICK_MILLIS, STAGE_TICK_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    // Раз в тик в комнату уходят выборка чата и таблица лидеров вместо потока CHAT/CORRECT
+    void tickStage(GameState room) {
+        for (Message frame : room.getStage().tick(room.getRoomId())) {
+            broadcast(room, frame, null);
+        }
+    }
 
-        scheduleRoundEnd(roomId, roundDuration);
+    private void sendWordToDrawer(GameState room, String word) {
+        for (Player p : room.getPlayers()) {
+            if (room.isDrawer(p.getId())) {
+                p.send(new Message(
+                        MessageType.ROUND_UPDATE,
+                        room.getRoomId(),
+                        0,
+                        "SERVER",
+                        new WordPayload(word).toJson()
+                ));
+                return;
+            }
+        }
     }
 
-    private void scheduleRoundEnd(int roomId, int roundDuration) {
-        roundScheduler.schedule(() -> endRound(roomId), roundDuration, TimeUnit.SECONDS);
+    private void scheduleRoundEnd(GameState room, long delayMillis) {
+        int roomId = room.getRoomId();
+        room.cancelRoundTimer();
+        room.setRoundDeadline(wallClock.getAsLong() + delayMillis);
+        room.setRoundTimer(roundScheduler.schedule(() -> endRound(roomId), delayMillis, TimeUnit.MILLISECONDS));
     }
 
     private void endRound(int roomId) {
@@ -315,48 +984,258 @@ public class GameService {
         if (room == null) {
             return;
         }
+        room.cancelRoundTimer();
+        room.setStatus(RoomStatus.FINISHED);
+        journal(JournalEvent.roundEnd(roomId));
+        RoundEvent round = room.takeRoundEvent();
+        if (round != null && round.shouldCommit()) {
+            round.roomId = roomId;
+            round.mode = room.getMode().name();
+            round.players = room.getPlayers().size();
+            round.guessed = wallClock.getAsLong() < room.getRoundDeadline();
+            round.commit();
+        }
+        if (room.getMode() == GameMode.STAGE) {
+            room.cancelStageTicker();
+            tickStage(room);
+        }
 
-        if (room.getMode() == GameMode.GUESS_DRAWING) {
-            String secret = secretWords.get(roomId);
-            if (secret == null) {
-                return;
-            }
-            Map<String, String> payloadData = new HashMap<>();
-            payloadData.put("word", secret);
-            Message end = new Message(
-                    MessageType.ROUND_UPDATE,
-                    roomId,
-                    0,
-                    "SERVER",
-                    gson.toJson(payloadData)
-            );
-            for (Player p : room.getPlayers()) {
-                p.send(end);
+        if (room.getMode().isDrawing()) {
+            String secret = secretWords.remove(roomId);
+            if (secret != null) {
+                Message end = new Message(
+                        MessageType.ROUND_UPDATE,
+                        roomId,
+                        0,
+                        "SERVER",
+                        new WordPayload(secret).toJson()
+                );
+                broadcast(room, end, null);
             }
         } else if (room.getMode() == GameMode.DEAF_PHONE) {
             sendFinalChains(room);
         }
+        if (recorder != null) {
+            recorder.end(roomId);
+        }
+    }
+
+    // payload: {"replay": имя файла, "from": мс от начала, "speed": множитель}; без имени — последний раунд комнаты
+    private void handleReplay(Player player, Message message) {
+        String name = null;
+        long from = 0;
+        double speed = 1;
+        try {
+            if (message.getPayload() != null && !message.getPayload().isBlank()) {
+                JsonObject data = JsonParser.parseString(message.getPayload()).getAsJsonObject();
+                name = data.has("replay") ? data.get("replay").getAsString() : null;
+                from = data.has("from") ? data.get("from").getAsLong() : 0;
+                speed = data.has("speed") ? data.get("speed").getAsDouble() : 1;
+            }
+        } catch (RuntimeException e) {
+            sendError(player, INVALID_REPLAY);
+            return;
+        }
+        // Слишком малый множитель занял бы поток повтора на дни; 0 — без пауз
+        if (from < 0 || speed != 0 && !(speed >= MIN_REPLAY_SPEED && speed <= MAX_REPLAY_SPEED)) {
+            sendError(player, INVALID_REPLAY);
+            return;
+        }
+
+        Path path = null;
+        if (recorder != null) {
+            path = name != null ? recorder.resolve(name) : recorder.getLatest(message.getRoomId());
+        }
+        if (path == null) {
+            sendError(player, REPLAY_NOT_FOUND);
+            return;
+        }
+
+        Path source = path;
+        long start = from;
+        double rate = speed;
+        int roomId = message.getRoomId();
+        JsonMessageConnection connection = player.getConnection();
+        try {
+            replayStreams.execute(() -> {
+                try (ReplayReader reader = new ReplayReader(source)) {
+                    // Кадры повтора идут вне нумерации и обёрнуты в REPLAY; поток обрывается вместе с соединением
+                    reader.stream(start, rate, entry -> {
+                        if (player.isDisconnected() || player.getConnection() != connection) {
+                            return false;
+                        }
+                        player.sendUnsequenced(new Message(MessageType.REPLAY, roomId, 0, "SERVER",
+                                new ReplayFramePayload(entry.offsetMillis(), entry.message()).toJson()));
+                        return true;
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    sendError(player, REPLAY_NOT_FOUND);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            sendError(player, STREAMS_BUSY);
+        }
+    }
+
+    // payload: {"gallery": имя файла}; без имени — последняя раскрытая игра комнаты
+    private void handleGallery(Player player, Message message) {
+        String name = null;
+        try {
+            if (message.getPayload() != null && !message.getPayload().isBlank()) {
+                JsonObject data = JsonParser.parseString(message.getPayload()).getAsJsonObject();
+                name = data.has("gallery") ? data.get("gallery").getAsString() : null;
+            }
+        } catch (RuntimeException e) {
+            sendError(player, "400", "Invalid gallery request");
+            return;
+        }
+
+        ChainGallery target = gallery;
+        Path path = null;
+        if (target != null) {
+            path = name != null ? target.resolve(name) : target.getLatest(message.getRoomId());
+        }
+        if (path == null) {
+            sendError(player, GALLERY_NOT_FOUND);
+            return;
+        }
+
+        // Медленный получатель держит только свой поток отдачи, а не поток обработки
+        Path source = path;
+        try {
+            replayStreams.execute(() -> {
+                try {
+                    target.send(source, player);
+                } catch (IOException e) {
+                    sendError(player, GALLERY_NOT_FOUND);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            sendError(player, STREAMS_BUSY);
+        }
+    }
+
+    // Финальные цепочки DEAF_PHONE сохраняются в галерею и отдаются по GALLERY
+    public void setGallery(ChainGallery gallery) {
+        this.gallery = gallery;
+    }
+
+    // С растеризатором рисунки в FINAL_CHAIN заменяются PNG-миниатюрами
+    public void setRasterizer(DrawingRasterizer rasterizer) {
+        setRasterizer(rasterizer, THUMBNAIL_WAIT_MILLIS);
+    }
+
+    // Срок, сколько раскрытие цепочки ждёт миниатюры, прежде чем уйти штрихами
+    public void setRasterizer(DrawingRasterizer rasterizer, long thumbnailWaitMillis) {
+        this.thumbnailWaitMillis = thumbnailWaitMillis;
+        this.rasterizer = rasterizer;
+    }
+
+    private void startEviction() {
+        if (!evictionStarted) {
+            evictionStarted = true;
+            roundScheduler.scheduleAtFixedRate(() -> evictRooms(clock.getAsLong()),
+                    EVICTION_PERIOD_MILLIS, EVICTION_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Отложенное COALESCE-сообщение уходит по таймеру, даже если игрок больше ничего не присылает
+    private void startPendingFlush() {
+        if (pendingFlushStarted.compareAndSet(false, true)) {
+            roundScheduler.scheduleAtFixedRate(this::flushPending,
+                    PENDING_FLUSH_MILLIS, PENDING_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void flushPending() {
+        if (frozen) {
+            return;
+        }
+        rateLimiter.drainPending(clock.getAsLong(), (player, message) -> {
+            if (!player.isDisconnected()) {
+                dispatch(player, message);
+            }
+        });
+    }
+
+    void evictRooms(long now) {
+        List<GameState> expired = new ArrayList<>();
+        synchronized (rooms) {
+            Iterator<GameState> it = rooms.values().iterator();
+            while (it.hasNext()) {
+                GameState room = it.next();
+                long idleMillis = TimeUnit.NANOSECONDS.toMillis(now - room.getLastActivity());
+                boolean empty = room.getPlayers().isEmpty() && idleMillis >= EMPTY_ROOM_TTL_MILLIS;
+                boolean finished = room.getStatus() == RoomStatus.FINISHED && idleMillis >= FINISHED_ROOM_TTL_MILLIS;
+                if (empty || finished) {
+                    it.remove();
+                    expired.add(room);
+                }
+            }
+        }
+        for (GameState room : expired) {
+            releaseRoom(room);
+        }
+    }
+
+    private void releaseRoom(GameState room) {
+        room.cancelRoundTimer();
+        room.cancelStageTicker();
+        journal(JournalEvent.close(room.getRoomId()));
+        SpectatorHub hub = room.getSpectatorHub();
+        if (hub != null) {
+            hub.close();
+        }
+        room.setStatus(RoomStatus.EXPIRED);
+        secretWords.remove(room.getRoomId());
+        room.getStrokeLog().clear();
+        room.clearChains();
+        evictThumbnails(room.getRoomId());
+        for (Player p : room.getPlayers()) {
+            if (!p.isDisconnected()) {
+                p.setState(PlayerState.CONNECTED);
+            }
+        }
+    }
+
+    private void evictThumbnails(int roomId) {
+        DrawingRasterizer thumbnails = rasterizer;
+        if (thumbnails != null) {
+            thumbnails.evictRoom(roomId);
+        }
+    }
+
+    public int getRoomCount() {
+        synchronized (rooms) {
+            return rooms.size();
+        }
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
     }
 
     public String generateWord() {
-        return words.get((int) (Math.random() * words.size()));
+        return words.get(random.nextInt(words.size()));
     }
 
     private void handleTextSubmit(Player from, Message message) {
         int roomId = message.getRoomId();
         GameState room = rooms.get(roomId);
         if (room == null) {
-            sendError(from, "404", "Room not found");
+            sendError(from, ROOM_NOT_FOUND);
             return;
         }
 
         if (room.getMode() != GameMode.DEAF_PHONE) {
-            sendError(from, "400", "Invalid mode for TEXT_SUBMIT");
+            sendError(from, TEXT_SUBMIT_WRONG_MODE);
             return;
         }
 
         if (message.getPayload() == null || message.getPayload().isBlank()) {
-            sendError(from, "400", "Text payload is empty");
+            sendError(from, EMPTY_TEXT);
             return;
         }
 
@@ -366,24 +1245,19 @@ public class GameService {
             return;
         }
 
-        room.getChains()
-                .computeIfAbsent(from.getId(), id -> new ArrayList<>())
-                .add(new ChainStep(message.getPayload()));
+        List<ChainStep> chain = room.getChains().computeIfAbsent(from.getId(), id -> new ArrayList<>());
+        chain.add(new ChainStep(message.getPayload()));
+        journal(JournalEvent.submit(roomId, from.getId(), chain.size() - 1, message.getPayload(), null));
 
         int nextIndex = (index + 1) % list.size();
         Player next = list.get(nextIndex);
 
-        Map<String, Object> payloadData = new HashMap<>();
-        payloadData.put("content", message.getPayload());
-        payloadData.put("contentType", "TEXT");
-        payloadData.put("roundNumber", room.getRound());
-
         Message update = new Message(
                 MessageType.ROUND_UPDATE,
                 roomId,
                 from.getId(),
                 from.getName(),
-                gson.toJson(payloadData)
+                new ContentPayload(message.getPayload(), "TEXT", room.getRound()).toJson()
         );
 
         next.send(update);
@@ -391,46 +1265,95 @@ public class GameService {
 
     private void sendFinalChains(GameState room) {
         int roomId = room.getRoomId();
-        List<ChainStep> steps = new ArrayList<>(room.getChains().values().iterator().next());
-
-        List<Map<String, Object>> chain = steps.stream()
-                .map(step -> {
-                    Map<String, Object> link = new HashMap<>();
-                    link.put("type", step.isTextStep() ? "TEXT" : "DRAW");
-                    link.put("value", step.isTextStep()
-                            ? step.getText()
-                            : getEncoder().encodeToString(step.getDrawing()));
-                    return link;
-                })
-                .collect(Collectors.toList());
-
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("contentType", "FINAL_CHAIN");
-        payload.put("chain", chain);
-
-        Message chainMsg = new Message(
+        // Ключ — id игрока, с которого началась цепочка
+        Map<Integer, List<ChainStep>> chains = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<ChainStep>> chain : room.getChains().entrySet()) {
+            chains.put(chain.getKey(), new ArrayList<>(chain.getValue()));
+        }
+        if (chains.isEmpty()) {
+            return;
+        }
+        ChainRevealEvent event = new ChainRevealEvent();
+        event.begin();
+        int revealedId = chains.keySet().iterator().next();
+        List<ChainStep> steps = chains.get(revealedId);
+
+        // Миниатюры ждёт не поток раундов: раскрытие уходит, когда они готовы или истёк срок
+        DrawingRasterizer thumbnails = rasterizer;
+        CompletableFuture<Map<Integer, byte[]>> images = thumbnails != null
+                ? thumbnails.renderChainAsync(roomId, revealedId, steps, thumbnailWaitMillis)
+                : CompletableFuture.completedFuture(Map.of());
+        CompletableFuture<Message> revealed = images.isDone()
+                ? CompletableFuture.completedFuture(chainMessage(roomId, steps, images.join()))
+                : images.thenApplyAsync(ready -> chainMessage(roomId, steps, ready), roundScheduler);
+        revealed.thenAccept(chainMsg -> {
+            broadcast(room, chainMsg, null);
+            event.end();
+            if (event.shouldCommit()) {
+                event.roomId = roomId;
+                event.steps = steps.size();
+                event.bytes = Message.toJson(chainMsg).length();
+                event.commit();
+            }
+        });
+
+        ChainGallery target = gallery;
+        if (target != null) {
+            // Остальные цепочки кодируются уже в потоке галереи, и там можно дождаться всех миниатюр
+            target.store(roomId, () -> chains.entrySet().stream()
+                    .map(chain -> chain.getKey() == revealedId
+                            ? revealed.join()
+                            : chainMessage(roomId, chain.getValue(), thumbnails != null
+                                    ? thumbnails.renderChain(roomId, chain.getKey(), chain.getValue(),
+                                            GALLERY_THUMBNAIL_WAIT_MILLIS)
+                                    : Map.of()))
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    // Рисунок с готовой миниатюрой уходит одной ссылкой IMAGE (base64 PNG); не успевший к сроку — штрихами DRAW
+    private Message chainMessage(int roomId, List<ChainStep> steps, Map<Integer, byte[]> images) {
+        List<FinalChainPayload.Link> chain = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            ChainStep step = steps.get(i);
+            byte[] image = images.get(i);
+            if (step.isTextStep()) {
+                chain.add(new FinalChainPayload.Link("TEXT", step.getText()));
+            } else if (image != null) {
+                chain.add(new FinalChainPayload.Link("IMAGE", getEncoder().encodeToString(image)));
+                while (i + 1 < steps.size() && !steps.get(i + 1).isTextStep()) {
+                    i++;
+                }
+            } else {
+                chain.add(new FinalChainPayload.Link("DRAW", getEncoder().encodeToString(step.getDrawing())));
+            }
+        }
+        return new Message(
                 MessageType.FINAL_CHAIN,
                 roomId,
                 0,
                 "SERVER",
-                gson.toJson(payload)
+                new FinalChainPayload(chain).toJson()
         );
-        for (Player p : room.getPlayers()) {
-            p.send(chainMsg);
-        }
     }
 
-    private void sendError(Player player, String code, String message) {
-        Map<String, String> errorData = new HashMap<>();
-        errorData.put("code", code);
-        errorData.put("message", message);
+    private static Message errorMessage(String code, String message) {
         Message error = new Message(
                 MessageType.ERROR,
                 0,
                 0,
                 "SERVER",
-                gson.toJson(errorData)
+                new ErrorPayload(code, message).toJson()
         );
+        Message.toJson(error);
+        return error;
+    }
+
+    private void sendError(Player player, String code, String message) {
+        sendError(player, errorMessage(code, message));
+    }
+
+    private void sendError(Player player, Message error) {
         try {
             player.send(error);
         } catch (Exception ignored) {
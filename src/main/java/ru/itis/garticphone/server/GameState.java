@@ -1,26 +1,53 @@
 package ru.itis.garticphone.server;
 
 import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.jfr.RoundEvent;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.LongSupplier;
 
 public class GameState {
     private final int roomId;
     private GameMode mode;
     private final List<Player> players;
-    private int round;
+    private volatile int round;
     private int timerSeconds;
-    private final Map<Integer, List<ChainStep>> chains = new HashMap<>();
-    private final Set<Integer> readyPlayers = new HashSet<>();
+    private final Map<Integer, List<ChainStep>> chains = new ConcurrentHashMap<>();
+    private final Set<Integer> readyPlayers = ConcurrentHashMap.newKeySet();
+    private final StrokeLog strokeLog = new StrokeLog();
+    private TokenBucket inboundLimit;
     private final int minPlayers;
-    private int hostId = -1;
+    private volatile int hostId = -1;
+    private volatile int drawerId = -1;
+    private int turn = -1;
     private String currentStage = "LOBBY";
+    private volatile RoomStatus status = RoomStatus.LOBBY;
+    private final LongSupplier clock;
+    private final Random random;
+    private volatile long lastActivity;
+    private ScheduledFuture<?> roundTimer;
+    private long roundDeadline;
+    private StageRound stage;
+    private ScheduledFuture<?> stageTicker;
+    private SpectatorHub spectatorHub;
+    private RoundEvent roundEvent;
 
     public GameState(int roomId, GameMode mode) {
+        this(roomId, mode, System::nanoTime, new Random());
+    }
+
+    public GameState(int roomId, GameMode mode, LongSupplier clock, Random random) {
+        this.clock = clock;
+        this.random = random;
+        this.lastActivity = clock.getAsLong();
         this.roomId = roomId;
         this.mode = mode;
-        this.minPlayers = mode == GameMode.GUESS_DRAWING ? 2 : 4;
-        this.players = new ArrayList<>();
+        this.minPlayers = mode.isDrawing() ? 2 : 4;
+        // Рассылка обходит снимок списка, поэтому вход и выход игроков не ломают её посреди цикла
+        this.players = new CopyOnWriteArrayList<>();
         this.round = 1;
         this.timerSeconds = 0;
     }
@@ -41,26 +68,76 @@ public class GameState {
         return Collections.unmodifiableList(players);
     }
 
-    public void addPlayer(Player player) {
+    public synchronized void addPlayer(Player player) {
         if (!players.contains(player)) {
             players.add(player);
         }
     }
 
-    public void removePlayer(Player player) {
-        players.remove(player);
+    // true — ушёл рисующий; роль сразу переходит к следующему по порядку входа
+    public synchronized boolean removePlayer(Player player) {
+        int index = players.indexOf(player);
+        if (index < 0) {
+            return false;
+        }
+        players.remove(index);
+        if (player.getId() != drawerId) {
+            if (index < turn) {
+                turn--;
+            }
+            return false;
+        }
+        if (players.isEmpty()) {
+            turn = -1;
+            drawerId = -1;
+        } else {
+            turn = index % players.size();
+            drawerId = players.get(turn).getId();
+        }
+        return true;
     }
 
     public int getRound() {
         return round;
     }
 
-    public void nextRound() {
+    public synchronized void nextRound() {
         round++;
+        advanceDrawer();
     }
 
-    public void resetRound() {
+    public synchronized void resetRound() {
         round = 1;
+        advanceDrawer();
+    }
+
+    // Рисующий переходит к следующему игроку по порядку входа в комнату
+    private void advanceDrawer() {
+        if (players.isEmpty()) {
+            drawerId = -1;
+            return;
+        }
+        turn = (turn + 1) % players.size();
+        drawerId = players.get(turn).getId();
+    }
+
+    public synchronized void restoreRound(int round, int drawerId) {
+        this.round = round;
+        this.drawerId = drawerId;
+        this.turn = -1;
+        for (int i = 0; i < players.size(); i++) {
+            if (players.get(i).getId() == drawerId) {
+                turn = i;
+            }
+        }
+    }
+
+    public int getDrawerId() {
+        return drawerId;
+    }
+
+    public boolean isDrawer(int playerId) {
+        return playerId == drawerId;
     }
 
     public int getTimerSeconds() {
@@ -85,6 +162,18 @@ public class GameState {
         chains.clear();
     }
 
+    public StrokeLog getStrokeLog() {
+        return strokeLog;
+    }
+
+    public TokenBucket getInboundLimit() {
+        return inboundLimit;
+    }
+
+    public void setInboundLimit(TokenBucket inboundLimit) {
+        this.inboundLimit = inboundLimit;
+    }
+
     public void setHost(int playerId) {
         this.hostId = playerId;
     }
@@ -98,11 +187,16 @@ public class GameState {
     }
 
     public void toggleReady(int playerId) {
-        if (readyPlayers.contains(playerId)) readyPlayers.remove(playerId);
-        else readyPlayers.add(playerId);
+        if (!readyPlayers.remove(playerId)) {
+            readyPlayers.add(playerId);
+        }
     }
 
+    // В STAGE сотни зрителей не ждут друг друга: достаточно минимума игроков
     public boolean allReady() {
+        if (mode == GameMode.STAGE) {
+            return players.size() >= minPlayers;
+        }
         return players.size() >= minPlayers &&
                 readyPlayers.size() == players.size();
     }
@@ -118,4 +212,81 @@ public class GameState {
     public void setCurrentStage(String stage) {
         this.currentStage = stage;
     }
+
+    public RoomStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(RoomStatus status) {
+        this.status = status;
+        this.lastActivity = clock.getAsLong();
+    }
+
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    public void touch(long now) {
+        this.lastActivity = now;
+    }
+
+    public ScheduledFuture<?> getRoundTimer() {
+        return roundTimer;
+    }
+
+    public synchronized void setRoundTimer(ScheduledFuture<?> roundTimer) {
+        this.roundTimer = roundTimer;
+    }
+
+    public long getRoundDeadline() {
+        return roundDeadline;
+    }
+
+    public void setRoundDeadline(long roundDeadline) {
+        this.roundDeadline = roundDeadline;
+    }
+
+    public synchronized void setRoundEvent(RoundEvent roundEvent) {
+        this.roundEvent = roundEvent;
+    }
+
+    // Событие раунда фиксируется один раз, даже если конец раунда пришёл и от таймера, и от догадки
+    public synchronized RoundEvent takeRoundEvent() {
+        RoundEvent event = roundEvent;
+        roundEvent = null;
+        return event;
+    }
+
+    public synchronized void cancelRoundTimer() {
+        if (roundTimer != null) {
+            roundTimer.cancel(false);
+            roundTimer = null;
+        }
+    }
+
+    public synchronized StageRound getStage() {
+        if (stage == null) {
+            stage = new StageRound(random);
+        }
+        return stage;
+    }
+
+    public synchronized void setStageTicker(ScheduledFuture<?> stageTicker) {
+        this.stageTicker = stageTicker;
+    }
+
+    public SpectatorHub getSpectatorHub() {
+        return spectatorHub;
+    }
+
+    public void setSpectatorHub(SpectatorHub spectatorHub) {
+        this.spectatorHub = spectatorHub;
+    }
+
+    public synchronized void cancelStageTicker() {
+        if (stageTicker != null) {
+            stageTicker.cancel(false);
+            stageTicker = null;
+        }
+    }
 }
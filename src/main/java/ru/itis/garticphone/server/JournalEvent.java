@@ -0,0 +1,158 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.client.Player;
+
+public class JournalEvent {
+
+    public enum Kind {
+        JOIN,
+        LEAVE,
+        READY,
+        START,
+        SUBMIT,
+        ROUND_END,
+        CLOSE
+    }
+
+    private long seq;
+    private final Kind kind;
+    private final int roomId;
+    private int playerId;
+    private String name;
+    private String token;
+    private GameMode mode;
+    private boolean ready;
+    private String word;
+    private int duration;
+    private long deadline;
+    private int drawerId;
+    private int round;
+    private int index;
+    private String text;
+    private String drawing;
+
+    private JournalEvent(Kind kind, int roomId) {
+        this.kind = kind;
+        this.roomId = roomId;
+    }
+
+    public static JournalEvent join(int roomId, GameMode mode, Player player) {
+        JournalEvent event = new JournalEvent(Kind.JOIN, roomId);
+        event.mode = mode;
+        event.playerId = player.getId();
+        event.name = player.getName();
+        event.token = player.getSessionToken();
+        return event;
+    }
+
+    public static JournalEvent leave(int roomId, int playerId) {
+        JournalEvent event = new JournalEvent(Kind.LEAVE, roomId);
+        event.playerId = playerId;
+        return event;
+    }
+
+    // Хранится итоговое состояние, а не переключение: повтор события после снимка ничего не ломает
+    public static JournalEvent ready(int roomId, int playerId, boolean ready) {
+        JournalEvent event = new JournalEvent(Kind.READY, roomId);
+        event.playerId = playerId;
+        event.ready = ready;
+        return event;
+    }
+
+    public static JournalEvent start(int roomId, String word, int duration, long deadline, int drawerId, int round) {
+        JournalEvent event = new JournalEvent(Kind.START, roomId);
+        event.round = round;
+        event.word = word;
+        event.duration = duration;
+        event.deadline = deadline;
+        event.drawerId = drawerId;
+        return event;
+    }
+
+    // index — позиция шага в цепочке, чтобы повтор не добавил шаг дважды
+    public static JournalEvent submit(int roomId, int playerId, int index, String text, String drawing) {
+        JournalEvent event = new JournalEvent(Kind.SUBMIT, roomId);
+        event.playerId = playerId;
+        event.index = index;
+        event.text = text;
+        event.drawing = drawing;
+        return event;
+    }
+
+    public static JournalEvent roundEnd(int roomId) {
+        return new JournalEvent(Kind.ROUND_END, roomId);
+    }
+
+    public static JournalEvent close(int roomId) {
+        return new JournalEvent(Kind.CLOSE, roomId);
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public GameMode getMode() {
+        return mode;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public int getDrawerId() {
+        return drawerId;
+    }
+
+    // 0 в журналах, записанных до появления поля
+    public int getRound() {
+        return round;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getDrawing() {
+        return drawing;
+    }
+}
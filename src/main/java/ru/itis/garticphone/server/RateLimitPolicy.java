@@ -0,0 +1,36 @@
+package ru.itis.garticphone.server;
+
+public class RateLimitPolicy {
+
+    public enum Action {
+        DROP,
+        COALESCE,
+        DISCONNECT
+    }
+
+    private final int burst;
+    private final double perSecond;
+    private final Action action;
+
+    public RateLimitPolicy(int burst, double perSecond, Action action) {
+        this.burst = burst;
+        this.perSecond = perSecond;
+        this.action = action;
+    }
+
+    public TokenBucket newBucket(long now) {
+        return new TokenBucket(burst, perSecond, now);
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public double getPerSecond() {
+        return perSecond;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+}
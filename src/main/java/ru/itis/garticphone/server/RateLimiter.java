@@ -0,0 +1,149 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+public class RateLimiter {
+    private static final int TYPES = MessageType.values().length;
+
+    private static class PlayerLimits {
+        private final TokenBucket[] buckets = new TokenBucket[TYPES];
+        private final Message[] pending = new Message[TYPES];
+        private volatile int pendingCount;
+    }
+
+    private final RateLimitPolicy[] policies = new RateLimitPolicy[TYPES];
+    private volatile RateLimitPolicy roomPolicy;
+    private final Map<Player, PlayerLimits> limits = new ConcurrentHashMap<>();
+    private final AtomicLongArray throttled = new AtomicLongArray(TYPES);
+    private final AtomicLong roomThrottled = new AtomicLong();
+
+    public RateLimiter() {
+        setPolicy(MessageType.JOIN, new RateLimitPolicy(3, 1, RateLimitPolicy.Action.DROP));
+        setPolicy(MessageType.SPECTATE, new RateLimitPolicy(3, 1, RateLimitPolicy.Action.DROP));
+        setPolicy(MessageType.REPLAY, new RateLimitPolicy(2, 0.2, RateLimitPolicy.Action.DROP));
+        setPolicy(MessageType.GALLERY, new RateLimitPolicy(2, 0.2, RateLimitPolicy.Action.DROP));
+        setPolicy(MessageType.READY, new RateLimitPolicy(4, 2, RateLimitPolicy.Action.DROP));
+        setPolicy(MessageType.START, new RateLimitPolicy(2, 0.5, RateLimitPolicy.Action.DROP));
+        setPolicy(MessageType.CHAT, new RateLimitPolicy(6, 3, RateLimitPolicy.Action.COALESCE));
+        setPolicy(MessageType.GUESS, new RateLimitPolicy(6, 3, RateLimitPolicy.Action.DROP));
+        setPolicy(MessageType.TEXT_SUBMIT, new RateLimitPolicy(4, 1, RateLimitPolicy.Action.DROP));
+        setPolicy(MessageType.DRAW, new RateLimitPolicy(240, 120, RateLimitPolicy.Action.DROP));
+        setRoomPolicy(new RateLimitPolicy(2000, 1000, RateLimitPolicy.Action.DROP));
+    }
+
+    public void setPolicy(MessageType type, RateLimitPolicy policy) {
+        policies[type.ordinal()] = policy;
+    }
+
+    public void setRoomPolicy(RateLimitPolicy policy) {
+        this.roomPolicy = policy;
+    }
+
+    // null — сообщение пропущено, иначе действие, которое нужно применить к отправителю
+    public RateLimitPolicy.Action check(Player player, GameState room, Message message, long now) {
+        int type = message.getType().ordinal();
+        RateLimitPolicy policy = policies[type];
+        if (policy == null) {
+            return null;
+        }
+
+        PlayerLimits playerLimits = limits.computeIfAbsent(player, p -> new PlayerLimits());
+        TokenBucket bucket;
+        synchronized (playerLimits) {
+            bucket = playerLimits.buckets[type];
+            if (bucket == null) {
+                bucket = policy.newBucket(now);
+                playerLimits.buckets[type] = bucket;
+            }
+        }
+        if (!bucket.tryAcquire(now)) {
+            throttled.incrementAndGet(type);
+            // Сообщение с seq ждёт ACK или ERROR: вытесненное из отложенных осталось бы без ответа,
+            // поэтому оно не откладывается, а отклоняется
+            if (policy.getAction() == RateLimitPolicy.Action.COALESCE && message.getSeq() != null) {
+                return RateLimitPolicy.Action.DROP;
+            }
+            if (policy.getAction() == RateLimitPolicy.Action.COALESCE) {
+                synchronized (playerLimits) {
+                    if (playerLimits.pending[type] == null) {
+                        playerLimits.pendingCount++;
+                    }
+                    playerLimits.pending[type] = message;
+                }
+            }
+            return policy.getAction();
+        }
+
+        RateLimitPolicy aggregate = roomPolicy;
+        if (room != null && aggregate != null) {
+            TokenBucket roomBucket;
+            synchronized (room) {
+                roomBucket = room.getInboundLimit();
+                if (roomBucket == null) {
+                    roomBucket = aggregate.newBucket(now);
+                    room.setInboundLimit(roomBucket);
+                }
+            }
+            if (!roomBucket.tryAcquire(now)) {
+                // Сообщение не прошло, поэтому личный токен игроку возвращается
+                bucket.refund();
+                roomThrottled.incrementAndGet();
+                throttled.incrementAndGet(type);
+                return aggregate.getAction();
+            }
+        }
+        return null;
+    }
+
+    // Отложенное COALESCE-сообщение отдаётся, как только у его корзины снова есть токен
+    public Message pollPending(Player player, long now) {
+        PlayerLimits playerLimits = limits.get(player);
+        if (playerLimits == null || playerLimits.pendingCount == 0) {
+            return null;
+        }
+        synchronized (playerLimits) {
+            for (int type = 0; type < TYPES; type++) {
+                Message pending = playerLimits.pending[type];
+                if (pending != null && playerLimits.buckets[type].tryAcquire(now)) {
+                    playerLimits.pending[type] = null;
+                    playerLimits.pendingCount--;
+                    return pending;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Отдаёт все созревшие отложенные сообщения; вызывается по таймеру, а не только на следующее сообщение игрока
+    public void drainPending(long now, BiConsumer<Player, Message> sink) {
+        for (Map.Entry<Player, PlayerLimits> entry : limits.entrySet()) {
+            if (entry.getValue().pendingCount == 0) {
+                continue;
+            }
+            Message pending;
+            while ((pending = pollPending(entry.getKey(), now)) != null) {
+                sink.accept(entry.getKey(), pending);
+            }
+        }
+    }
+
+    public void forget(Player player) {
+        limits.remove(player);
+    }
+
+    public long getThrottled(MessageType type) {
+        return throttled.get(type.ordinal());
+    }
+
+    public long getRoomThrottled() {
+        return roomThrottled.get();
+    }
+}
@@ -0,0 +1,204 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+public class ReplayReader implements Closeable {
+    private static final MessageType[] TYPES = MessageType.values();
+
+    public record Entry(long offsetMillis, Message message) {
+    }
+
+    private final FileChannel channel;
+    private final int roomId;
+    private final long startMillis;
+    private final long dataEnd;
+    private final int[] indexOffsets;
+    private final long[] indexPositions;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private long position;
+
+    public ReplayReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = readAt(0, ReplayRecorder.HEADER_SIZE);
+        if (header.getInt() != ReplayRecorder.MAGIC || header.getShort() != ReplayRecorder.VERSION) {
+            channel.close();
+            throw new IOException("Not a replay file: " + path);
+        }
+        this.roomId = header.getInt();
+        this.startMillis = header.getLong();
+
+        // Без футера (запись оборвалась) индекс пуст и поиск идёт последовательным чтением
+        long size = channel.size();
+        long end = size;
+        int[] offsets = new int[0];
+        long[] positions = new long[0];
+        if (size >= ReplayRecorder.HEADER_SIZE + ReplayRecorder.FOOTER_SIZE) {
+            ByteBuffer footer = readAt(size - ReplayRecorder.FOOTER_SIZE, ReplayRecorder.FOOTER_SIZE);
+            long indexPosition = footer.getLong();
+            int count = footer.getInt();
+            if (footer.getInt() == ReplayRecorder.FOOTER_MAGIC) {
+                ByteBuffer index = readAt(indexPosition, count * 12);
+                offsets = new int[count];
+                positions = new long[count];
+                for (int i = 0; i < count; i++) {
+                    offsets[i] = index.getInt();
+                    positions[i] = index.getLong();
+                }
+                end = indexPosition;
+            }
+        }
+        this.dataEnd = end;
+        this.indexOffsets = offsets;
+        this.indexPositions = positions;
+        this.position = ReplayRecorder.HEADER_SIZE;
+        buffer.limit(0);
+    }
+
+    private ByteBuffer readAt(long at, int length) throws IOException {
+        ByteBuffer target = ByteBuffer.allocate(length);
+        while (target.hasRemaining()) {
+            if (channel.read(target, at + target.position()) < 0) {
+                throw new IOException("Unexpected end of replay file");
+            }
+        }
+        return target.flip();
+    }
+
+    // Прыжок к ближайшей точке индекса не позже offsetMillis, дальше — пропуск записей до нужного времени
+    public void seek(long offsetMillis) throws IOException {
+        long target = ReplayRecorder.HEADER_SIZE;
+        int low = 0;
+        int high = indexOffsets.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexOffsets[mid] <= offsetMillis) {
+                target = indexPositions[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        position = target;
+        buffer.limit(0);
+
+        while (true) {
+            long recordStart = position - buffer.remaining();
+            Entry entry = next();
+            if (entry == null) {
+                return;
+            }
+            if (entry.offsetMillis() >= offsetMillis) {
+                position = recordStart;
+                buffer.limit(0);
+                return;
+            }
+        }
+    }
+
+    public Entry next() throws IOException {
+        if (!fill(4 + 1 + 4 + 2)) {
+            return null;
+        }
+        int offset = buffer.getInt();
+        MessageType type = TYPES[buffer.get()];
+        int playerId = buffer.getInt();
+        short nameLength = buffer.getShort();
+        String name = readString(nameLength);
+        if (!fill(4)) {
+            return null;
+        }
+        String payload = readString(buffer.getInt());
+        return new Entry(offset, new Message(type, roomId, playerId, name, payload));
+    }
+
+    private String readString(int length) throws IOException {
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.allocate(length);
+            large.put(buffer);
+            while (large.hasRemaining()) {
+                int read = channel.read(large, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of replay file");
+                }
+                position += read;
+            }
+            buffer.limit(0);
+            return new String(large.array(), StandardCharsets.UTF_8);
+        }
+        if (!fill(length)) {
+            throw new IOException("Unexpected end of replay file");
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    // position указывает на первый байт файла после содержимого буфера
+    private boolean fill(int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < needed && position < dataEnd) {
+            int limit = (int) Math.min(buffer.capacity(), buffer.position() + (dataEnd - position));
+            buffer.limit(limit);
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            position += read;
+        }
+        buffer.flip();
+        return buffer.remaining() >= needed;
+    }
+
+    // speed 1 — реальное время, 4 — вчетверо быстрее, 0 — без пауз; sink возвращает false, чтобы остановить поток
+    public void stream(long fromMillis, double speed, Predicate<Entry> sink) throws IOException, InterruptedException {
+        seek(fromMillis);
+        long started = System.nanoTime();
+        Entry entry;
+        while ((entry = next()) != null) {
+            if (speed > 0) {
+                long due = started + (long) (TimeUnit.MILLISECONDS.toNanos(entry.offsetMillis() - fromMillis) / speed);
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+            if (!sink.test(entry)) {
+                return;
+            }
+        }
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public int getIndexSize() {
+        return indexOffsets.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,282 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.log.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Формат файла: заголовок (MAGIC, VERSION, roomId, время начала), записи
+// (смещение мс, тип, playerId, имя, payload), в конце индекс смещение → позиция и футер
+public class ReplayRecorder implements Closeable {
+    static final int MAGIC = 0x47524550;
+    static final int FOOTER_MAGIC = 0x47524958;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 4 + 2 + 4 + 8;
+    static final int FOOTER_SIZE = 8 + 4 + 4;
+    static final long INDEX_INTERVAL_MILLIS = 1000;
+    static final String EXTENSION = ".replay";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private enum Kind {
+        BEGIN,
+        RECORD,
+        END
+    }
+
+    private record Event(Kind kind, int roomId, long nanos, Message message) {
+    }
+
+    private static class Recording {
+        private final Path path;
+        private final FileChannel channel;
+        private final long startNanos;
+        private final List<long[]> index = new ArrayList<>();
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long nextIndexAt;
+
+        private Recording(Path path, FileChannel channel, long startNanos) {
+            this.path = path;
+            this.channel = channel;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private final Path dir;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "replay-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Event> queue = new ArrayList<>();
+    private final Map<Integer, Recording> recordings = new HashMap<>();
+    // Только законченные записи: в идущем раунде есть догадки, которые ещё нельзя показывать
+    private final Map<Integer, Path> latest = new ConcurrentHashMap<>();
+    private final Set<Path> writing = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> active = ConcurrentHashMap.newKeySet();
+    private boolean writeScheduled;
+
+    public ReplayRecorder(Path dir) throws IOException {
+        this.dir = Files.createDirectories(dir);
+    }
+
+    public void begin(int roomId) {
+        active.add(roomId);
+        enqueue(new Event(Kind.BEGIN, roomId, System.nanoTime(), null));
+    }
+
+    // На горячем пути только отметка времени и постановка в очередь; кодирование и запись — в потоке записи
+    public void record(int roomId, Message message) {
+        if (!active.contains(roomId)) {
+            return;
+        }
+        enqueue(new Event(Kind.RECORD, roomId, System.nanoTime(), message));
+    }
+
+    public void end(int roomId) {
+        if (!active.remove(roomId)) {
+            return;
+        }
+        enqueue(new Event(Kind.END, roomId, System.nanoTime(), null));
+    }
+
+    private void enqueue(Event event) {
+        synchronized (queue) {
+            queue.add(event);
+            if (!writeScheduled) {
+                writeScheduled = true;
+                writer.execute(this::writeBatch);
+            }
+        }
+    }
+
+    private void writeBatch() {
+        List<Event> batch;
+        synchronized (queue) {
+            batch = new ArrayList<>(queue);
+            queue.clear();
+            writeScheduled = false;
+        }
+        for (Event event : batch) {
+            try {
+                switch (event.kind()) {
+                    case BEGIN -> open(event);
+                    case RECORD -> append(event);
+                    case END -> finish(event.roomId());
+                }
+            } catch (IOException e) {
+                Log.error("Replay recording failed", e);
+                // Оборванный файл так и не попадает в выдачу
+                Recording failed = recordings.remove(event.roomId());
+                if (failed != null) {
+                    try {
+                        failed.channel.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+        for (Recording recording : recordings.values()) {
+            try {
+                flush(recording);
+            } catch (IOException e) {
+                Log.error("Replay flush failed", e);
+            }
+        }
+    }
+
+    private void open(Event event) throws IOException {
+        finish(event.roomId());
+        long startMillis = System.currentTimeMillis();
+        Path path = dir.resolve("room-" + event.roomId() + "-" + startMillis + EXTENSION);
+        writing.add(path);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            writing.remove(path);
+            throw e;
+        }
+        Recording recording = new Recording(path, channel, event.nanos());
+        recordings.put(event.roomId(), recording);
+        recording.buffer.putInt(MAGIC).putShort(VERSION).putInt(event.roomId()).putLong(startMillis);
+        flush(recording);
+    }
+
+    private void append(Event event) throws IOException {
+        Recording recording = recordings.get(event.roomId());
+        if (recording == null) {
+            return;
+        }
+        long offset = TimeUnit.NANOSECONDS.toMillis(event.nanos() - recording.startNanos);
+        Message message = event.message();
+        byte[] name = bytes(message.getPlayerName());
+        byte[] payload = bytes(message.getPayload());
+        int size = 4 + 1 + 4 + 2 + (name == null ? 0 : name.length) + 4 + (payload == null ? 0 : payload.length);
+        ByteBuffer buffer = recording.buffer;
+        if (buffer.remaining() < size) {
+            flush(recording);
+        }
+        if (offset >= recording.nextIndexAt) {
+            recording.index.add(new long[]{offset, recording.channel.position() + buffer.position()});
+            recording.nextIndexAt = offset - offset % INDEX_INTERVAL_MILLIS + INDEX_INTERVAL_MILLIS;
+        }
+        if (size > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.allocate(size);
+            put(large, (int) offset, message, name, payload);
+            large.flip();
+            write(recording.channel, large);
+            return;
+        }
+        put(buffer, (int) offset, message, name, payload);
+    }
+
+    private static void put(ByteBuffer target, int offset, Message message, byte[] name, byte[] payload) {
+        target.putInt(offset);
+        target.put((byte) message.getType().ordinal());
+        target.putInt(message.getPlayerId());
+        target.putShort((short) (name == null ? -1 : name.length));
+        if (name != null) {
+            target.put(name);
+        }
+        target.putInt(payload == null ? -1 : payload.length);
+        if (payload != null) {
+            target.put(payload);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void finish(int roomId) throws IOException {
+        Recording recording = recordings.remove(roomId);
+        if (recording == null) {
+            return;
+        }
+        flush(recording);
+        long indexPosition = recording.channel.position();
+        ByteBuffer footer = ByteBuffer.allocate(recording.index.size() * 12 + FOOTER_SIZE);
+        for (long[] entry : recording.index) {
+            footer.putInt((int) entry[0]).putLong(entry[1]);
+        }
+        footer.putLong(indexPosition).putInt(recording.index.size()).putInt(FOOTER_MAGIC);
+        footer.flip();
+        try {
+            write(recording.channel, footer);
+            recording.channel.close();
+            latest.put(roomId, recording.path);
+        } finally {
+            writing.remove(recording.path);
+        }
+    }
+
+    private void flush(Recording recording) throws IOException {
+        recording.buffer.flip();
+        write(recording.channel, recording.buffer);
+        recording.buffer.clear();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    public Path getLatest(int roomId) {
+        return latest.get(roomId);
+    }
+
+    public Path resolve(String name) {
+        if (name.contains("/") || name.contains("\\") || !name.endsWith(EXTENSION)) {
+            return null;
+        }
+        Path path = dir.resolve(name);
+        return Files.isRegularFile(path) && !writing.contains(path) ? path : null;
+    }
+
+    // Дожидается записи всего, что было поставлено в очередь до вызова
+    public void flush() {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+        }
+    }
+
+    @Override
+    public void close() {
+        writer.execute(() -> {
+            for (Integer roomId : new ArrayList<>(recordings.keySet())) {
+                try {
+                    finish(roomId);
+                } catch (IOException e) {
+                    Log.error("Replay finish failed", e);
+                }
+            }
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
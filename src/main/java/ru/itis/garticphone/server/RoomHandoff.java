@@ -0,0 +1,91 @@
+package ru.itis.garticphone.server;
+
+import com.google.gson.Gson;
+import ru.itis.garticphone.common.log.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Передача комнат между процессами на одной машине:
+// новый процесс шлёт свой игровой порт, старый отвечает снимком комнат и ждёт OK
+public final class RoomHandoff {
+    private static final Gson GSON = new Gson();
+    private static final String ACCEPTED = "OK";
+
+    private static class Transfer {
+        private final List<RoomSnapshot> rooms;
+
+        private Transfer(List<RoomSnapshot> rooms) {
+            this.rooms = rooms;
+        }
+    }
+
+    private RoomHandoff() {
+    }
+
+    public static Thread listen(GameServer server, ServerSocket listener) {
+        Thread thread = new Thread(() -> {
+            try (listener;
+                 Socket socket = listener.accept();
+                 BufferedReader in = reader(socket);
+                 BufferedWriter out = writer(socket)) {
+                int targetPort = Integer.parseInt(in.readLine().trim());
+                List<RoomSnapshot> rooms = server.beginDrain();
+                out.write(GSON.toJson(new Transfer(rooms)));
+                out.newLine();
+                out.flush();
+
+                if (ACCEPTED.equals(in.readLine())) {
+                    server.finishDrain(targetPort);
+                    Log.info("Handed rooms over: {} room(s) to port {}", rooms.size(), targetPort);
+                } else {
+                    server.abortDrain();
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.error("Room handoff failed", e);
+                server.abortDrain();
+            }
+        }, "handoff");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    public static int takeOver(GameServer server, int handoffPort) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), handoffPort);
+             BufferedReader in = reader(socket);
+             BufferedWriter out = writer(socket)) {
+            out.write(Integer.toString(server.getLocalPort()));
+            out.newLine();
+            out.flush();
+
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("Handoff source closed the connection");
+            }
+            Transfer transfer = GSON.fromJson(line, Transfer.class);
+            server.adopt(transfer.rooms);
+
+            out.write(ACCEPTED);
+            out.newLine();
+            out.flush();
+            return transfer.rooms.size();
+        }
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static BufferedWriter writer(Socket socket) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,223 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.common.log.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+public class RoomJournal implements Closeable {
+    private static final String JOURNAL_FILE = "rooms.journal";
+    private static final String SNAPSHOT_FILE = "rooms.snapshot";
+    private static final Gson GSON = new Gson();
+
+    private static class SnapshotFile {
+        private final long lastSeq;
+        private final List<RoomSnapshot> rooms;
+
+        private SnapshotFile(long lastSeq, List<RoomSnapshot> rooms) {
+            this.lastSeq = lastSeq;
+            this.rooms = rooms;
+        }
+    }
+
+    private final Path dir;
+    private final FileChannel channel;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "room-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<JournalEvent> queue = new ArrayList<>();
+    private final List<RoomSnapshot> recovered;
+    private long nextSeq;
+    private boolean commitScheduled;
+    private volatile long commits;
+
+    private RoomJournal(Path dir, List<RoomSnapshot> recovered, long lastSeq) throws IOException {
+        this.dir = dir;
+        this.recovered = recovered;
+        this.nextSeq = lastSeq;
+        this.channel = FileChannel.open(dir.resolve(JOURNAL_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Восстанавливает комнаты из снимка и хвоста журнала и открывает журнал для дозаписи
+    public static RoomJournal open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Map<Integer, RoomSnapshot> rooms = new LinkedHashMap<>();
+        long lastSeq = 0;
+
+        Path snapshotPath = dir.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotPath)) {
+            SnapshotFile snapshot = GSON.fromJson(Files.readString(snapshotPath), SnapshotFile.class);
+            lastSeq = snapshot.lastSeq;
+            for (RoomSnapshot room : snapshot.rooms) {
+                rooms.put(room.getRoomId(), room);
+            }
+        }
+
+        Path journalPath = dir.resolve(JOURNAL_FILE);
+        if (Files.exists(journalPath)) {
+            try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+                long snapshotSeq = lastSeq;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JournalEvent event;
+                    try {
+                        event = GSON.fromJson(line, JournalEvent.class);
+                    } catch (JsonParseException e) {
+                        break; // оборванная запись в конце журнала после падения
+                    }
+                    if (event == null || event.getSeq() <= snapshotSeq) {
+                        continue;
+                    }
+                    replay(rooms, event);
+                    lastSeq = Math.max(lastSeq, event.getSeq());
+                }
+            }
+        }
+        return new RoomJournal(dir, new ArrayList<>(rooms.values()), lastSeq);
+    }
+
+    private static void replay(Map<Integer, RoomSnapshot> rooms, JournalEvent event) {
+        switch (event.getKind()) {
+            case JOIN -> rooms.computeIfAbsent(event.getRoomId(), id -> new RoomSnapshot(id, event.getMode()))
+                    .apply(event);
+            case CLOSE -> rooms.remove(event.getRoomId());
+            default -> {
+                RoomSnapshot room = rooms.get(event.getRoomId());
+                if (room != null) {
+                    room.apply(event);
+                }
+            }
+        }
+    }
+
+    public List<RoomSnapshot> getRecovered() {
+        return recovered;
+    }
+
+    // Вызывающий поток только ставит событие в очередь; запись и force выполняет поток журнала
+    public void append(JournalEvent event) {
+        synchronized (queue) {
+            event.setSeq(++nextSeq);
+            queue.add(event);
+            if (!commitScheduled) {
+                commitScheduled = true;
+                writer.execute(this::commit);
+            }
+        }
+    }
+
+    private List<JournalEvent> drain() {
+        synchronized (queue) {
+            List<JournalEvent> batch = new ArrayList<>(queue);
+            queue.clear();
+            commitScheduled = false;
+            return batch;
+        }
+    }
+
+    // Group commit: всё, что накопилось за время предыдущей записи, уходит одной записью и одним force
+    private void commit() {
+        try {
+            write(drain(), 0);
+        } catch (IOException e) {
+            Log.error("Journal write failed", e);
+        }
+    }
+
+    private void write(List<JournalEvent> batch, long afterSeq) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (JournalEvent event : batch) {
+            if (event.getSeq() > afterSeq) {
+                sb.append(GSON.toJson(event)).append('\n');
+            }
+        }
+        if (sb.length() == 0) {
+            return;
+        }
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(sb.toString());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        commits++;
+    }
+
+    public void snapshot(Supplier<List<RoomSnapshot>> rooms) {
+        writer.execute(() -> {
+            try {
+                writeSnapshot(rooms);
+            } catch (IOException | RuntimeException e) {
+                Log.error("Journal snapshot failed", e);
+            }
+        });
+    }
+
+    // Снимок снимается после чтения номера последнего события, поэтому всё до lastSeq в нём уже учтено
+    private void writeSnapshot(Supplier<List<RoomSnapshot>> rooms) throws IOException {
+        long lastSeq;
+        synchronized (queue) {
+            lastSeq = nextSeq;
+        }
+        String json = GSON.toJson(new SnapshotFile(lastSeq, rooms.get()));
+
+        Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(json);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        List<JournalEvent> batch = drain();
+        channel.truncate(0);
+        write(batch, lastSeq);
+    }
+
+    // Дожидается записи всего, что было поставлено в очередь до вызова
+    public void flush() {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+        }
+    }
+
+    public long getCommits() {
+        return commits;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+}
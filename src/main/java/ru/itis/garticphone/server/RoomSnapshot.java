@@ -0,0 +1,199 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.client.Player;
+
+import java.util.*;
+
+public class RoomSnapshot {
+
+    public static class PlayerRecord {
+        private final int id;
+        private final String name;
+        private final String token;
+        private boolean ready;
+
+        PlayerRecord(int id, String name, String token, boolean ready) {
+            this.id = id;
+            this.name = name;
+            this.token = token;
+            this.ready = ready;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public boolean isReady() {
+            return ready;
+        }
+    }
+
+    public static class StepRecord {
+        private final String text;
+        private final String drawing;
+
+        StepRecord(String text, String drawing) {
+            this.text = text;
+            this.drawing = drawing;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getDrawing() {
+            return drawing;
+        }
+    }
+
+    private final int roomId;
+    private final GameMode mode;
+    private RoomStatus status = RoomStatus.LOBBY;
+    private int hostId = -1;
+    private int drawerId = -1;
+    private int round = 1;
+    private int duration;
+    private long deadline;
+    private String word;
+    private final List<PlayerRecord> players = new ArrayList<>();
+    private final Map<Integer, List<StepRecord>> chains = new HashMap<>();
+
+    public RoomSnapshot(int roomId, GameMode mode) {
+        this.roomId = roomId;
+        this.mode = mode;
+    }
+
+    public static RoomSnapshot of(GameState room, String word) {
+        RoomSnapshot snapshot = new RoomSnapshot(room.getRoomId(), room.getMode());
+        snapshot.status = room.getStatus();
+        snapshot.hostId = room.getHostId();
+        snapshot.drawerId = room.getDrawerId();
+        snapshot.round = room.getRound();
+        snapshot.duration = room.getTimerSeconds();
+        snapshot.deadline = room.getRoundDeadline();
+        snapshot.word = word;
+        for (Player player : room.getPlayers()) {
+            snapshot.players.add(new PlayerRecord(
+                    player.getId(),
+                    player.getName(),
+                    player.getSessionToken(),
+                    room.getReadyPlayers().contains(player.getId())
+            ));
+        }
+        for (Map.Entry<Integer, List<ChainStep>> chain : room.getChains().entrySet()) {
+            List<StepRecord> steps = new ArrayList<>();
+            for (ChainStep step : chain.getValue()) {
+                steps.add(step.isTextStep()
+                        ? new StepRecord(step.getText(), null)
+                        : new StepRecord(null, Base64.getEncoder().encodeToString(step.getDrawing())));
+            }
+            snapshot.chains.put(chain.getKey(), steps);
+        }
+        return snapshot;
+    }
+
+    // События журнала идемпотентны: повтор уже учтённого в снимке события состояние не меняет
+    public void apply(JournalEvent event) {
+        switch (event.getKind()) {
+            case JOIN -> {
+                if (find(event.getPlayerId()) == null) {
+                    players.add(new PlayerRecord(event.getPlayerId(), event.getName(), event.getToken(), false));
+                }
+                if (hostId == -1) {
+                    hostId = event.getPlayerId();
+                }
+            }
+            case LEAVE -> players.removeIf(p -> p.id == event.getPlayerId());
+            case READY -> {
+                PlayerRecord player = find(event.getPlayerId());
+                if (player != null) {
+                    player.ready = event.isReady();
+                }
+            }
+            case START -> {
+                status = RoomStatus.IN_ROUND;
+                round = Math.max(1, event.getRound());
+                word = event.getWord();
+                duration = event.getDuration();
+                deadline = event.getDeadline();
+                drawerId = event.getDrawerId();
+                if (mode == GameMode.DEAF_PHONE) {
+                    chains.clear();
+                }
+            }
+            case SUBMIT -> {
+                List<StepRecord> chain = chains.computeIfAbsent(event.getPlayerId(), id -> new ArrayList<>());
+                if (chain.size() == event.getIndex()) {
+                    chain.add(new StepRecord(event.getText(), event.getDrawing()));
+                }
+            }
+            case ROUND_END -> {
+                status = RoomStatus.FINISHED;
+                word = null;
+            }
+            default -> {
+            }
+        }
+    }
+
+    private PlayerRecord find(int playerId) {
+        for (PlayerRecord player : players) {
+            if (player.id == playerId) {
+                return player;
+            }
+        }
+        return null;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public GameMode getMode() {
+        return mode;
+    }
+
+    public RoomStatus getStatus() {
+        return status;
+    }
+
+    public int getHostId() {
+        return hostId;
+    }
+
+    public int getDrawerId() {
+        return drawerId;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    public List<PlayerRecord> getPlayers() {
+        return players;
+    }
+
+    public Map<Integer, List<StepRecord>> getChains() {
+        return chains;
+    }
+}
@@ -0,0 +1,8 @@
+package ru.itis.garticphone.server;
+
+public enum RoomStatus {
+    LOBBY,
+    IN_ROUND,
+    FINISHED,
+    EXPIRED
+}
@@ -0,0 +1,139 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.JsonMessageConnection;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class SessionManager {
+
+    private static class Session {
+        private final Player player;
+        private ScheduledFuture<?> expiry;
+        // Сессия из журнала: номера кадров клиента остались от прежнего процесса
+        private boolean restored;
+
+        private Session(Player player) {
+            this.player = player;
+        }
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final long graceSeconds;
+    private final SecureRandom random = new SecureRandom();
+
+    public SessionManager(ScheduledExecutorService scheduler, long graceSeconds) {
+        this.scheduler = scheduler;
+        this.graceSeconds = graceSeconds;
+    }
+
+    public String open(Player player) {
+        byte[] bytes = new byte[18];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(player));
+        player.setSessionToken(token);
+        return token;
+    }
+
+    // Сессия игрока, восстановленного из журнала: токен прежний, соединения ещё нет
+    public void restore(Player player, String token, Runnable onExpire) {
+        Session session = new Session(player);
+        session.restored = true;
+        sessions.put(token, session);
+        player.setSessionToken(token);
+        suspend(player, onExpire);
+    }
+
+    public boolean suspend(Player player, Runnable onExpire) {
+        String token = player.getSessionToken();
+        Session session = token != null ? sessions.get(token) : null;
+        if (session == null) {
+            return false;
+        }
+        synchronized (session) {
+            player.detach();
+            if (session.expiry != null) {
+                session.expiry.cancel(false);
+            }
+            session.expiry = scheduler.schedule(() -> {
+                if (sessions.remove(token, session)) {
+                    onExpire.run();
+                }
+            }, graceSeconds, TimeUnit.SECONDS);
+        }
+        return true;
+    }
+
+    // Игрок сессии без переподключения к ней; null — сессии нет
+    public Player find(String token) {
+        Session session = token != null ? sessions.get(token) : null;
+        return session != null ? session.player : null;
+    }
+
+    public boolean isRestored(String token) {
+        Session session = token != null ? sessions.get(token) : null;
+        if (session == null) {
+            return false;
+        }
+        synchronized (session) {
+            return session.restored;
+        }
+    }
+
+    public Player resume(String token, JsonMessageConnection connection) {
+        Session session = token != null ? sessions.get(token) : null;
+        if (session == null) {
+            return null;
+        }
+        synchronized (session) {
+            if (session.expiry != null) {
+                session.expiry.cancel(false);
+                session.expiry = null;
+            }
+            session.restored = false;
+            JsonMessageConnection old = session.player.attach(connection);
+            if (old != null && old != connection) {
+                try {
+                    old.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return session.player;
+    }
+
+    public void close(Player player) {
+        String token = player.getSessionToken();
+        if (token == null) {
+            return;
+        }
+        Session session = sessions.remove(token);
+        if (session != null && session.expiry != null) {
+            session.expiry.cancel(false);
+        }
+    }
+
+    public boolean isSuspended(Player player) {
+        String token = player.getSessionToken();
+        Session session = token != null ? sessions.get(token) : null;
+        if (session == null) {
+            return false;
+        }
+        synchronized (session) {
+            return session.expiry != null;
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
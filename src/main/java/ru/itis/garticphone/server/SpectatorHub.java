@@ -0,0 +1,140 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class SpectatorHub {
+    static final int RING_SIZE = 64;
+
+    private record Frame(long seq, String text) {
+    }
+
+    private static final class Cursor {
+        private long next;
+        private final AtomicBoolean busy = new AtomicBoolean();
+
+        private Cursor(long next) {
+            this.next = next;
+        }
+    }
+
+    private final Executor writers;
+    private final AtomicReferenceArray<Frame> ring = new AtomicReferenceArray<>(RING_SIZE);
+    private final Map<Player, Cursor> spectators = new ConcurrentHashMap<>();
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingFrames;
+    private final AtomicLong skipped = new AtomicLong();
+    private volatile long head;
+    private ScheduledFuture<?> ticker;
+
+    public SpectatorHub(Executor writers) {
+        this.writers = writers;
+    }
+
+    public void add(Player spectator) {
+        spectators.put(spectator, new Cursor(head));
+    }
+
+    public void remove(Player spectator) {
+        spectators.remove(spectator);
+    }
+
+    public boolean contains(Player spectator) {
+        return spectators.containsKey(spectator);
+    }
+
+    public int size() {
+        return spectators.size();
+    }
+
+    // Сообщение кодируется один раз и копится до следующего тика
+    public void offer(Message message) {
+        if (spectators.isEmpty()) {
+            return;
+        }
+        String json = Message.toJson(message);
+        synchronized (pending) {
+            pending.append(json).append('\n');
+            pendingFrames++;
+        }
+    }
+
+    // Накопленное за тик становится одним кадром кольца; все писатели читают один и тот же кадр.
+    // Пачка идёт вне нумерации seq, поэтому открывается строкой SPECTATE {frames}: клиент не считает её кадры
+    public void publish() {
+        String text;
+        synchronized (pending) {
+            if (pending.length() == 0) {
+                return;
+            }
+            Message header = new Message(MessageType.SPECTATE, 0, 0, "SERVER", "{\"frames\":" + pendingFrames + "}");
+            text = Message.toJson(header) + '\n' + pending;
+            pending.setLength(0);
+            pendingFrames = 0;
+        }
+        long seq = head;
+        ring.set((int) (seq % RING_SIZE), new Frame(seq, text));
+        head = seq + 1;
+
+        for (Map.Entry<Player, Cursor> entry : spectators.entrySet()) {
+            schedule(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void schedule(Player spectator, Cursor cursor) {
+        if (cursor.busy.compareAndSet(false, true)) {
+            writers.execute(() -> pump(spectator, cursor));
+        }
+    }
+
+    // Отставший больше чем на кольцо зритель пропускает старые кадры, а не тормозит остальных
+    private void pump(Player spectator, Cursor cursor) {
+        try {
+            long end = head;
+            while (cursor.next < end) {
+                if (cursor.next < end - RING_SIZE) {
+                    skipped.addAndGet(end - RING_SIZE - cursor.next);
+                    cursor.next = end - RING_SIZE;
+                }
+                Frame frame = ring.get((int) (cursor.next % RING_SIZE));
+                if (frame == null || frame.seq() != cursor.next) {
+                    cursor.next++;
+                    skipped.incrementAndGet();
+                    continue;
+                }
+                spectator.sendEncoded(frame.text());
+                cursor.next++;
+            }
+        } finally {
+            cursor.busy.set(false);
+        }
+        if (cursor.next < head && spectators.get(spectator) == cursor) {
+            schedule(spectator, cursor);
+        }
+    }
+
+    public void setTicker(ScheduledFuture<?> ticker) {
+        this.ticker = ticker;
+    }
+
+    public void close() {
+        if (ticker != null) {
+            ticker.cancel(false);
+            ticker = null;
+        }
+        spectators.clear();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+}
@@ -0,0 +1,84 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+import ru.itis.garticphone.common.payload.LeaderboardPayload;
+
+import java.util.*;
+
+public class StageRound {
+    static final int LEADERBOARD_SIZE = 10;
+    static final int CHAT_SAMPLE = 5;
+    private static final int FIRST_GUESS_SCORE = 10;
+
+    private final Map<Integer, Integer> scores = new HashMap<>();
+    private final Map<Integer, String> names = new HashMap<>();
+    private final Set<Integer> guessed = new HashSet<>();
+    private final Message[] chatSample = new Message[CHAT_SAMPLE];
+    private final Random random;
+    private int chatSeen;
+    private boolean changed;
+
+    public StageRound(Random random) {
+        this.random = random;
+    }
+
+    public synchronized void newRound() {
+        guessed.clear();
+        changed = true;
+    }
+
+    // Чем раньше угадал, тем больше очков; повторное угадывание в раунде не засчитывается
+    public synchronized int recordCorrect(Player player) {
+        if (!guessed.add(player.getId())) {
+            return 0;
+        }
+        int score = Math.max(1, FIRST_GUESS_SCORE - guessed.size() + 1);
+        scores.merge(player.getId(), score, Integer::sum);
+        names.put(player.getId(), player.getName());
+        changed = true;
+        return score;
+    }
+
+    // Reservoir sampling: за тик в комнату уходит не больше CHAT_SAMPLE случайных сообщений
+    public synchronized void offerChat(Message message) {
+        chatSeen++;
+        if (chatSeen <= CHAT_SAMPLE) {
+            chatSample[chatSeen - 1] = message;
+            return;
+        }
+        int slot = random.nextInt(chatSeen);
+        if (slot < CHAT_SAMPLE) {
+            chatSample[slot] = message;
+        }
+    }
+
+    // Кадры одного тика: выборка чата и таблица лидеров, если с прошлого тика что-то изменилось
+    public synchronized List<Message> tick(int roomId) {
+        int sampled = Math.min(chatSeen, CHAT_SAMPLE);
+        List<Message> frames = new ArrayList<>(sampled + 1);
+        for (int i = 0; i < sampled; i++) {
+            frames.add(chatSample[i]);
+            chatSample[i] = null;
+        }
+        if (changed || chatSeen > 0) {
+            frames.add(leaderboard(roomId));
+        }
+        chatSeen = 0;
+        changed = false;
+        return frames;
+    }
+
+    private Message leaderboard(int roomId) {
+        List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<Integer, Integer>comparingByValue().reversed());
+        List<LeaderboardPayload.Entry> leaders = new ArrayList<>(LEADERBOARD_SIZE);
+        for (int i = 0; i < ranked.size() && i < LEADERBOARD_SIZE; i++) {
+            Map.Entry<Integer, Integer> entry = ranked.get(i);
+            leaders.add(new LeaderboardPayload.Entry(names.get(entry.getKey()), entry.getValue()));
+        }
+        LeaderboardPayload payload = new LeaderboardPayload(leaders, guessed.size(), chatSeen);
+        return new Message(MessageType.LEADERBOARD, roomId, 0, "SERVER", payload.toJson());
+    }
+}
@@ -0,0 +1,103 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.common.Stroke;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+public class StrokeLog {
+    static final int COMPACT_THRESHOLD = 64;
+    static final int MAX_SNAPSHOT_POINTS = 20_000;
+
+    private final Deque<Stroke> snapshot = new ArrayDeque<>();
+    private final List<String> tail = new ArrayList<>();
+    private int snapshotPoints;
+    private String encodedSnapshot;
+
+    public synchronized void append(String payload) {
+        if (Stroke.isClear(payload)) {
+            clear();
+            return;
+        }
+        tail.add(payload);
+        if (tail.size() >= COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    // Хвост сливается в векторный снимок: соседние отрезки одного цвета склеиваются в ломаные
+    synchronized void compact() {
+        if (tail.isEmpty()) {
+            return;
+        }
+        for (String payload : tail) {
+            Stroke stroke = Stroke.parse(payload);
+            if (stroke == null) {
+                continue;
+            }
+            Stroke last = snapshot.peekLast();
+            if (last != null && stroke.continues(last)) {
+                snapshot.pollLast();
+                snapshotPoints -= last.pointCount();
+                stroke = last.append(stroke);
+            }
+            snapshot.addLast(stroke);
+            snapshotPoints += stroke.pointCount();
+        }
+        tail.clear();
+        trimToLimit();
+        encodedSnapshot = null;
+    }
+
+    private void trimToLimit() {
+        while (snapshotPoints > MAX_SNAPSHOT_POINTS) {
+            Stroke first = snapshot.pollFirst();
+            int excess = snapshotPoints - MAX_SNAPSHOT_POINTS;
+            if (first.pointCount() - excess >= 2) {
+                snapshot.addFirst(first.withoutHead(excess));
+                snapshotPoints -= excess;
+            } else {
+                snapshotPoints -= first.pointCount();
+            }
+        }
+    }
+
+    public synchronized String getSnapshotPayload() {
+        if (encodedSnapshot == null) {
+            StringBuilder sb = new StringBuilder(snapshotPoints * 8 + 2);
+            sb.append('[');
+            boolean first = true;
+            for (Stroke stroke : snapshot) {
+                if (!first) {
+                    sb.append(',');
+                }
+                stroke.appendJson(sb);
+                first = false;
+            }
+            sb.append(']');
+            encodedSnapshot = sb.toString();
+        }
+        return encodedSnapshot;
+    }
+
+    public synchronized List<String> getTail() {
+        return new ArrayList<>(tail);
+    }
+
+    public synchronized int getSnapshotPoints() {
+        return snapshotPoints;
+    }
+
+    public synchronized boolean isEmpty() {
+        return snapshot.isEmpty() && tail.isEmpty();
+    }
+
+    public synchronized void clear() {
+        snapshot.clear();
+        tail.clear();
+        snapshotPoints = 0;
+        encodedSnapshot = null;
+    }
+}
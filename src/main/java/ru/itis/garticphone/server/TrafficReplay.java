@@ -0,0 +1,174 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.JsonMessageConnection;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+import ru.itis.garticphone.common.TrafficCapture;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Прогон записанного трафика: в GameService того же процесса или в живой сервер через loopback
+public class TrafficReplay {
+
+    // malformed — кадры, которые не разбираются в Message; на них ClientHandler закрывает соединение
+    public record Result(int connections, int frames, long elapsedNanos, long delivered, long malformed) {
+        @Override
+        public String toString() {
+            return "connections=" + connections + " frames=" + frames
+                    + " elapsed=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms"
+                    + " delivered=" + delivered + " malformed=" + malformed;
+        }
+    }
+
+    // Игрок без сокета: исходящие проходят очередь и буфер повтора, но только подсчитываются
+    private static class SinkPlayer extends Player {
+        private final AtomicLong delivered;
+
+        SinkPlayer(int id, AtomicLong delivered) {
+            super(id, "Player" + id);
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void send(Message message) {
+            delivered.incrementAndGet();
+            super.send(message);
+        }
+    }
+
+    private final List<TrafficCapture.Frame> frames;
+    private final double speed;
+
+    // speed 1 — как в записи, 0 — без пауз
+    public TrafficReplay(List<TrafficCapture.Frame> frames, double speed) {
+        this.frames = frames;
+        this.speed = speed;
+    }
+
+    public Result replay(GameService service) throws InterruptedException {
+        AtomicLong delivered = new AtomicLong();
+        Map<Integer, Player> players = new HashMap<>();
+        long malformed = 0;
+        long started = System.nanoTime();
+        for (TrafficCapture.Frame frame : frames) {
+            pace(started, frame);
+            Player player = players.get(frame.connectionId());
+            if (player == null) {
+                if (frame.isClose()) {
+                    continue;
+                }
+                player = new SinkPlayer(frame.connectionId(), delivered);
+                players.put(frame.connectionId(), player);
+                service.onConnect(player);
+            }
+            if (frame.isClose()) {
+                service.onDisconnect(player);
+                continue;
+            }
+            Message message = Message.parse(frame.line());
+            if (message == null) {
+                // Дальше в записи идёт закрытие этого соединения
+                malformed++;
+                continue;
+            }
+            if (message.getType() == MessageType.RESUME) {
+                Player resumed = service.resume(player, message);
+                if (resumed != null) {
+                    players.put(frame.connectionId(), resumed);
+                }
+                continue;
+            }
+            service.routeMessage(player, message);
+        }
+        return new Result(players.size(), frames.size(), System.nanoTime() - started, delivered.get(), malformed);
+    }
+
+    public Result replay(String host, int port) throws IOException, InterruptedException {
+        AtomicLong delivered = new AtomicLong();
+        Map<Integer, JsonMessageConnection> connections = new HashMap<>();
+        long malformed = 0;
+        long started = System.nanoTime();
+        try {
+            for (TrafficCapture.Frame frame : frames) {
+                pace(started, frame);
+                JsonMessageConnection connection = connections.get(frame.connectionId());
+                if (frame.isClose()) {
+                    if (connection != null) {
+                        connection.close();
+                    }
+                    continue;
+                }
+                if (connection == null) {
+                    Socket socket = new Socket(host, port);
+                    connection = new JsonMessageConnection(socket);
+                    connections.put(frame.connectionId(), connection);
+                    drainReplies(socket, delivered);
+                }
+                if (Message.parse(frame.line()) == null) {
+                    malformed++;
+                }
+                connection.sendEncoded(frame.line() + "\n");
+            }
+        } finally {
+            for (JsonMessageConnection connection : connections.values()) {
+                connection.close();
+            }
+        }
+        return new Result(connections.size(), frames.size(), System.nanoTime() - started, delivered.get(), malformed);
+    }
+
+    // Ответы сервера читаются, чтобы не упереться в полный буфер сокета
+    private static void drainReplies(Socket socket, AtomicLong delivered) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Thread thread = new Thread(() -> {
+            try {
+                while (reader.readLine() != null) {
+                    delivered.incrementAndGet();
+                }
+            } catch (IOException ignored) {
+            }
+        }, "replay-drain");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void pace(long started, TrafficCapture.Frame frame) throws InterruptedException {
+        if (speed <= 0) {
+            return;
+        }
+        long wait = started + (long) (frame.nanos() / speed) - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    // Аргументы: <файл записи> [скорость] [host:port]; без адреса трафик идёт в GameService этого процесса
+    public static void main(String[] args) throws Exception {
+        List<TrafficCapture.Frame> frames = TrafficCapture.read(Path.of(args[0]));
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        TrafficReplay replay = new TrafficReplay(frames, speed);
+        Result result;
+        if (args.length > 2) {
+            int colon = args[2].lastIndexOf(':');
+            result = replay.replay(args[2].substring(0, colon), Integer.parseInt(args[2].substring(colon + 1)));
+        } else {
+            ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+            result = replay.replay(new GameService(scheduler));
+            scheduler.shutdownNow();
+        }
+        System.out.println(result);
+    }
+}
@@ -3,11 +3,11 @@ package ru.itis.garticphone;
 import ru.itis.garticphone.client.Player;
 import ru.itis.garticphone.common.Message;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TestPlayer extends Player {
-    private final List<Message> sent = new ArrayList<>();
+    private final List<Message> sent = new CopyOnWriteArrayList<>();
 
     public TestPlayer(int id, String name) {
         super(id, name);
@@ -18,6 +18,11 @@ public class TestPlayer extends Player {
         sent.add(message);
     }
 
+    @Override
+    public void sendUnsequenced(Message message) {
+        sent.add(message);
+    }
+
     public List<Message> getSent() {
         return sent;
     }
@@ -0,0 +1,110 @@
+package ru.itis.garticphone.client;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientConnectionTest {
+
+    private static void write(Socket socket, Message... messages) throws Exception {
+        OutputStream out = socket.getOutputStream();
+        for (Message message : messages) {
+            out.write((Message.toJson(message) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.flush();
+    }
+
+    @Test
+    void replayFramesShouldNotCountTowardsLastSeq() throws Exception {
+        try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            ClientConnection client = new ClientConnection("localhost", listener.getLocalPort());
+            try (Socket server = listener.accept()) {
+                BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+                client.startListening(inbox::add);
+                write(server,
+                        new Message(MessageType.CHAT, 1, 2, "P2", "hi"),
+                        new Message(MessageType.REPLAY, 1, 0, "SERVER", "{\"offset\":0}"),
+                        new Message(MessageType.REPLAY, 1, 0, "SERVER", "{\"offset\":5}"),
+                        new Message(MessageType.ROUND_UPDATE, 1, 0, "SERVER", "{}"));
+                for (int i = 0; i < 4; i++) {
+                    assertNotNull(inbox.poll(5, TimeUnit.SECONDS));
+                }
+                assertEquals(2, client.getReceivedFrames());
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    void spectatorBatchShouldNotCountTowardsLastSeq() throws Exception {
+        try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            ClientConnection client = new ClientConnection("localhost", listener.getLocalPort());
+            try (Socket server = listener.accept()) {
+                BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+                client.startListening(inbox::add);
+                write(server,
+                        new Message(MessageType.PLAYER_STATUS, 1, 0, "SERVER", "{}"),
+                        new Message(MessageType.SPECTATE, 0, 0, "SERVER", "{\"frames\":2}"),
+                        new Message(MessageType.DRAW, 1, 2, "P2", "{}"),
+                        new Message(MessageType.CHAT, 1, 2, "P2", "hi"),
+                        new Message(MessageType.PLAYER_STATUS, 1, 0, "SERVER", "{}"));
+                for (int i = 0; i < 4; i++) {
+                    assertNotNull(inbox.poll(5, TimeUnit.SECONDS));
+                }
+                assertEquals(2, client.getReceivedFrames());
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    void concurrentSendsShouldNotInterleaveOnWire() throws Exception {
+        try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            ClientConnection client = new ClientConnection("localhost", listener.getLocalPort());
+            try (Socket server = listener.accept()) {
+                String payload = "x".repeat(2000);
+                Thread[] senders = new Thread[4];
+                for (int t = 0; t < senders.length; t++) {
+                    senders[t] = new Thread(() -> {
+                        for (int i = 0; i < 200; i++) {
+                            try {
+                                client.send(new Message(MessageType.CHAT, 1, 1, "P1", payload));
+                            } catch (IOException e) {
+                                throw new AssertionError(e);
+                            }
+                        }
+                    });
+                    senders[t].start();
+                }
+                BufferedReader in = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+                server.setSoTimeout(5000);
+                for (int i = 0; i < senders.length * 200; i++) {
+                    Message message = Message.parse(in.readLine());
+                    assertNotNull(message);
+                    assertEquals(payload, message.getPayload());
+                }
+                for (Thread sender : senders) {
+                    sender.join(5000);
+                }
+            } finally {
+                client.close();
+            }
+        }
+    }
+}
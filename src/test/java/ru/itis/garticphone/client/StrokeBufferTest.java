@@ -0,0 +1,122 @@
+package ru.itis.garticphone.client;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.common.Stroke;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StrokeBufferTest {
+
+    @Test
+    void collinearPointsShouldCollapseToSegment() {
+        List<Stroke> sent = new ArrayList<>();
+        StrokeBuffer buffer = new StrokeBuffer(sent::add, 1);
+        buffer.begin(0, 0, "black", 2);
+        for (int x = 2; x <= 100; x += 2) {
+            buffer.add(x, 0);
+        }
+        buffer.end();
+
+        assertEquals(1, sent.size());
+        assertArrayEquals(new float[]{0, 0, 100, 0}, sent.get(0).getPoints());
+    }
+
+    @Test
+    void cornerShouldSurviveSimplification() {
+        float[] simplified = StrokeBuffer.simplify(new float[]{0, 0, 5, 0.2f, 10, 0, 10, 5, 10, 10}, 1);
+        assertArrayEquals(new float[]{0, 0, 10, 0, 10, 10}, simplified);
+    }
+
+    @Test
+    void chunksShouldContinueEachOtherForServerMerge() {
+        List<Stroke> sent = new ArrayList<>();
+        StrokeBuffer buffer = new StrokeBuffer(sent::add, 0.5);
+        buffer.begin(0, 0, "red", 3);
+        buffer.add(10, 0);
+        buffer.flush();
+        buffer.add(10, 10);
+        buffer.flush();
+        buffer.flush();
+        buffer.add(0, 10);
+        buffer.end();
+
+        assertEquals(3, sent.size());
+        assertTrue(sent.get(1).continues(sent.get(0)));
+        assertTrue(sent.get(2).continues(sent.get(1)));
+        Stroke merged = sent.get(0).append(sent.get(1)).append(sent.get(2));
+        assertArrayEquals(new float[]{0, 0, 10, 0, 10, 10, 0, 10}, merged.getPoints());
+    }
+
+    @Test
+    void tapShouldBeSentAsDot() {
+        List<Stroke> sent = new ArrayList<>();
+        StrokeBuffer buffer = new StrokeBuffer(sent::add, 1);
+        buffer.begin(4, 5, "black", 2);
+        buffer.flush();
+        assertTrue(sent.isEmpty());
+        buffer.end();
+
+        assertArrayEquals(new float[]{4, 5, 4, 5}, sent.get(0).getPoints());
+    }
+
+    @Test
+    void lastPointShouldBeKeptEvenWhenTooClose() {
+        List<Stroke> sent = new ArrayList<>();
+        StrokeBuffer buffer = new StrokeBuffer(sent::add, 2);
+        buffer.begin(0, 0, "black", 2);
+        buffer.add(0, 10);
+        buffer.add(0.5f, 10.5f);
+        buffer.end();
+
+        float[] points = sent.get(0).getPoints();
+        assertEquals(0.5f, points[points.length - 2]);
+        assertEquals(10.5f, points[points.length - 1]);
+    }
+
+    @Test
+    void scribbleShouldShrinkByOrderOfMagnitudeWithinTolerance() {
+        List<Stroke> sent = new ArrayList<>();
+        StrokeBuffer buffer = new StrokeBuffer(sent::add, 1);
+        // Окружность радиусом 100, точка на каждые 0.36° — как быстрый мазок мышью
+        buffer.begin(100, 0, "black", 2);
+        for (int i = 1; i <= 1000; i++) {
+            double angle = 2 * Math.PI * i / 1000;
+            buffer.add((float) (100 * Math.cos(angle)), (float) (100 * Math.sin(angle)));
+            if (i % 50 == 0) {
+                buffer.flush();
+            }
+        }
+        buffer.end();
+
+        assertTrue(buffer.getSentPoints() * 10 <= buffer.getInputPoints());
+        for (Stroke stroke : sent) {
+            float[] points = stroke.getPoints();
+            for (int i = 0; i + 3 < points.length; i += 2) {
+                double midX = (points[i] + points[i + 2]) / 2.0;
+                double midY = (points[i + 1] + points[i + 3]) / 2.0;
+                // Середина каждой хорды не дальше tolerance (с запасом на прореживание) от окружности
+                assertTrue(100 - Math.hypot(midX, midY) <= 2);
+            }
+        }
+    }
+
+    @Test
+    void tickerShouldFlushAtFrameCadence() throws Exception {
+        List<Stroke> sent = new CopyOnWriteArrayList<>();
+        StrokeBuffer buffer = new StrokeBuffer(sent::add, 1);
+        buffer.begin(0, 0, "black", 2);
+        buffer.add(50, 50);
+        buffer.start(10);
+        for (int i = 0; i < 100 && sent.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, sent.size());
+        buffer.add(100, 0);
+        buffer.close();
+        assertEquals(2, sent.size());
+    }
+}
@@ -0,0 +1,89 @@
+package ru.itis.garticphone.common;
+
+import com.google.gson.Gson;
+import ru.itis.garticphone.common.payload.CorrectPayload;
+import ru.itis.garticphone.common.payload.ErrorPayload;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+// Запуск: java -cp <test+main classpath> ru.itis.garticphone.common.MessageCodecBenchmark
+public class MessageCodecBenchmark {
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+    private static final Gson gson = new Gson();
+
+    private static int sink;
+
+    public static void main(String[] args) {
+        run("gson CORRECT", MessageCodecBenchmark::gsonCorrect);
+        run("codec CORRECT", MessageCodecBenchmark::codecCorrect);
+        run("gson ERROR", MessageCodecBenchmark::gsonError);
+        run("codec ERROR", MessageCodecBenchmark::codecError);
+        run("gson DRAW relay", MessageCodecBenchmark::gsonDraw);
+        run("codec DRAW relay", MessageCodecBenchmark::codecDraw);
+    }
+
+    private static void run(String name, Runnable body) {
+        for (int i = 0; i < WARMUP; i++) {
+            body.run();
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long bytesBefore = bean.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            body.run();
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = bean.getThreadAllocatedBytes(thread) - bytesBefore;
+        System.out.printf("%-18s %8.1f ns/msg %8d B/msg%n", name, (double) nanos / ITERATIONS, bytes / ITERATIONS);
+    }
+
+    private static void gsonCorrect() {
+        Map<String, Object> payloadData = new HashMap<>();
+        payloadData.put("correctPlayer", "Danya");
+        payloadData.put("word", "house");
+        payloadData.put("score", 1);
+        Message message = new Message(MessageType.CORRECT, 1, 2, "Danya", gson.toJson(payloadData));
+        sink += gson.toJson(message).length();
+    }
+
+    private static void codecCorrect() {
+        Message message = new Message(MessageType.CORRECT, 1, 2, "Danya",
+                new CorrectPayload("Danya", "house", 1).toJson());
+        sink += Message.toJson(message).length();
+    }
+
+    private static void gsonError() {
+        Map<String, String> errorData = new HashMap<>();
+        errorData.put("code", "404");
+        errorData.put("message", "Room not found");
+        Message message = new Message(MessageType.ERROR, 0, 0, "SERVER", gson.toJson(errorData));
+        sink += gson.toJson(message).length();
+    }
+
+    private static final Message PREBUILT_ERROR = new Message(MessageType.ERROR, 0, 0, "SERVER",
+            new ErrorPayload("404", "Room not found").toJson());
+
+    private static void codecError() {
+        sink += Message.toJson(PREBUILT_ERROR).length();
+    }
+
+    private static final String STROKE = "{\"x1\":10,\"y1\":20,\"x2\":14,\"y2\":25,\"color\":\"red\",\"size\":2}";
+
+    private static void gsonDraw() {
+        Message message = new Message(MessageType.DRAW, 1, 2, "Danya", STROKE);
+        for (int recipient = 0; recipient < 8; recipient++) {
+            sink += gson.toJson(message).length();
+        }
+    }
+
+    private static void codecDraw() {
+        Message message = new Message(MessageType.DRAW, 1, 2, "Danya", STROKE);
+        for (int recipient = 0; recipient < 8; recipient++) {
+            sink += Message.toJson(message).length();
+        }
+    }
+}
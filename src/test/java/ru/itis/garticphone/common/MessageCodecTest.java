@@ -0,0 +1,79 @@
+package ru.itis.garticphone.common;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.common.payload.CorrectPayload;
+import ru.itis.garticphone.common.payload.FinalChainPayload;
+import ru.itis.garticphone.common.payload.PlayerStatusPayload;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCodecTest {
+
+    @Test
+    void controlCharactersShouldSurviveRoundTrip() {
+        Message original = new Message(MessageType.CHAT, 1, 2, "Tab\tName", "line1\nline2\u0001");
+
+        Message parsed = Message.parse(Message.toJson(original));
+
+        assertEquals("Tab\tName", parsed.getPlayerName());
+        assertEquals("line1\nline2\u0001", parsed.getPayload());
+    }
+
+    @Test
+    void nullFieldsShouldBeOmitted() {
+        String json = Message.toJson(new Message(MessageType.PING, 0, 0, "SERVER", null));
+
+        assertEquals("{\"type\":\"PING\",\"roomId\":0,\"playerId\":0,\"playerName\":\"SERVER\"}", json);
+    }
+
+    @Test
+    void setterShouldInvalidateCachedEncoding() {
+        Message message = new Message(MessageType.CHAT, 1, 2, "P", "old");
+        Message.toJson(message);
+
+        message.setPayload("new");
+
+        assertEquals("new", Message.parse(Message.toJson(message)).getPayload());
+    }
+
+    @Test
+    void payloadRecordsShouldProduceValidJson() {
+        JsonObject correct = JsonParser.parseString(new CorrectPayload("Da\"nya", "кот", 1).toJson()).getAsJsonObject();
+        assertEquals("Da\"nya", correct.get("correctPlayer").getAsString());
+        assertEquals("кот", correct.get("word").getAsString());
+        assertEquals(1, correct.get("score").getAsInt());
+
+        JsonObject status = JsonParser.parseString(new PlayerStatusPayload().add("A", true).add("B", false).toJson())
+                .getAsJsonObject();
+        assertTrue(status.get("A").getAsBoolean());
+        assertFalse(status.get("B").getAsBoolean());
+
+        JsonObject chain = JsonParser.parseString(new FinalChainPayload(List.of(
+                new FinalChainPayload.Link("TEXT", "hello"),
+                new FinalChainPayload.Link("DRAW", "AAE="))).toJson()).getAsJsonObject();
+        assertEquals("FINAL_CHAIN", chain.get("contentType").getAsString());
+        assertEquals(2, chain.getAsJsonArray("chain").size());
+    }
+
+    @Test
+    void traceShouldSurviveRoundTripAndBeAbsentByDefault() {
+        Message plain = new Message(MessageType.DRAW, 1, 2, "A", "{}");
+        assertFalse(Message.toJson(plain).contains("trace"));
+
+        Trace trace = new Trace(5, 100);
+        trace.setReceived(200);
+        trace.setHandled(250);
+        trace.setWritten(300);
+        plain.setTrace(trace);
+
+        Trace parsed = Message.parse(Message.toJson(plain)).getTrace();
+        assertEquals(5, parsed.getId());
+        assertEquals(100, parsed.getSent());
+        assertEquals(250, parsed.getHandled());
+        assertEquals(300, parsed.getWritten());
+    }
+}
@@ -0,0 +1,112 @@
+package ru.itis.garticphone.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundQueueTest {
+
+    private static Message message(MessageType type, String payload) {
+        return new Message(type, 1, 1, "P", payload);
+    }
+
+    @Test
+    void controlMessagesShouldOvertakeQueuedStrokes() {
+        OutboundQueue queue = new OutboundQueue(100);
+        queue.offer(message(MessageType.FINAL_CHAIN, "chain"));
+        queue.offer(message(MessageType.DRAW, "s1"));
+        queue.offer(message(MessageType.DRAW, "s2"));
+        queue.offer(message(MessageType.CHAT, "hi"));
+        queue.offer(message(MessageType.ROUND_UPDATE, "end"));
+
+        List<MessageType> written = new ArrayList<>();
+        queue.drain(m -> written.add(m.getType()), () -> { });
+
+        assertEquals(List.of(MessageType.ROUND_UPDATE, MessageType.CHAT, MessageType.DRAW, MessageType.DRAW,
+                MessageType.FINAL_CHAIN), written);
+    }
+
+    @Test
+    void overflowWithoutClearShouldDropStrokesAndRequestResync() {
+        OutboundQueue queue = new OutboundQueue(3);
+        queue.offer(message(MessageType.CANVAS_SNAPSHOT, "[]"));
+        for (int i = 0; i < 5; i++) {
+            queue.offer(message(MessageType.DRAW, "s" + i));
+        }
+
+        List<String> written = new ArrayList<>();
+        queue.drain(m -> written.add(m.getPayload()), () -> { });
+
+        // Без очистки холста выбрасывать отдельные мазки нельзя: очередь сбрасывается целиком и просит снимок
+        assertEquals(List.of("s3", "s4"), written);
+        assertEquals(3, queue.getDroppedDraws());
+        assertEquals(1, queue.takeResync());
+        assertEquals(-1, queue.takeResync());
+    }
+
+    @Test
+    void strokesBeforeClearShouldBeDroppedWithoutResync() {
+        OutboundQueue queue = new OutboundQueue(3);
+        queue.offer(message(MessageType.DRAW, "s0"));
+        queue.offer(message(MessageType.DRAW, "s1"));
+        queue.offer(message(MessageType.DRAW, "{\"clear\":true}"));
+        queue.offer(message(MessageType.DRAW, "s2"));
+
+        List<String> written = new ArrayList<>();
+        queue.drain(m -> written.add(m.getPayload()), () -> { });
+
+        assertEquals(List.of("{\"clear\":true}", "s2"), written);
+        assertEquals(2, queue.getDroppedDraws());
+        assertEquals(-1, queue.takeResync());
+    }
+
+    @Test
+    void essentialBacklogShouldMarkQueueOverflowed() {
+        OutboundQueue queue = new OutboundQueue(2);
+        for (int i = 0; i < 9; i++) {
+            Message step = message(MessageType.DRAW, "chain" + i);
+            step.setEssential(true);
+            queue.offer(step);
+            assertEquals(i == 8, queue.isOverflowed());
+        }
+    }
+
+    @Test
+    void essentialStrokesShouldNotBeDropped() {
+        OutboundQueue queue = new OutboundQueue(2);
+        queue.offer(message(MessageType.DRAW, "s"));
+        for (int i = 0; i < 4; i++) {
+            Message step = message(MessageType.DRAW, "chain" + i);
+            step.setEssential(true);
+            queue.offer(step);
+        }
+
+        List<String> written = new ArrayList<>();
+        queue.drain(m -> written.add(m.getPayload()), () -> { });
+
+        assertEquals(List.of("chain0", "chain1", "chain2", "chain3"), written);
+        assertEquals(1, queue.getDroppedDraws());
+    }
+
+    @Test
+    void messagesOfferedDuringDrainShouldBeWrittenByCurrentDrainer() {
+        OutboundQueue queue = new OutboundQueue(100);
+        List<String> written = new ArrayList<>();
+        int[] flushes = {0};
+        queue.offer(message(MessageType.DRAW, "first"));
+        queue.drain(m -> {
+            written.add(m.getPayload());
+            if (written.size() == 1) {
+                queue.offer(message(MessageType.START, "start"));
+                queue.drain(x -> fail("nested drain must not write"), () -> { });
+            }
+        }, () -> flushes[0]++);
+
+        assertEquals(List.of("first", "start"), written);
+        assertEquals(1, flushes[0]);
+        assertTrue(queue.isEmpty());
+    }
+}
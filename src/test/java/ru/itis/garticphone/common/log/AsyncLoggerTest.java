@@ -0,0 +1,150 @@
+package ru.itis.garticphone.common.log;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.common.log.AsyncLogger.Level;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncLoggerTest {
+
+    private static String[] lines(ByteArrayOutputStream buffer) {
+        String text = buffer.toString(StandardCharsets.UTF_8).trim();
+        return text.isEmpty() ? new String[0] : text.split("\\R");
+    }
+
+    @Test
+    void shouldFormatSingleArgumentOnWriterThread() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        AsyncLogger logger = new AsyncLogger(new PrintStream(buffer, true, StandardCharsets.UTF_8), 16, Level.INFO, 0);
+        logger.log(Level.INFO, "Client disconnected: {}", 42);
+        logger.log(Level.WARN, "Room {} is full", "lobby");
+        logger.flush();
+        logger.close();
+
+        String[] lines = lines(buffer);
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].endsWith("INFO [" + Thread.currentThread().getName() + "] Client disconnected: 42"));
+        assertTrue(lines[1].endsWith("Room lobby is full"));
+    }
+
+    @Test
+    void shouldFormatSecondArgument() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        AsyncLogger logger = new AsyncLogger(new PrintStream(buffer, true, StandardCharsets.UTF_8), 16, Level.INFO, 0);
+        logger.log(Level.INFO, "Handed rooms over: {} room(s) to port {}", 3, 7001);
+        logger.log(Level.INFO, "Player {} left {}", "P1", null);
+        logger.flush();
+        logger.close();
+
+        String[] lines = lines(buffer);
+        assertTrue(lines[0].endsWith("Handed rooms over: 3 room(s) to port 7001"));
+        assertTrue(lines[1].endsWith("Player P1 left null"));
+    }
+
+    @Test
+    void shouldSkipMessagesBelowLevel() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        AsyncLogger logger = new AsyncLogger(new PrintStream(buffer, true, StandardCharsets.UTF_8), 16, Level.WARN, 0);
+        Object lazy = new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("Filtered message must not be formatted");
+            }
+        };
+        assertFalse(logger.isEnabled(Level.INFO));
+        logger.log(Level.DEBUG, "Debug {}", lazy);
+        logger.log(Level.INFO, "Info {}", lazy);
+        logger.log(Level.ERROR, "Failed", new IllegalStateException("boom"));
+        logger.flush();
+        logger.close();
+
+        String text = buffer.toString(StandardCharsets.UTF_8);
+        assertFalse(text.contains("Debug") || text.contains("Info"));
+        assertTrue(text.contains("ERROR"));
+        assertTrue(text.contains("IllegalStateException: boom"));
+    }
+
+    @Test
+    void shouldSuppressRepeatsOverLimit() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        AsyncLogger logger = new AsyncLogger(new PrintStream(buffer, true, StandardCharsets.UTF_8), 256, Level.INFO, 5);
+        for (int i = 0; i < 100; i++) {
+            logger.log(Level.WARN, "Ignoring message from disconnected player: {}", i);
+        }
+        logger.log(Level.INFO, "Other {}", 1);
+        logger.flush();
+        logger.close();
+
+        String[] lines = lines(buffer);
+        assertEquals(6, lines.length);
+        assertTrue(lines[4].endsWith("player: 4"));
+        assertTrue(lines[5].endsWith("Other 1"));
+    }
+
+    @Test
+    void shouldDropInsteadOfBlockingWhenRingIsFull() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Поток вывода застревает на первой записи, пока кольцо не переполнится
+        PrintStream blocking = new PrintStream(new ByteArrayOutputStream()) {
+            @Override
+            public void println(Object line) {
+                stalled.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        AsyncLogger logger = new AsyncLogger(blocking, 8, Level.INFO, 0);
+        logger.log(Level.INFO, "First {}", 0);
+        stalled.await();
+        for (int i = 0; i < 20; i++) {
+            logger.log(Level.INFO, "Burst {}", i);
+        }
+        // Ячейка первой записи занята, пока она печатается: в кольцо из 8 помещается ещё 7
+        assertEquals(13, logger.getDropped());
+        release.countDown();
+        logger.flush();
+        logger.close();
+    }
+
+    @Test
+    void concurrentProducersShouldNotLoseOrDuplicateRecords() throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        AsyncLogger logger = new AsyncLogger(new PrintStream(buffer, true, StandardCharsets.UTF_8), 1 << 16, Level.INFO, 0);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    logger.log(Level.INFO, "Record {}", thread * 5000L + i);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        logger.flush();
+        logger.close();
+
+        String[] lines = lines(buffer);
+        assertEquals(20_000, lines.length);
+        assertEquals(0, logger.getDropped());
+        boolean[] seen = new boolean[20_000];
+        for (String line : lines) {
+            int value = Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+            assertFalse(seen[value]);
+            seen[value] = true;
+        }
+    }
+}
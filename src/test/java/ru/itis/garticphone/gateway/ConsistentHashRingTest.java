@@ -0,0 +1,62 @@
+package ru.itis.garticphone.gateway;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    @Test
+    void roomsShouldSpreadAcrossBackends() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(128);
+        ring.add("a");
+        ring.add("b");
+        ring.add("c");
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int room = 0; room < 3000; room++) {
+            counts.merge(ring.nodeFor(room), 1, Integer::sum);
+        }
+
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(count > 600, "unbalanced: " + counts);
+        }
+    }
+
+    @Test
+    void addingBackendShouldMoveOnlyItsShare() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(128);
+        ring.add("a");
+        ring.add("b");
+        ring.add("c");
+        String[] before = new String[3000];
+        for (int room = 0; room < before.length; room++) {
+            before[room] = ring.nodeFor(room);
+        }
+
+        ring.add("d");
+        int moved = 0;
+        for (int room = 0; room < before.length; room++) {
+            String now = ring.nodeFor(room);
+            if (!now.equals(before[room])) {
+                assertEquals("d", now);
+                moved++;
+            }
+        }
+
+        assertTrue(moved > 400 && moved < 1200, "moved " + moved);
+    }
+
+    @Test
+    void emptyRingShouldReturnNull() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(16);
+        assertNull(ring.nodeFor(1));
+        ring.add("a");
+        ring.remove("a");
+        assertNull(ring.nodeFor(1));
+    }
+}
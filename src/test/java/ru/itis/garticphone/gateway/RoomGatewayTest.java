@@ -0,0 +1,180 @@
+package ru.itis.garticphone.gateway;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.common.JsonMessageConnection;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+import ru.itis.garticphone.server.GameServer;
+
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomGatewayTest {
+
+    private static Message receive(JsonMessageConnection connection, MessageType type) throws Exception {
+        Message message;
+        while ((message = connection.receive()) != null) {
+            if (message.getType() == type) {
+                return message;
+            }
+        }
+        return fail("Connection closed before " + type);
+    }
+
+    @Test
+    void playersOfOneRoomShouldMeetOnTheSameBackend() throws Exception {
+        GameServer first = new GameServer(0, 1, 128);
+        GameServer second = new GameServer(0, 1, 128);
+        first.open();
+        second.open();
+        RoomGateway gateway = new RoomGateway(0);
+        gateway.addBackend(new Backend("localhost", first.getLocalPort()));
+        gateway.addBackend(new Backend("localhost", second.getLocalPort()));
+        gateway.open();
+
+        JsonMessageConnection alice = new JsonMessageConnection(new Socket("localhost", gateway.getLocalPort()));
+        JsonMessageConnection bob = new JsonMessageConnection(new Socket("localhost", gateway.getLocalPort()));
+        try {
+            alice.send(new Message(MessageType.JOIN, 42, 0, "Alice", "GUESS_DRAWING"));
+            receive(alice, MessageType.PLAYER_STATUS);
+            Backend pinned = gateway.backendFor(42);
+
+            gateway.addBackend(new Backend("localhost", 1));
+            assertEquals(pinned, gateway.backendFor(42));
+
+            bob.send(new Message(MessageType.JOIN, 42, 0, "Bob", "GUESS_DRAWING"));
+            receive(bob, MessageType.PLAYER_STATUS);
+            alice.send(new Message(MessageType.CHAT, 42, 0, "Alice", "hi"));
+
+            Message chat = receive(bob, MessageType.CHAT);
+            assertEquals("hi", chat.getPayload());
+            assertEquals(2, first.getConnectedCount() + second.getConnectedCount());
+        } finally {
+            alice.close();
+            bob.close();
+            gateway.stop();
+            first.stop();
+            second.stop();
+        }
+    }
+
+    @Test
+    void resumeShouldReachSessionBackendAfterRingChanges() throws Exception {
+        GameServer server = new GameServer(0, 1, 128);
+        server.open();
+        RoomGateway gateway = new RoomGateway(0);
+        Backend live = new Backend("localhost", server.getLocalPort());
+        gateway.addBackend(live);
+        gateway.open();
+
+        try {
+            JsonMessageConnection alice = new JsonMessageConnection(new Socket("localhost", gateway.getLocalPort()));
+            alice.send(new Message(MessageType.JOIN, 42, 0, "Alice", "GUESS_DRAWING"));
+            String token = receive(alice, MessageType.SESSION).getPayload();
+            receive(alice, MessageType.PLAYER_STATUS);
+            alice.close();
+            // Шлюз отпускает комнату, только когда закрыл соединение с бэкендом
+            for (int i = 0; i < 250 && server.getConnectedCount() > 0; i++) {
+                Thread.sleep(20);
+            }
+            assertEquals(0, server.getConnectedCount());
+
+            // Номер комнаты теперь хешируется на несуществующий бэкенд
+            for (int port = 1; port < 64 && gateway.backendFor(42).equals(live); port++) {
+                gateway.addBackend(new Backend("localhost", port));
+            }
+            assertNotEquals(live, gateway.backendFor(42));
+
+            JsonMessageConnection back = new JsonMessageConnection(new Socket("localhost", gateway.getLocalPort()));
+            try {
+                back.send(new Message(MessageType.RESUME, 0, 0, null, "{\"token\":\"" + token + "\",\"lastSeq\":0}"));
+                // Первый SESSION — токен нового соединения, второй — восстановленной сессии
+                receive(back, MessageType.SESSION);
+                assertEquals(token, receive(back, MessageType.SESSION).getPayload());
+            } finally {
+                back.close();
+            }
+        } finally {
+            gateway.stop();
+            server.stop();
+        }
+    }
+
+    @Test
+    void laterJoinShouldPinNewRoomToConnectionBackend() throws Exception {
+        GameServer first = new GameServer(0, 1, 128);
+        GameServer second = new GameServer(0, 1, 128);
+        first.open();
+        second.open();
+        RoomGateway gateway = new RoomGateway(0);
+        gateway.addBackend(new Backend("localhost", first.getLocalPort()));
+        gateway.addBackend(new Backend("localhost", second.getLocalPort()));
+        gateway.open();
+
+        JsonMessageConnection alice = new JsonMessageConnection(new Socket("localhost", gateway.getLocalPort()));
+        try {
+            alice.send(new Message(MessageType.JOIN, 42, 0, "Alice", "GUESS_DRAWING"));
+            receive(alice, MessageType.PLAYER_STATUS);
+            Backend pinned = gateway.backendFor(42);
+            int next = 43;
+            while (gateway.backendFor(next).equals(pinned)) {
+                next++;
+            }
+
+            // Из лобби комнаты 42 то же соединение входит в другую комнату на том же бэкенде
+            alice.send(new Message(MessageType.JOIN, next, 0, "Alice", "GUESS_DRAWING"));
+            receive(alice, MessageType.PLAYER_STATUS);
+            assertEquals(pinned, gateway.backendFor(next));
+        } finally {
+            alice.close();
+            gateway.stop();
+            first.stop();
+            second.stop();
+        }
+    }
+
+    @Test
+    void laterJoinToRoomOnAnotherBackendShouldCloseConnection() throws Exception {
+        GameServer first = new GameServer(0, 1, 128);
+        GameServer second = new GameServer(0, 1, 128);
+        first.open();
+        second.open();
+        RoomGateway gateway = new RoomGateway(0);
+        gateway.addBackend(new Backend("localhost", first.getLocalPort()));
+        gateway.addBackend(new Backend("localhost", second.getLocalPort()));
+        gateway.open();
+
+        Socket aliceSocket = new Socket("localhost", gateway.getLocalPort());
+        aliceSocket.setSoTimeout(5000);
+        JsonMessageConnection alice = new JsonMessageConnection(aliceSocket);
+        JsonMessageConnection bob = new JsonMessageConnection(new Socket("localhost", gateway.getLocalPort()));
+        try {
+            alice.send(new Message(MessageType.JOIN, 42, 0, "Alice", "GUESS_DRAWING"));
+            receive(alice, MessageType.PLAYER_STATUS);
+            Backend pinned = gateway.backendFor(42);
+            int other = 43;
+            while (gateway.backendFor(other).equals(pinned)) {
+                other++;
+            }
+            bob.send(new Message(MessageType.JOIN, other, 0, "Bob", "GUESS_DRAWING"));
+            receive(bob, MessageType.PLAYER_STATUS);
+            Backend live = gateway.backendFor(other);
+
+            // На бэкенде Алисы JOIN создал бы вторую комнату с тем же номером
+            alice.send(new Message(MessageType.LEAVE, 42, 0, "Alice", ""));
+            alice.send(new Message(MessageType.JOIN, other, 0, "Alice", "GUESS_DRAWING"));
+            Message message;
+            while ((message = alice.receive()) != null) {
+                assertNotEquals(other, message.getRoomId());
+            }
+            assertEquals(live, gateway.backendFor(other));
+        } finally {
+            alice.close();
+            bob.close();
+            gateway.stop();
+            first.stop();
+            second.stop();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ru.itis.garticphone.jfr;
+
+import com.google.gson.JsonParser;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+import ru.itis.garticphone.server.GameService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameEventsTest {
+
+    @Test
+    void roomEventsShouldBeRecorded() throws Exception {
+        Path file = Files.createTempFile("game", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(MessageHandleEvent.class);
+            recording.enable(BroadcastEvent.class);
+            recording.enable(RoundEvent.class);
+            recording.enable(ChainRevealEvent.class);
+            recording.start();
+
+            GameService service = new GameService(Executors.newScheduledThreadPool(1));
+            TestPlayer host = new TestPlayer(1, "Host");
+            TestPlayer guest = new TestPlayer(2, "Guest");
+            service.routeMessage(host, new Message(MessageType.JOIN, 9, 1, "Host", "GUESS_DRAWING"));
+            service.routeMessage(guest, new Message(MessageType.JOIN, 9, 2, "Guest", "GUESS_DRAWING"));
+            service.routeMessage(host, new Message(MessageType.READY, 9, 1, "Host", ""));
+            service.routeMessage(guest, new Message(MessageType.READY, 9, 2, "Guest", ""));
+            service.routeMessage(host, new Message(MessageType.START, 9, 1, "Host", "60"));
+            String word = host.getSent().stream()
+                    .filter(message -> message.getType() == MessageType.ROUND_UPDATE)
+                    .map(message -> JsonParser.parseString(message.getPayload()).getAsJsonObject().get("word").getAsString())
+                    .findFirst().orElseThrow();
+            // Мазок угадывающего отклоняется до лимитера, но обработка всё равно попадает в запись
+            service.routeMessage(guest, new Message(MessageType.DRAW, 9, 2, "Guest", "{\"x1\":0,\"y1\":0,\"x2\":1,\"y2\":1}"));
+            service.routeMessage(guest, new Message(MessageType.GUESS, 9, 2, "Guest", word));
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("ru.itis.garticphone.MessageHandle")
+                && "START".equals(event.getString("messageType"))));
+        assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("ru.itis.garticphone.MessageHandle")
+                && "DRAW".equals(event.getString("messageType")) && event.getInt("playerId") == 2));
+        assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("ru.itis.garticphone.Broadcast")
+                && event.getInt("recipients") == 2 && event.getInt("bytes") > 0));
+        RecordedEvent round = events.stream()
+                .filter(event -> event.getEventType().getName().equals("ru.itis.garticphone.Round"))
+                .findFirst().orElseThrow();
+        assertEquals(9, round.getInt("roomId"));
+        assertTrue(round.getBoolean("guessed"));
+    }
+}
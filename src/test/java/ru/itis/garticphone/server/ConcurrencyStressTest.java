@@ -0,0 +1,173 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyStressTest {
+    private static final int THREADS = 8;
+
+    @SuppressWarnings("unchecked")
+    private static Map<Integer, GameState> rooms(GameService service) throws Exception {
+        Field field = GameService.class.getDeclaredField("rooms");
+        field.setAccessible(true);
+        return (Map<Integer, GameState>) field.get(service);
+    }
+
+    private static GameService newService() {
+        return new GameService(Executors.newScheduledThreadPool(1));
+    }
+
+    @Test
+    void playersShouldNotBeLostWhileRoomIsIterated() throws Exception {
+        GameState room = new GameState(1, GameMode.GUESS_DRAWING);
+        Stress.run(THREADS, 2000, (thread, i) -> {
+            if (thread == 0) {
+                for (Player player : room.getPlayers()) {
+                    player.getId();
+                }
+                return;
+            }
+            Player player = new Player(thread * 10_000 + i, "P");
+            room.addPlayer(player);
+            if (i % 2 == 0) {
+                room.removePlayer(player);
+            }
+        });
+        assertEquals((THREADS - 1) * 1000, room.getPlayers().size());
+    }
+
+    @Test
+    void readyTogglesShouldNotBeLost() throws Exception {
+        GameState room = new GameState(1, GameMode.GUESS_DRAWING);
+        Stress.run(THREADS, 1001, (thread, i) -> room.toggleReady(thread));
+        assertEquals(THREADS, room.getReadyPlayers().size());
+    }
+
+    @Test
+    void drawerRotationShouldSurviveConcurrentLeaves() throws Exception {
+        GameState room = new GameState(1, GameMode.GUESS_DRAWING);
+        Player[] players = new Player[1000];
+        for (int id = 0; id < players.length; id++) {
+            players[id] = new Player(id, "P" + id);
+            room.addPlayer(players[id]);
+        }
+        Stress.run(THREADS, 100, (thread, i) -> {
+            if (thread == 0) {
+                room.nextRound();
+            } else {
+                room.removePlayer(players[(thread - 1) * 100 + i]);
+            }
+        });
+        assertEquals(1000 - (THREADS - 1) * 100, room.getPlayers().size());
+        // Ушедший рисующий сразу уступает роль игроку из комнаты
+        assertTrue(room.getPlayers().stream().anyMatch(player -> room.isDrawer(player.getId())));
+        room.nextRound();
+        assertTrue(room.getPlayers().stream().anyMatch(player -> room.isDrawer(player.getId())));
+    }
+
+    @Test
+    void concurrentJoinsShouldLandInOneRoom() throws Exception {
+        GameService service = newService();
+        Stress.CountingPlayer[] players = new Stress.CountingPlayer[THREADS * 50];
+        Stress.run(THREADS, 50, (thread, i) -> {
+            Stress.CountingPlayer player = new Stress.CountingPlayer(thread * 50 + i + 1);
+            players[thread * 50 + i] = player;
+            service.onConnect(player);
+            service.routeMessage(player, new Message(MessageType.JOIN, 3, player.getId(), player.getName(), "GUESS_DRAWING"));
+        });
+
+        GameState room = rooms(service).get(3);
+        assertEquals(1, service.getRoomCount());
+        assertEquals(players.length, room.getPlayers().size());
+        for (Stress.CountingPlayer player : players) {
+            assertTrue(player.count(MessageType.PLAYER_STATUS) >= 1);
+        }
+    }
+
+    @Test
+    void concurrentJoinsShouldCreateEachRoomOnce() throws Exception {
+        GameService service = newService();
+        Set<Integer> hosts = ConcurrentHashMap.newKeySet();
+        Stress.run(THREADS, 200, (thread, i) -> {
+            Stress.CountingPlayer player = new Stress.CountingPlayer(thread * 1000 + i + 1);
+            service.routeMessage(player, new Message(MessageType.JOIN, i, player.getId(), player.getName(), "DEAF_PHONE"));
+        });
+
+        assertEquals(200, service.getRoomCount());
+        for (GameState room : rooms(service).values()) {
+            assertEquals(THREADS, room.getPlayers().size());
+            assertTrue(hosts.add(room.getRoomId()));
+            assertTrue(room.getPlayers().stream().anyMatch(player -> room.isHost(player.getId())));
+        }
+    }
+
+    @Test
+    void chatBroadcastShouldSurviveJoinLeaveChurn() throws Exception {
+        GameService service = newService();
+        Stress.CountingPlayer speaker = new Stress.CountingPlayer(1);
+        service.routeMessage(speaker, new Message(MessageType.JOIN, 4, 1, "Speaker", "DEAF_PHONE"));
+
+        Stress.run(THREADS, 300, (thread, i) -> {
+            if (thread == 0) {
+                service.routeMessage(speaker, new Message(MessageType.CHAT, 4, 1, "Speaker", "hi " + i));
+                return;
+            }
+            Stress.CountingPlayer guest = new Stress.CountingPlayer(thread * 1000 + i + 10);
+            service.routeMessage(guest, new Message(MessageType.JOIN, 4, guest.getId(), guest.getName(), "DEAF_PHONE"));
+            service.routeMessage(guest, new Message(MessageType.LEAVE, 4, guest.getId(), guest.getName(), ""));
+        });
+
+        assertEquals(1, rooms(service).get(4).getPlayers().size());
+        assertTrue(speaker.count(MessageType.CHAT) > 0);
+    }
+
+    @Test
+    void roundShouldEndOnceUnderConcurrentEndRound() throws Exception {
+        GameService service = newService();
+        Map<Integer, GameState> rooms = rooms(service);
+        Method endRound = GameService.class.getDeclaredMethod("endRound", int.class);
+        endRound.setAccessible(true);
+
+        for (int roomId = 1; roomId <= 50; roomId++) {
+            Stress.CountingPlayer host = new Stress.CountingPlayer(roomId * 10);
+            Stress.CountingPlayer guest = new Stress.CountingPlayer(roomId * 10 + 1);
+            service.routeMessage(host, new Message(MessageType.JOIN, roomId, host.getId(), "Host", "GUESS_DRAWING"));
+            service.routeMessage(guest, new Message(MessageType.JOIN, roomId, guest.getId(), "Guest", "GUESS_DRAWING"));
+            service.routeMessage(host, new Message(MessageType.READY, roomId, host.getId(), "Host", ""));
+            service.routeMessage(guest, new Message(MessageType.READY, roomId, guest.getId(), "Guest", ""));
+            service.routeMessage(host, new Message(MessageType.START, roomId, host.getId(), "Host", "60"));
+        }
+
+        Stress.run(THREADS, 50, (thread, i) -> endRound.invoke(service, i + 1));
+
+        for (GameState room : rooms.values()) {
+            assertEquals(RoomStatus.FINISHED, room.getStatus());
+            List<Player> players = room.getPlayers();
+            Stress.CountingPlayer guest = (Stress.CountingPlayer) players.get(1);
+            // Слово раскрывается гостю ровно один раз, сколько бы потоков ни завершали раунд
+            assertEquals(1, guest.count(MessageType.ROUND_UPDATE));
+        }
+    }
+
+    @Test
+    void playerIdsShouldBeUnique() throws Exception {
+        GameServer server = new GameServer(0, 1, 16);
+        Method next = GameServer.class.getDeclaredMethod("getNextPlayerId");
+        next.setAccessible(true);
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        Stress.run(THREADS, 5000, (thread, i) -> assertTrue(ids.add((Integer) next.invoke(server))));
+        assertEquals(THREADS * 5000, ids.size());
+    }
+}
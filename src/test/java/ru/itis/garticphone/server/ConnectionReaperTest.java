@@ -0,0 +1,74 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.JsonMessageConnection;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionReaperTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void silentConnectionShouldBePingedAndThenClosed() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        try (ServerSocket server = new ServerSocket(0);
+             Socket clientSocket = new Socket("localhost", server.getLocalPort());
+             Socket serverSide = server.accept()) {
+            JsonMessageConnection client = new JsonMessageConnection(clientSocket);
+            Player player = new Player(1, "P1", serverSide);
+            ConnectionReaper reaper = new ConnectionReaper(scheduler, 60_000, 2_000, 5_000);
+
+            long start = System.nanoTime();
+            player.touch(start);
+            reaper.register(player);
+
+            reaper.tick(start + SECOND);
+            reaper.tick(start + 2 * SECOND);
+            Message ping = client.receive();
+            assertEquals(MessageType.PING, ping.getType());
+
+            for (int second = 3; second <= 6; second++) {
+                reaper.tick(start + second * SECOND);
+            }
+            assertEquals(1, reaper.getReaped());
+            assertTrue(serverSide.isClosed());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    void activeConnectionShouldSurvive() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        try (ServerSocket server = new ServerSocket(0);
+             Socket clientSocket = new Socket("localhost", server.getLocalPort());
+             Socket serverSide = server.accept()) {
+            Player player = new Player(1, "P1", serverSide);
+            ConnectionReaper reaper = new ConnectionReaper(scheduler, 60_000, 2_000, 5_000);
+
+            long start = System.nanoTime();
+            player.touch(start);
+            reaper.register(player);
+            for (int second = 1; second <= 20; second++) {
+                player.touch(start + second * SECOND);
+                reaper.tick(start + second * SECOND);
+            }
+
+            assertEquals(0, reaper.getReaped());
+            assertFalse(serverSide.isClosed());
+            // Игрок не молчал дольше интервала, поэтому PING ему не отправлялся
+            assertEquals(0, clientSocket.getInputStream().available());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
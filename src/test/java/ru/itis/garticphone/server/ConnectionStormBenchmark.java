@@ -0,0 +1,68 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.common.JsonMessageConnection;
+import ru.itis.garticphone.common.Message;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Запуск: java -cp <test+main classpath> ru.itis.garticphone.server.ConnectionStormBenchmark [клиентов] [акцепторов...]
+public class ConnectionStormBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int[] acceptorCounts = {1, 4};
+        if (args.length > 1) {
+            acceptorCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                acceptorCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int acceptors : acceptorCounts) {
+            run(clients, acceptors);
+        }
+    }
+
+    private static void run(int clients, int acceptors) throws Exception {
+        GameServer server = new GameServer(0, acceptors, 4096);
+        server.open();
+        ExecutorService connectors = Executors.newFixedThreadPool(64);
+        List<Future<JsonMessageConnection>> futures = new ArrayList<>(clients);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < clients; i++) {
+                futures.add(connectors.submit(() -> {
+                    JsonMessageConnection connection =
+                            new JsonMessageConnection(new Socket("localhost", server.getLocalPort()));
+                    Message session = connection.receive();
+                    if (session == null) {
+                        throw new IllegalStateException("No SESSION frame");
+                    }
+                    return connection;
+                }));
+            }
+            int failed = 0;
+            List<JsonMessageConnection> connected = new ArrayList<>(clients);
+            for (Future<JsonMessageConnection> future : futures) {
+                try {
+                    connected.add(future.get());
+                } catch (Exception e) {
+                    failed++;
+                }
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("acceptors=%d clients=%d failed=%d time=%d ms (%.0f conn/s)%n",
+                    acceptors, clients, failed, millis, clients * 1000.0 / Math.max(1, millis));
+            for (JsonMessageConnection connection : connected) {
+                connection.close();
+            }
+        } finally {
+            connectors.shutdownNow();
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.client.PlayerState;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DrawerRoutingTest {
+
+    @SuppressWarnings("unchecked")
+    private static Map<Integer, GameState> rooms(GameService service) throws Exception {
+        Field field = GameService.class.getDeclaredField("rooms");
+        field.setAccessible(true);
+        return (Map<Integer, GameState>) field.get(service);
+    }
+
+    private static GameState roundInProgress(GameService service, TestPlayer... players) throws Exception {
+        GameState room = new GameState(1, GameMode.GUESS_DRAWING);
+        for (TestPlayer player : players) {
+            player.setState(PlayerState.IN_GAME);
+            room.addPlayer(player);
+        }
+        room.resetRound();
+        room.setStatus(RoomStatus.IN_ROUND);
+        rooms(service).put(1, room);
+        return room;
+    }
+
+    @Test
+    void strokesFromGuesserShouldBeRejected() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer drawer = new TestPlayer(1, "P1");
+        TestPlayer guesser = new TestPlayer(2, "P2");
+        GameState room = roundInProgress(service, drawer, guesser);
+
+        service.routeMessage(guesser, new Message(MessageType.DRAW, 1, 2, "P2", "{\"x1\":0,\"y1\":0,\"x2\":1,\"y2\":1}"));
+
+        assertTrue(drawer.getSent().isEmpty());
+        assertEquals(1, guesser.getSent().size());
+        assertEquals(MessageType.ERROR, guesser.getSent().get(0).getType());
+        assertTrue(room.getStrokeLog().isEmpty());
+    }
+
+    @Test
+    void strokesFromDrawerShouldBeRelayed() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer drawer = new TestPlayer(1, "P1");
+        TestPlayer guesser = new TestPlayer(2, "P2");
+        roundInProgress(service, drawer, guesser);
+
+        service.routeMessage(drawer, new Message(MessageType.DRAW, 1, 1, "P1", "{\"x1\":0,\"y1\":0,\"x2\":1,\"y2\":1}"));
+
+        assertEquals(MessageType.DRAW, guesser.getSent().get(0).getType());
+    }
+
+    @Test
+    void drawerShouldNotGuessAndWrongGuessShouldNotBeEchoed() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer drawer = new TestPlayer(1, "P1");
+        TestPlayer guesser = new TestPlayer(2, "P2");
+        roundInProgress(service, drawer, guesser);
+
+        service.routeMessage(drawer, new Message(MessageType.GUESS, 1, 1, "P1", "tree"));
+        assertEquals(MessageType.ERROR, drawer.getSent().get(0).getType());
+        assertTrue(guesser.getSent().isEmpty());
+
+        service.routeMessage(guesser, new Message(MessageType.GUESS, 1, 2, "P2", "tree"));
+        assertEquals(1, drawer.getSent().size());
+    }
+
+    @Test
+    void drawerLeavingShouldEndRoundAndPassRole() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer drawer = new TestPlayer(1, "P1");
+        TestPlayer guesser = new TestPlayer(2, "P2");
+        TestPlayer other = new TestPlayer(3, "P3");
+        GameState room = roundInProgress(service, drawer, guesser, other);
+        assertTrue(room.isDrawer(1));
+
+        service.routeMessage(drawer, new Message(MessageType.LEAVE, 1, 1, "P1", ""));
+
+        assertTrue(room.isDrawer(2));
+        for (int i = 0; i < 100 && room.getStatus() == RoomStatus.IN_ROUND; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(RoomStatus.FINISHED, room.getStatus());
+    }
+
+    @Test
+    void strokesOutsideRoundShouldBeRejected() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer drawer = new TestPlayer(1, "P1");
+        TestPlayer guesser = new TestPlayer(2, "P2");
+        GameState room = roundInProgress(service, drawer, guesser);
+        room.setStatus(RoomStatus.FINISHED);
+
+        service.routeMessage(guesser, new Message(MessageType.DRAW, 1, 2, "P2", "{\"x1\":0,\"y1\":0,\"x2\":1,\"y2\":1}"));
+        service.routeMessage(drawer, new Message(MessageType.DRAW, 1, 1, "P1", "{\"x1\":0,\"y1\":0,\"x2\":1,\"y2\":1}"));
+
+        assertEquals(MessageType.ERROR, guesser.getSent().get(0).getType());
+        assertEquals(MessageType.ERROR, drawer.getSent().get(0).getType());
+        assertTrue(room.getStrokeLog().isEmpty());
+    }
+
+    @Test
+    void nextStartShouldPassDrawerRole() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer host = new TestPlayer(1, "P1");
+        TestPlayer guest = new TestPlayer(2, "P2");
+        service.routeMessage(host, new Message(MessageType.JOIN, 1, 1, "P1", "GUESS_DRAWING"));
+        service.routeMessage(guest, new Message(MessageType.JOIN, 1, 2, "P2", "GUESS_DRAWING"));
+        service.routeMessage(host, new Message(MessageType.READY, 1, 1, "P1", ""));
+        service.routeMessage(guest, new Message(MessageType.READY, 1, 2, "P2", ""));
+        service.routeMessage(host, new Message(MessageType.START, 1, 1, "P1", "60"));
+        GameState room = rooms(service).get(1);
+        int firstDrawer = room.getDrawerId();
+
+        room.setStatus(RoomStatus.FINISHED);
+        service.routeMessage(host, new Message(MessageType.START, 1, 1, "P1", "60"));
+
+        assertEquals(RoomStatus.IN_ROUND, room.getStatus());
+        assertEquals(2, room.getRound());
+        assertNotEquals(firstDrawer, room.getDrawerId());
+    }
+}
@@ -0,0 +1,153 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DrawingRasterizerTest {
+
+    private static ChainStep draw(String payload) {
+        return new ChainStep(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<ChainStep> drawingOf(int chain) {
+        return List.of(draw("{\"points\":[0,0," + (chain + 10) + ",40,80,0]}"));
+    }
+
+    @Test
+    void strokesShouldBeDrawnIntoThumbnail() throws Exception {
+        byte[] png = DrawingRasterizer.rasterize(List.of(
+                "{\"points\":[0,0,100,100],\"color\":\"red\",\"size\":4}".getBytes(StandardCharsets.UTF_8)));
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(DrawingRasterizer.WIDTH, image.getWidth());
+        assertEquals(DrawingRasterizer.HEIGHT, image.getHeight());
+        // Диагональ квадратного рисунка проходит через центр миниатюры
+        int center = image.getRGB(DrawingRasterizer.WIDTH / 2, DrawingRasterizer.HEIGHT / 2) & 0xFFFFFF;
+        assertTrue((center >> 16) > 200 && (center & 0xFF) < 100);
+        assertEquals(0xFFFFFF, image.getRGB(1, 1) & 0xFFFFFF);
+    }
+
+    @Test
+    void clearedOrUnparsableDrawingShouldHaveNoThumbnail() {
+        assertNull(DrawingRasterizer.rasterize(List.of(
+                "{\"x1\":0,\"y1\":0,\"x2\":5,\"y2\":5}".getBytes(StandardCharsets.UTF_8),
+                "{\"clear\":true}".getBytes(StandardCharsets.UTF_8))));
+        assertNull(DrawingRasterizer.rasterize(List.of("not json".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void consecutiveDrawStepsShouldFormOneCachedDrawing() {
+        DrawingRasterizer rasterizer = new DrawingRasterizer(2, 1 << 20);
+        List<ChainStep> steps = List.of(
+                new ChainStep("cat"),
+                draw("{\"x1\":0,\"y1\":0,\"x2\":5,\"y2\":5}"),
+                draw("{\"x1\":5,\"y1\":5,\"x2\":9,\"y2\":0}"),
+                new ChainStep("fox"),
+                draw("{\"x1\":1,\"y1\":1,\"x2\":2,\"y2\":2}"));
+
+        Map<Integer, byte[]> images = rasterizer.renderChain(1, 7, steps, 5000);
+        assertEquals(Set.of(1, 4), images.keySet());
+        assertSame(images.get(1), rasterizer.getCached(DrawingRasterizer.Key.of(1, 7, 1, steps.subList(1, 3))));
+        assertSame(images.get(4), rasterizer.renderChain(1, 7, steps, 0).get(4));
+        rasterizer.close();
+    }
+
+    @Test
+    void cacheShouldStayWithinByteLimit() {
+        long limit = 3L * DrawingRasterizer.rasterize(List.of(
+                "{\"points\":[0,0,10,40,80,0]}".getBytes(StandardCharsets.UTF_8))).length;
+        DrawingRasterizer rasterizer = new DrawingRasterizer(1, limit);
+        for (int chain = 0; chain < 20; chain++) {
+            rasterizer.renderChain(1, chain, drawingOf(chain), 5000);
+            assertTrue(rasterizer.getCachedBytes() <= limit);
+        }
+        assertNotNull(rasterizer.getCached(DrawingRasterizer.Key.of(1, 19, 0, drawingOf(19))));
+        assertNull(rasterizer.getCached(DrawingRasterizer.Key.of(1, 0, 0, drawingOf(0))));
+        rasterizer.close();
+    }
+
+    @Test
+    void reusedRoomShouldNotGetStaleThumbnail() {
+        DrawingRasterizer rasterizer = new DrawingRasterizer(1, 1 << 20);
+        byte[] first = rasterizer.renderChain(1, 1, drawingOf(0), 5000).get(0);
+        byte[] second = rasterizer.renderChain(1, 1, drawingOf(50), 5000).get(0);
+        assertNotNull(first);
+        assertFalse(Arrays.equals(first, second));
+
+        rasterizer.evictRoom(1);
+        assertEquals(0, rasterizer.getCachedBytes());
+        rasterizer.close();
+    }
+
+    @Test
+    void finalChainShouldCarryImageInsteadOfStrokes() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        DrawingRasterizer rasterizer = new DrawingRasterizer(1, 1 << 20);
+        // Срок с запасом: раскрытие не должно уйти штрихами на медленной машине
+        service.setRasterizer(rasterizer, 30_000);
+        TestPlayer[] players = new TestPlayer[4];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new TestPlayer(i + 1, "P" + i);
+            service.routeMessage(players[i], new Message(MessageType.JOIN, 2, i + 1, "P" + i, "DEAF_PHONE"));
+        }
+        for (TestPlayer player : players) {
+            service.routeMessage(player, new Message(MessageType.READY, 2, player.getId(), player.getName(), ""));
+        }
+        service.routeMessage(players[0], new Message(MessageType.START, 2, 1, "P0", "60"));
+        service.routeMessage(players[0], new Message(MessageType.TEXT_SUBMIT, 2, 1, "P0", "cat"));
+        for (int i = 0; i < 10; i++) {
+            service.routeMessage(players[0], new Message(MessageType.DRAW, 2, 1, "P0",
+                    "{\"x1\":" + i + ",\"y1\":0,\"x2\":" + (i + 1) + ",\"y2\":3}"));
+        }
+        Method endRound = GameService.class.getDeclaredMethod("endRound", int.class);
+        endRound.setAccessible(true);
+        endRound.invoke(service, 2);
+
+        // Раскрытие уходит из пула растеризатора, когда миниатюра готова
+        Message chain = null;
+        for (int i = 0; i < 1500 && chain == null; i++) {
+            chain = players[1].getSent().stream()
+                    .filter(message -> message.getType() == MessageType.FINAL_CHAIN)
+                    .findFirst().orElse(null);
+            if (chain == null) {
+                Thread.sleep(20);
+            }
+        }
+        assertNotNull(chain);
+        assertTrue(chain.getPayload().contains("\"type\":\"IMAGE\""));
+        assertFalse(chain.getPayload().contains("\"type\":\"DRAW\""));
+        rasterizer.close();
+    }
+
+    @Test
+    void roundWithoutChainsShouldNotRevealAnything() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer[] players = new TestPlayer[4];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new TestPlayer(i + 1, "P" + i);
+            service.routeMessage(players[i], new Message(MessageType.JOIN, 3, i + 1, "P" + i, "DEAF_PHONE"));
+            service.routeMessage(players[i], new Message(MessageType.READY, 3, i + 1, "P" + i, ""));
+        }
+        service.routeMessage(players[0], new Message(MessageType.START, 3, 1, "P0", "60"));
+        Method endRound = GameService.class.getDeclaredMethod("endRound", int.class);
+        endRound.setAccessible(true);
+        endRound.invoke(service, 3);
+
+        assertTrue(players[1].getSent().stream().noneMatch(message -> message.getType() == MessageType.FINAL_CHAIN));
+    }
+}
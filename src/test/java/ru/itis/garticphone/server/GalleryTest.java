@@ -0,0 +1,259 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.client.ClientConnection;
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GalleryTest {
+
+    private static void playDeafPhone(GameService service, int roomId) throws Exception {
+        TestPlayer[] players = new TestPlayer[4];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new TestPlayer(roomId * 10 + i, "P" + i);
+            service.routeMessage(players[i], new Message(MessageType.JOIN, roomId, players[i].getId(), "P" + i, "DEAF_PHONE"));
+        }
+        for (TestPlayer player : players) {
+            service.routeMessage(player, new Message(MessageType.READY, roomId, player.getId(), player.getName(), ""));
+        }
+        service.routeMessage(players[0], new Message(MessageType.START, roomId, players[0].getId(), "P0", "60"));
+        service.routeMessage(players[0], new Message(MessageType.TEXT_SUBMIT, roomId, players[0].getId(), "P0", "кот"));
+        service.routeMessage(players[1], new Message(MessageType.TEXT_SUBMIT, roomId, players[1].getId(), "P1", "dog"));
+        Method endRound = GameService.class.getDeclaredMethod("endRound", int.class);
+        endRound.setAccessible(true);
+        endRound.invoke(service, roomId);
+    }
+
+    @Test
+    void revealedChainsShouldBeSentThroughSocketChannel() throws Exception {
+        ChainGallery gallery = new ChainGallery(Files.createTempDirectory("gallery"), 4);
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        service.setGallery(gallery);
+        playDeafPhone(service, 5);
+        gallery.flush();
+        assertNotNull(gallery.getLatest(5));
+
+        try (ServerSocketChannel listener = ServerSocketChannel.open()
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), listener.socket().getLocalPort());
+             Socket accepted = listener.accept().socket()) {
+            assertNotNull(accepted.getChannel());
+            Player viewer = new Player(99, "Viewer", accepted);
+            service.routeMessage(viewer, new Message(MessageType.GALLERY, 5, 99, "Viewer", ""));
+
+            client.setSoTimeout(5000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            Message header = Message.parse(in.readLine());
+            assertEquals(MessageType.GALLERY, header.getType());
+            assertTrue(header.getPayload().contains("\"chains\":2"));
+            String chains = Message.parse(in.readLine()).getPayload() + Message.parse(in.readLine()).getPayload();
+            assertTrue(chains.contains("кот"));
+            assertTrue(chains.contains("dog"));
+        }
+        gallery.close();
+    }
+
+    @Test
+    void plainSocketShouldFallBackToCopy() throws Exception {
+        ChainGallery gallery = new ChainGallery(Files.createTempDirectory("gallery"), 4);
+        gallery.store(3, () -> List.of(new Message(MessageType.FINAL_CHAIN, 3, 0, "SERVER", "{\"chain\":[]}")));
+        gallery.flush();
+
+        try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), listener.getLocalPort());
+             Socket accepted = listener.accept()) {
+            assertNull(client.getChannel());
+            gallery.send(gallery.getLatest(3), new Player(1, "Viewer", client));
+
+            accepted.setSoTimeout(5000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(accepted.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals(MessageType.GALLERY, Message.parse(in.readLine()).getType());
+            Message chain = Message.parse(in.readLine());
+            assertEquals(MessageType.GALLERY, chain.getType());
+            assertEquals("{\"chain\":[]}", chain.getPayload());
+        }
+        gallery.close();
+    }
+
+    @Test
+    void unknownOrForeignGalleryShouldBeRejected() throws Exception {
+        ChainGallery gallery = new ChainGallery(Files.createTempDirectory("gallery"), 4);
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        service.setGallery(gallery);
+        TestPlayer viewer = new TestPlayer(1, "Viewer");
+        TestPlayer other = new TestPlayer(2, "Other");
+
+        service.routeMessage(viewer, new Message(MessageType.GALLERY, 7, 1, "Viewer", ""));
+        service.routeMessage(other, new Message(MessageType.GALLERY, 7, 2, "Other", "{\"gallery\":\"../x.gallery\"}"));
+        assertTrue(viewer.getSent().get(0).getPayload().contains("404"));
+        assertTrue(other.getSent().get(0).getPayload().contains("404"));
+        gallery.close();
+    }
+
+    @Test
+    void evictedFileShouldStayOpenUntilTransferEnds() throws Exception {
+        ChainGallery gallery = new ChainGallery(Files.createTempDirectory("gallery"), 1);
+        gallery.store(1, List::of);
+        gallery.store(2, List::of);
+        gallery.flush();
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch evicted = new CountDownLatch(1);
+        boolean[] openDuringTransfer = new boolean[1];
+        // Первая передача стоит, пока вторая вытесняет её файл из LRU
+        Player slow = new Player(1, "Slow") {
+            @Override
+            public void sendFile(FileChannel file, long position, long count) {
+                started.countDown();
+                try {
+                    evicted.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                openDuringTransfer[0] = file.isOpen();
+            }
+        };
+        Path first = gallery.getLatest(1);
+        Thread transfer = new Thread(() -> {
+            try {
+                gallery.send(first, slow);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        transfer.start();
+        started.await(5, TimeUnit.SECONDS);
+
+        gallery.send(gallery.getLatest(2), new TestPlayer(2, "Fast"));
+        assertEquals(1, gallery.getOpenCount());
+        evicted.countDown();
+        transfer.join(5000);
+        assertTrue(openDuringTransfer[0]);
+        gallery.close();
+    }
+
+    @Test
+    void olderGalleriesShouldBeDeletedOverRetentionLimit() throws Exception {
+        Path dir = Files.createTempDirectory("gallery");
+        ChainGallery gallery = new ChainGallery(dir, 4, 2);
+        gallery.store(1, List::of);
+        gallery.flush();
+        Path oldest = gallery.getLatest(1);
+        gallery.store(2, List::of);
+        gallery.store(3, List::of);
+        gallery.flush();
+
+        assertNull(gallery.getLatest(1));
+        assertFalse(Files.exists(oldest));
+        assertNull(gallery.resolve(oldest.getFileName().toString()));
+        assertNotNull(gallery.getLatest(3));
+        gallery.close();
+
+        // Лимит действует и на файлы, оставшиеся от прошлого запуска
+        ChainGallery reopened = new ChainGallery(dir, 4, 1);
+        reopened.flush();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+        reopened.close();
+    }
+
+    @Test
+    void largeGalleryShouldArriveAsWholeLines() throws Exception {
+        ChainGallery gallery = new ChainGallery(Files.createTempDirectory("gallery"), 4);
+        String payload = "{\"chain\":\"" + "x".repeat(10_000) + "\"}";
+        gallery.store(4, () -> Collections.nCopies(30,
+                new Message(MessageType.FINAL_CHAIN, 4, 0, "SERVER", payload)));
+        gallery.flush();
+
+        try (ServerSocketChannel listener = ServerSocketChannel.open()
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), listener.socket().getLocalPort());
+             Socket accepted = listener.accept().socket()) {
+            Player viewer = new Player(1, "Viewer", accepted);
+            Thread transfer = new Thread(() -> {
+                try {
+                    gallery.send(gallery.getLatest(4), viewer);
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            });
+            transfer.start();
+
+            client.setSoTimeout(5000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals(MessageType.GALLERY, Message.parse(in.readLine()).getType());
+            for (int i = 0; i < 30; i++) {
+                assertEquals(payload, Message.parse(in.readLine()).getPayload());
+            }
+            transfer.join(5000);
+        }
+        gallery.close();
+    }
+
+    @Test
+    void resumeAfterDownloadShouldNotCountGalleryFrames() throws Exception {
+        ChainGallery gallery = new ChainGallery(Files.createTempDirectory("gallery"), 4);
+        gallery.store(6, () -> List.of(new Message(MessageType.FINAL_CHAIN, 6, 0, "SERVER", "{\"chain\":[]}")));
+        gallery.flush();
+        GameServer server = new GameServer(0, 1, 128);
+        server.setGallery(gallery);
+        server.open();
+
+        BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        ClientConnection client = new ClientConnection("localhost", server.getLocalPort());
+        try {
+            client.startListening(inbox::add);
+            client.send(new Message(MessageType.JOIN, 6, 0, "Alice", "DEAF_PHONE"));
+            await(inbox, MessageType.PLAYER_STATUS);
+            client.send(new Message(MessageType.GALLERY, 6, 0, "Alice", ""));
+            await(inbox, MessageType.GALLERY);
+            await(inbox, MessageType.GALLERY);
+
+            client.resume();
+            client.send(new Message(MessageType.CHAT, 6, 0, "Alice", "back"));
+            // Галерея шла вне нумерации: lastSeq совпадает с числом отправленных сервером кадров
+            assertEquals("back", await(inbox, MessageType.CHAT).getPayload());
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    private static Message await(BlockingQueue<Message> inbox, MessageType type) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            Message message = inbox.poll(100, TimeUnit.MILLISECONDS);
+            assertFalse(message != null && message.getType() == MessageType.ERROR, "Unexpected error");
+            if (message != null && message.getType() == type) {
+                return message;
+            }
+        }
+        return fail("No " + type + " received");
+    }
+}
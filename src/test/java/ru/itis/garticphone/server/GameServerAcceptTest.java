@@ -0,0 +1,40 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.common.JsonMessageConnection;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameServerAcceptTest {
+
+    @Test
+    void severalAcceptorsShouldServeClientsWithUniqueIds() throws Exception {
+        GameServer server = new GameServer(0, 3, 128);
+        server.open();
+        List<JsonMessageConnection> clients = new ArrayList<>();
+        try {
+            Set<Integer> ids = new HashSet<>();
+            for (int i = 0; i < 30; i++) {
+                JsonMessageConnection client = new JsonMessageConnection(new Socket("localhost", server.getLocalPort()));
+                clients.add(client);
+                Message session = client.receive();
+                assertEquals(MessageType.SESSION, session.getType());
+                ids.add(session.getPlayerId());
+            }
+            assertEquals(30, ids.size());
+        } finally {
+            for (JsonMessageConnection client : clients) {
+                client.close();
+            }
+            server.stop();
+        }
+    }
+}
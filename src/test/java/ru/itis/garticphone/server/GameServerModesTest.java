@@ -42,4 +42,24 @@ class GameServerModesTest {
         assertEquals(MessageType.ROUND_UPDATE, msg.getType());
         assertTrue(msg.getPayload().contains("кот"));
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void roundDeadlineShouldFollowInjectedWallClock() throws Exception {
+        long[] wall = {1_000_000};
+        GameService service = new GameService(Executors.newScheduledThreadPool(1), null, null,
+                System::nanoTime, () -> wall[0], new Random());
+        TestPlayer host = new TestPlayer(1, "Host");
+        TestPlayer guest = new TestPlayer(2, "Guest");
+        service.routeMessage(host, new Message(MessageType.JOIN, 4, 1, "Host", "GUESS_DRAWING"));
+        service.routeMessage(guest, new Message(MessageType.JOIN, 4, 2, "Guest", "GUESS_DRAWING"));
+        service.routeMessage(host, new Message(MessageType.READY, 4, 1, "Host", ""));
+        service.routeMessage(guest, new Message(MessageType.READY, 4, 2, "Guest", ""));
+        service.routeMessage(host, new Message(MessageType.START, 4, 1, "Host", "60"));
+
+        Field roomsField = GameService.class.getDeclaredField("rooms");
+        roomsField.setAccessible(true);
+        Map<Integer, GameState> rooms = (Map<Integer, GameState>) roomsField.get(service);
+        assertEquals(1_060_000, rooms.get(4).getRoundDeadline());
+    }
 }
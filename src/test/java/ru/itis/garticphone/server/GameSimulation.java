@@ -0,0 +1,164 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Прогон полных раундов в виртуальном времени в одном потоке.
+// Запуск: java -cp <test+main classpath> ru.itis.garticphone.server.GameSimulation [раундов] [seed]
+public class GameSimulation {
+    private static final long STEP_MILLIS = 100;
+    private static final int ROUND_SECONDS = 60;
+    private static final int STROKES_PER_ROUND = 20;
+    private static final String WORD_PREFIX = "{\"word\":\"";
+
+    public record Report(long rounds, long guessed, long inbound, long delivered,
+                         long virtualMillis, long tasks, long wallNanos) {
+        public double nanosPerRound() {
+            return rounds == 0 ? 0 : (double) wallNanos / rounds;
+        }
+
+        @Override
+        public String toString() {
+            return "rounds=" + rounds + " guessed=" + guessed + " inbound=" + inbound + " delivered=" + delivered
+                    + " virtual=" + TimeUnit.MILLISECONDS.toSeconds(virtualMillis) + "s tasks=" + tasks
+                    + " wall=" + TimeUnit.NANOSECONDS.toMillis(wallNanos) + "ms"
+                    + " perRound=" + (long) nanosPerRound() + "ns";
+        }
+    }
+
+    // Игрок без сокета: запоминает только секретное слово, которое сервер шлёт рисующему
+    private final class SimPlayer extends Player {
+        private String word;
+
+        SimPlayer(int id) {
+            super(id, "Sim" + id);
+        }
+
+        @Override
+        public void send(Message message) {
+            delivered++;
+            if (message.getType() == MessageType.ROUND_UPDATE && message.getPayload() != null
+                    && message.getPayload().startsWith(WORD_PREFIX)) {
+                word = message.getPayload().substring(WORD_PREFIX.length(), message.getPayload().length() - 2);
+            }
+            super.send(message);
+        }
+    }
+
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final Random random;
+    private final GameService service;
+    private int nextPlayerId = 1;
+    private long rounds;
+    private long guessed;
+    private long inbound;
+    private long delivered;
+
+    public GameSimulation(long seed) {
+        this.random = new Random(seed);
+        this.service = new GameService(scheduler, null, null, scheduler::nanoTime, new Random(seed));
+    }
+
+    public GameService getService() {
+        return service;
+    }
+
+    public VirtualScheduler getScheduler() {
+        return scheduler;
+    }
+
+    // Комната рассчитана на одну игру: каждый раунд — новая комната с новыми игроками, после раунда все выходят
+    public Report run(int roundCount) {
+        long wallStart = System.nanoTime();
+        for (int roomId = 1; roomId <= roundCount; roomId++) {
+            GameMode mode = roomId % 4 == 0 ? GameMode.DEAF_PHONE : GameMode.GUESS_DRAWING;
+            List<SimPlayer> players = fill(roomId, mode, 4 + random.nextInt(3));
+            if (mode == GameMode.DEAF_PHONE) {
+                playTextRound(roomId, players);
+            } else {
+                playDrawingRound(roomId, players);
+            }
+            rounds++;
+            for (SimPlayer player : players) {
+                send(player, MessageType.LEAVE, roomId, "");
+            }
+        }
+        scheduler.advance(2, TimeUnit.MINUTES);
+        return new Report(rounds, guessed, inbound, delivered,
+                TimeUnit.NANOSECONDS.toMillis(scheduler.nanoTime()), scheduler.getExecuted(),
+                System.nanoTime() - wallStart);
+    }
+
+    private List<SimPlayer> fill(int roomId, GameMode mode, int size) {
+        List<SimPlayer> players = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            SimPlayer player = new SimPlayer(nextPlayerId++);
+            service.onConnect(player);
+            players.add(player);
+            send(player, MessageType.JOIN, roomId, mode.name());
+        }
+        for (SimPlayer player : players) {
+            send(player, MessageType.READY, roomId, "");
+        }
+        return players;
+    }
+
+    private void playDrawingRound(int roomId, List<SimPlayer> players) {
+        for (SimPlayer player : players) {
+            player.word = null;
+        }
+        send(players.get(0), MessageType.START, roomId, Integer.toString(ROUND_SECONDS));
+        SimPlayer drawer = null;
+        for (SimPlayer player : players) {
+            if (player.word != null) {
+                drawer = player;
+            }
+        }
+        if (drawer == null) {
+            throw new IllegalStateException("No drawer in room " + roomId);
+        }
+        for (int i = 0; i < STROKES_PER_ROUND; i++) {
+            send(drawer, MessageType.DRAW, roomId,
+                    "{\"x\":" + random.nextInt(800) + ",\"y\":" + random.nextInt(600) + ",\"color\":\"#000000\",\"size\":3}");
+        }
+        for (SimPlayer player : players) {
+            if (player != drawer) {
+                send(player, MessageType.GUESS, roomId, "guess" + random.nextInt(1000));
+            }
+        }
+        // Часть раундов никто не угадывает, и их завершает таймер
+        if (random.nextInt(5) > 0) {
+            SimPlayer winner = players.get(players.indexOf(drawer) == 1 ? 2 : 1);
+            send(winner, MessageType.GUESS, roomId, drawer.word);
+            guessed++;
+        } else {
+            scheduler.advance(ROUND_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void playTextRound(int roomId, List<SimPlayer> players) {
+        send(players.get(0), MessageType.START, roomId, Integer.toString(ROUND_SECONDS));
+        for (SimPlayer player : players) {
+            send(player, MessageType.TEXT_SUBMIT, roomId, "phrase" + random.nextInt(1000));
+        }
+        scheduler.advance(ROUND_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void send(SimPlayer player, MessageType type, int roomId, String payload) {
+        inbound++;
+        service.routeMessage(player, new Message(type, roomId, player.getId(), player.getName(), payload));
+        scheduler.advance(STEP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        System.out.println(new GameSimulation(seed).run(rounds));
+    }
+}
@@ -0,0 +1,33 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameSimulationTest {
+
+    @Test
+    void thousandRoundsShouldRunInVirtualTime() {
+        GameSimulation simulation = new GameSimulation(7);
+        GameSimulation.Report report = simulation.run(1000);
+
+        assertEquals(1000, report.rounds());
+        assertTrue(report.guessed() > 0);
+        assertTrue(report.virtualMillis() > TimeUnit.HOURS.toMillis(1));
+        assertEquals(0, simulation.getService().getRoomCount());
+        // Таймеры завершённых раундов не копятся в планировщике
+        assertTrue(simulation.getScheduler().getPending() < 10);
+    }
+
+    @Test
+    void sameSeedShouldGiveSameRun() {
+        GameSimulation.Report first = new GameSimulation(3).run(100);
+        GameSimulation.Report second = new GameSimulation(3).run(100);
+
+        assertEquals(first.guessed(), second.guessed());
+        assertEquals(first.delivered(), second.delivered());
+        assertEquals(first.tasks(), second.tasks());
+    }
+}
@@ -114,6 +114,24 @@ class GameStateTest {
         assertEquals(1, gameState.getRound());
     }
 
+    @Test
+    void drawerShouldRotateAcrossRounds() {
+        GameState gameState = new GameState(1, GameMode.GUESS_DRAWING);
+        gameState.addPlayer(new Player(1, "P1"));
+        gameState.addPlayer(new Player(2, "P2"));
+        gameState.addPlayer(new Player(3, "P3"));
+
+        gameState.resetRound();
+        assertEquals(1, gameState.getDrawerId());
+        gameState.nextRound();
+        assertEquals(2, gameState.getDrawerId());
+        gameState.nextRound();
+        gameState.nextRound();
+        assertEquals(1, gameState.getDrawerId());
+        assertTrue(gameState.isDrawer(1));
+        assertFalse(gameState.isDrawer(2));
+    }
+
     @Test
     void timerShouldDecreaseButNotBelowZero() {
         GameState gameState = new GameState(1, GameMode.GUESS_DRAWING);
@@ -126,4 +144,19 @@ class GameStateTest {
         gameState.decrementTimer();
         assertEquals(0, gameState.getTimerSeconds());
     }
+
+    @Test
+    void testRemovePlayer_DrawerPassesRoleToNext() {
+        guessState.addPlayer(host);
+        guessState.addPlayer(player1);
+        guessState.addPlayer(player2);
+        guessState.resetRound();
+        assertTrue(guessState.isDrawer(1));
+
+        assertFalse(guessState.removePlayer(player2));
+        assertTrue(guessState.removePlayer(host));
+        assertTrue(guessState.isDrawer(2));
+        assertTrue(guessState.removePlayer(player1));
+        assertEquals(-1, guessState.getDrawerId());
+    }
 }
@@ -0,0 +1,77 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.client.ClientConnection;
+import ru.itis.garticphone.client.LatencyCollector;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyTraceTest {
+
+    private static Message await(BlockingQueue<Message> inbox, MessageType type) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            Message message = inbox.poll(100, TimeUnit.MILLISECONDS);
+            if (message != null && message.getType() == type) {
+                return message;
+            }
+        }
+        return fail("No " + type + " received");
+    }
+
+    @Test
+    void relayedStrokeShouldReturnTraceToSenderOnly() throws Exception {
+        GameServer server = new GameServer(0, 1, 128);
+        server.open();
+        BlockingQueue<Message> hostInbox = new LinkedBlockingQueue<>();
+        BlockingQueue<Message> guestInbox = new LinkedBlockingQueue<>();
+        ClientConnection host = new ClientConnection("localhost", server.getLocalPort());
+        ClientConnection guest = new ClientConnection("localhost", server.getLocalPort());
+        try {
+            LatencyCollector latency = new LatencyCollector(1);
+            host.setTracing(latency);
+            host.startListening(hostInbox::add);
+            guest.startListening(guestInbox::add);
+
+            host.send(new Message(MessageType.JOIN, 21, 0, "Host", "DEAF_PHONE"));
+            await(hostInbox, MessageType.PLAYER_STATUS);
+            guest.send(new Message(MessageType.JOIN, 21, 0, "Guest", "DEAF_PHONE"));
+            await(guestInbox, MessageType.PLAYER_STATUS);
+
+            host.send(new Message(MessageType.CHAT, 21, 0, "Host", "plain"));
+            Message own = await(hostInbox, MessageType.CHAT);
+            assertNotNull(own.getTrace());
+            assertTrue(own.getTrace().getWritten() >= own.getTrace().getHandled());
+            assertTrue(own.getTrace().getHandled() >= own.getTrace().getReceived());
+            assertNull(await(guestInbox, MessageType.CHAT).getTrace());
+
+            host.sendEchoed(new Message(MessageType.CHAT, 21, 0, "Host", "echoed"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (latency.getCount(LatencyCollector.Hop.TOTAL) < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, latency.getCount(LatencyCollector.Hop.TOTAL));
+            assertEquals(2, latency.getCount(LatencyCollector.Hop.NETWORK));
+            assertTrue(latency.percentileMicros(LatencyCollector.Hop.TOTAL, 99)
+                    >= latency.percentileMicros(LatencyCollector.Hop.HANDLER, 99));
+        } finally {
+            host.close();
+            guest.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    void zeroSampleRateShouldNotTrace() {
+        LatencyCollector latency = new LatencyCollector(0);
+        for (int i = 0; i < 100; i++) {
+            assertNull(latency.sample(System.nanoTime()));
+        }
+    }
+}
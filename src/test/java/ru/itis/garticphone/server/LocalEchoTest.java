@@ -0,0 +1,62 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalEchoTest {
+
+    private static Message last(TestPlayer player) {
+        return player.getSent().get(player.getSent().size() - 1);
+    }
+
+    @Test
+    void sequencedChatShouldSkipSenderAndAcknowledge() {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer p1 = new TestPlayer(1, "P1");
+        TestPlayer p2 = new TestPlayer(2, "P2");
+        service.routeMessage(p1, new Message(MessageType.JOIN, 1, 1, "P1", "GUESS_DRAWING"));
+        service.routeMessage(p2, new Message(MessageType.JOIN, 1, 2, "P2", "GUESS_DRAWING"));
+        int before = p1.getSent().size();
+
+        Message chat = new Message(MessageType.CHAT, 1, 1, "P1", "hello");
+        chat.setSeq(7L);
+        service.routeMessage(p1, chat);
+
+        assertEquals(before + 1, p1.getSent().size());
+        assertEquals(MessageType.ACK, last(p1).getType());
+        assertEquals(Long.valueOf(7), last(p1).getSeq());
+        assertEquals(MessageType.CHAT, last(p2).getType());
+        assertEquals("hello", last(p2).getPayload());
+    }
+
+    @Test
+    void unsequencedChatShouldStillEchoToSender() {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer p1 = new TestPlayer(1, "P1");
+        service.routeMessage(p1, new Message(MessageType.JOIN, 1, 1, "P1", "GUESS_DRAWING"));
+
+        service.routeMessage(p1, new Message(MessageType.CHAT, 1, 1, "P1", "hello"));
+
+        assertEquals(MessageType.CHAT, last(p1).getType());
+        assertNull(last(p1).getSeq());
+    }
+
+    @Test
+    void rejectedDrawShouldCarrySeq() {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer p1 = new TestPlayer(1, "P1");
+
+        Message draw = new Message(MessageType.DRAW, 1, 1, "P1", "{}");
+        draw.setSeq(3L);
+        service.routeMessage(p1, draw);
+
+        assertEquals(MessageType.ERROR, last(p1).getType());
+        assertEquals(Long.valueOf(3), last(p1).getSeq());
+    }
+}
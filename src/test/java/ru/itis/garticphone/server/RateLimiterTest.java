@@ -0,0 +1,156 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void bucketShouldRefillOverTime() {
+        TokenBucket bucket = new TokenBucket(2, 1, 0);
+
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(SECOND / 2));
+        assertTrue(bucket.tryAcquire(SECOND));
+    }
+
+    @Test
+    void chatFloodShouldBeThrottledAndCounted() {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer spammer = new TestPlayer(1, "Spammer");
+        TestPlayer listener = new TestPlayer(2, "Listener");
+        service.routeMessage(spammer, new Message(MessageType.JOIN, 1, 1, "Spammer", "GUESS_DRAWING"));
+        service.routeMessage(listener, new Message(MessageType.JOIN, 1, 2, "Listener", "GUESS_DRAWING"));
+        listener.getSent().clear();
+
+        for (int i = 0; i < 100; i++) {
+            service.routeMessage(spammer, new Message(MessageType.CHAT, 1, 1, "Spammer", "spam" + i));
+        }
+
+        long chats = listener.getSent().stream().filter(m -> m.getType() == MessageType.CHAT).count();
+        assertTrue(chats < 20, "received " + chats);
+        assertTrue(service.getRateLimiter().getThrottled(MessageType.CHAT) > 80);
+    }
+
+    @Test
+    void coalescedMessageShouldBeDeliveredOnceTokensReturn() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.setPolicy(MessageType.CHAT, new RateLimitPolicy(1, 1, RateLimitPolicy.Action.COALESCE));
+        TestPlayer player = new TestPlayer(1, "P1");
+
+        assertNull(limiter.check(player, null, new Message(MessageType.CHAT, 1, 1, "P1", "a"), 0));
+        assertEquals(RateLimitPolicy.Action.COALESCE,
+                limiter.check(player, null, new Message(MessageType.CHAT, 1, 1, "P1", "b"), 0));
+        assertEquals(RateLimitPolicy.Action.COALESCE,
+                limiter.check(player, null, new Message(MessageType.CHAT, 1, 1, "P1", "c"), 0));
+
+        assertNull(limiter.pollPending(player, SECOND / 2));
+        Message pending = limiter.pollPending(player, SECOND);
+        assertNotNull(pending);
+        assertEquals("c", pending.getPayload());
+        assertNull(limiter.pollPending(player, 2 * SECOND));
+    }
+
+    @Test
+    void roomAggregateShouldLimitAllPlayers() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.setRoomPolicy(new RateLimitPolicy(3, 1, RateLimitPolicy.Action.DROP));
+        GameState room = new GameState(1, GameMode.GUESS_DRAWING);
+
+        int allowed = 0;
+        for (int id = 1; id <= 6; id++) {
+            TestPlayer player = new TestPlayer(id, "P" + id);
+            if (limiter.check(player, room, new Message(MessageType.GUESS, 1, id, "P" + id, "x"), 0) == null) {
+                allowed++;
+            }
+        }
+        assertEquals(3, allowed);
+        assertEquals(3, limiter.getRoomThrottled());
+    }
+
+    @Test
+    void roomRejectionShouldRefundPlayerToken() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.setPolicy(MessageType.GUESS, new RateLimitPolicy(2, 1, RateLimitPolicy.Action.DROP));
+        limiter.setRoomPolicy(new RateLimitPolicy(1, 1, RateLimitPolicy.Action.DROP));
+        GameState room = new GameState(1, GameMode.GUESS_DRAWING);
+        TestPlayer player = new TestPlayer(1, "P1");
+
+        assertNull(limiter.check(player, room, new Message(MessageType.GUESS, 1, 1, "P1", "a"), 0));
+        assertNotNull(limiter.check(player, room, new Message(MessageType.GUESS, 1, 1, "P1", "b"), 0));
+        // Комната снова пропускает, а личная корзина не потеряла токен на отклонённом сообщении
+        assertNull(limiter.check(player, room, new Message(MessageType.GUESS, 1, 1, "P1", "c"), SECOND));
+    }
+
+    @Test
+    void coalescedChatShouldBeFlushedWithoutFurtherMessages() {
+        long[] now = {0};
+        GameService service = new GameService(Executors.newScheduledThreadPool(1), null, null, () -> now[0], new Random());
+        TestPlayer spammer = new TestPlayer(1, "Spammer");
+        TestPlayer listener = new TestPlayer(2, "Listener");
+        service.routeMessage(spammer, new Message(MessageType.JOIN, 1, 1, "Spammer", "GUESS_DRAWING"));
+        service.routeMessage(listener, new Message(MessageType.JOIN, 1, 2, "Listener", "GUESS_DRAWING"));
+        for (int i = 0; i < 20; i++) {
+            service.routeMessage(spammer, new Message(MessageType.CHAT, 1, 1, "Spammer", "spam" + i));
+        }
+        listener.getSent().clear();
+
+        now[0] = SECOND;
+        service.flushPending();
+        assertEquals(1, listener.getSent().size());
+        assertEquals("spam19", listener.getSent().get(0).getPayload());
+    }
+
+    @Test
+    void echoedChatFloodShouldBeAnsweredForEverySeq() {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer spammer = new TestPlayer(1, "Spammer");
+        service.routeMessage(spammer, new Message(MessageType.JOIN, 1, 1, "Spammer", "GUESS_DRAWING"));
+        spammer.getSent().clear();
+
+        for (long seq = 1; seq <= 20; seq++) {
+            Message chat = new Message(MessageType.CHAT, 1, 1, "Spammer", "spam" + seq);
+            chat.setSeq(seq);
+            service.routeMessage(spammer, chat);
+        }
+
+        // Каждый seq получает ACK или ERROR 429, ни одно эхо не остаётся висеть
+        for (long seq = 1; seq <= 20; seq++) {
+            long expected = seq;
+            assertEquals(1, spammer.getSent().stream()
+                    .filter(m -> (m.getType() == MessageType.ACK || m.getType() == MessageType.ERROR)
+                            && m.getSeq() != null && m.getSeq() == expected)
+                    .count());
+        }
+    }
+
+    @Test
+    void outsiderShouldNotDrainForeignRoomBudget() {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        service.getRateLimiter().setRoomPolicy(new RateLimitPolicy(3, 0.001, RateLimitPolicy.Action.DROP));
+        TestPlayer member = new TestPlayer(1, "Member");
+        TestPlayer outsider = new TestPlayer(2, "Outsider");
+        service.routeMessage(member, new Message(MessageType.JOIN, 1, 1, "Member", "GUESS_DRAWING"));
+        service.routeMessage(outsider, new Message(MessageType.JOIN, 2, 2, "Outsider", "GUESS_DRAWING"));
+
+        for (int i = 0; i < 5; i++) {
+            service.routeMessage(outsider, new Message(MessageType.CHAT, 1, 2, "Outsider", "x" + i));
+        }
+        member.getSent().clear();
+        service.routeMessage(member, new Message(MessageType.CHAT, 1, 1, "Member", "still here"));
+
+        assertEquals(0, service.getRateLimiter().getRoomThrottled());
+        assertEquals("still here", member.getSent().get(0).getPayload());
+    }
+}
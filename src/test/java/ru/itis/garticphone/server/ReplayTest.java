@@ -0,0 +1,185 @@
+package ru.itis.garticphone.server;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.client.PlayerState;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayTest {
+
+    @Test
+    void roundShouldBeRecordedAndReadBack() throws Exception {
+        Path dir = Files.createTempDirectory("replays");
+        ReplayRecorder recorder = new ReplayRecorder(dir);
+        GameService service = new GameService(Executors.newScheduledThreadPool(1), null, recorder);
+        TestPlayer host = new TestPlayer(1, "Host");
+        TestPlayer guest = new TestPlayer(2, "Guest");
+
+        service.routeMessage(host, new Message(MessageType.JOIN, 6, 1, "Host", "GUESS_DRAWING"));
+        service.routeMessage(guest, new Message(MessageType.JOIN, 6, 2, "Guest", "GUESS_DRAWING"));
+        service.routeMessage(host, new Message(MessageType.READY, 6, 1, "Host", ""));
+        service.routeMessage(guest, new Message(MessageType.READY, 6, 2, "Guest", ""));
+        service.routeMessage(host, new Message(MessageType.START, 6, 1, "Host", "60"));
+        service.routeMessage(host, new Message(MessageType.DRAW, 6, 1, "Host", "{\"x\":1,\"y\":2}"));
+        service.routeMessage(guest, new Message(MessageType.GUESS, 6, 2, "Guest", "wrong"));
+        recorder.flush();
+        // Идущий раунд недоступен для просмотра
+        assertNull(recorder.getLatest(6));
+
+        Method endRound = GameService.class.getDeclaredMethod("endRound", int.class);
+        endRound.setAccessible(true);
+        endRound.invoke(service, 6);
+        recorder.flush();
+        Path path = recorder.getLatest(6);
+        assertNotNull(path);
+        List<MessageType> types = new ArrayList<>();
+        try (ReplayReader reader = new ReplayReader(path)) {
+            assertEquals(6, reader.getRoomId());
+            ReplayReader.Entry entry;
+            while ((entry = reader.next()) != null) {
+                types.add(entry.message().getType());
+            }
+        }
+        assertEquals(MessageType.START, types.get(0));
+        assertTrue(types.contains(MessageType.DRAW));
+        assertTrue(types.contains(MessageType.GUESS));
+        recorder.close();
+    }
+
+    @Test
+    void seekShouldUseFooterIndex() throws Exception {
+        Path dir = Files.createTempDirectory("replays");
+        ReplayRecorder recorder = new ReplayRecorder(dir);
+        recorder.begin(3);
+        recorder.record(3, new Message(MessageType.CHAT, 3, 1, "A", "early"));
+        Thread.sleep(1100);
+        recorder.record(3, new Message(MessageType.CHAT, 3, 1, "A", "late"));
+        recorder.end(3);
+        recorder.flush();
+
+        try (ReplayReader reader = new ReplayReader(recorder.getLatest(3))) {
+            assertEquals(2, reader.getIndexSize());
+            reader.seek(1000);
+            ReplayReader.Entry entry = reader.next();
+            assertEquals("late", entry.message().getPayload());
+            assertTrue(entry.offsetMillis() >= 1000);
+            assertNull(reader.next());
+        }
+        recorder.close();
+    }
+
+    @Test
+    void replayRequestShouldStreamLatestRound() throws Exception {
+        Path dir = Files.createTempDirectory("replays");
+        ReplayRecorder recorder = new ReplayRecorder(dir);
+        GameService service = new GameService(Executors.newScheduledThreadPool(1), null, recorder);
+        TestPlayer viewer = new TestPlayer(9, "Viewer");
+
+        service.routeMessage(viewer, new Message(MessageType.REPLAY, 8, 9, "Viewer", "{\"speed\":0}"));
+        assertEquals(MessageType.ERROR, viewer.getSent().get(0).getType());
+        assertTrue(viewer.getSent().get(0).getPayload().contains("404"));
+
+        recorder.begin(8);
+        recorder.record(8, new Message(MessageType.CHAT, 8, 1, "A", "hello"));
+        recorder.end(8);
+        recorder.flush();
+        viewer.getSent().clear();
+
+        service.routeMessage(viewer, new Message(MessageType.REPLAY, 8, 9, "Viewer", "{\"speed\":0}"));
+        for (int i = 0; i < 100 && viewer.getSent().isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        Message frame = viewer.getSent().get(0);
+        assertEquals(MessageType.REPLAY, frame.getType());
+        assertNull(frame.getSeq());
+        Message original = Message.parse(JsonParser.parseString(frame.getPayload())
+                .getAsJsonObject().get("frame").toString());
+        assertEquals(MessageType.CHAT, original.getType());
+        assertEquals("hello", original.getPayload());
+
+        TestPlayer other = new TestPlayer(10, "Other");
+        service.routeMessage(other, new Message(MessageType.REPLAY, 8, 10, "Other", "{\"replay\":\"../x.replay\"}"));
+        assertEquals(MessageType.ERROR, other.getSent().get(0).getType());
+        recorder.close();
+    }
+
+    @Test
+    void replayWithSpeedOutOfRangeShouldBeRejected() throws Exception {
+        Path dir = Files.createTempDirectory("replays");
+        ReplayRecorder recorder = new ReplayRecorder(dir);
+        recorder.begin(8);
+        recorder.record(8, new Message(MessageType.CHAT, 8, 1, "A", "hello"));
+        recorder.end(8);
+        recorder.flush();
+        GameService service = new GameService(Executors.newScheduledThreadPool(1), null, recorder);
+
+        for (String payload : new String[]{"{\"speed\":1e-9}", "{\"speed\":-1}", "{\"speed\":1000}",
+                "{\"speed\":\"NaN\"}", "{\"from\":-5}"}) {
+            TestPlayer viewer = new TestPlayer(9, "Viewer");
+            service.routeMessage(viewer, new Message(MessageType.REPLAY, 8, 9, "Viewer", payload));
+            assertEquals(1, viewer.getSent().size(), payload);
+            assertEquals(MessageType.ERROR, viewer.getSent().get(0).getType(), payload);
+            assertTrue(viewer.getSent().get(0).getPayload().contains("400"), payload);
+        }
+        recorder.close();
+    }
+
+    @Test
+    void runningRoundShouldNotBeServedByName() throws Exception {
+        Path dir = Files.createTempDirectory("replays");
+        ReplayRecorder recorder = new ReplayRecorder(dir);
+        recorder.begin(4);
+        recorder.record(4, new Message(MessageType.GUESS, 4, 1, "A", "secret"));
+        recorder.flush();
+
+        try (var files = Files.list(dir)) {
+            String name = files.findFirst().orElseThrow().getFileName().toString();
+            assertNull(recorder.resolve(name));
+            recorder.end(4);
+            recorder.flush();
+            assertNotNull(recorder.resolve(name));
+        }
+        recorder.close();
+    }
+
+    @Test
+    void replayShouldStopWhenViewerDisconnects() throws Exception {
+        Path dir = Files.createTempDirectory("replays");
+        ReplayRecorder recorder = new ReplayRecorder(dir);
+        GameService service = new GameService(Executors.newScheduledThreadPool(1), null, recorder);
+        recorder.begin(5);
+        for (int i = 0; i < 3; i++) {
+            recorder.record(5, new Message(MessageType.CHAT, 5, 1, "A", "m" + i));
+        }
+        recorder.end(5);
+        recorder.flush();
+
+        CountDownLatch done = new CountDownLatch(1);
+        TestPlayer viewer = new TestPlayer(9, "Viewer") {
+            @Override
+            public void sendUnsequenced(Message message) {
+                super.sendUnsequenced(message);
+                setState(PlayerState.DISCONNECTED);
+                done.countDown();
+            }
+        };
+        service.routeMessage(viewer, new Message(MessageType.REPLAY, 5, 9, "Viewer", "{\"speed\":0}"));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(1, viewer.getSent().size());
+        recorder.close();
+    }
+}
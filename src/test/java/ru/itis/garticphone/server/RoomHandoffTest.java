@@ -0,0 +1,124 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.client.ClientConnection;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomHandoffTest {
+
+    private static Message await(BlockingQueue<Message> inbox, MessageType type) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            Message message = inbox.poll(100, TimeUnit.MILLISECONDS);
+            if (message != null && message.getType() == type) {
+                return message;
+            }
+        }
+        return fail("No " + type + " received");
+    }
+
+    @Test
+    void clientShouldFollowRoomToNewProcess() throws Exception {
+        GameServer oldServer = new GameServer(0, 1, 128);
+        GameServer newServer = new GameServer(0, 1, 128);
+        oldServer.open();
+        newServer.open();
+        ServerSocket handoff = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        RoomHandoff.listen(oldServer, handoff);
+
+        BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        ClientConnection client = new ClientConnection("localhost", oldServer.getLocalPort());
+        try {
+            client.startListening(inbox::add);
+            await(inbox, MessageType.SESSION);
+            client.send(new Message(MessageType.JOIN, 8, 0, "Alice", "DEAF_PHONE"));
+            await(inbox, MessageType.PLAYER_STATUS);
+
+            assertEquals(1, RoomHandoff.takeOver(newServer, handoff.getLocalPort()));
+
+            Message status = await(inbox, MessageType.PLAYER_STATUS);
+            assertEquals(8, status.getRoomId());
+            assertTrue(status.getPayload().contains("Alice"));
+            assertEquals(1, newServer.getConnectedCount());
+        } finally {
+            client.close();
+            oldServer.stop();
+            newServer.stop();
+        }
+    }
+
+    @Test
+    void abortedHandoffShouldReopenListeners() throws Exception {
+        GameServer oldServer = new GameServer(0, 1, 128);
+        oldServer.open();
+        int port = oldServer.getLocalPort();
+        ServerSocket handoff = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread listener = RoomHandoff.listen(oldServer, handoff);
+
+        // Новый процесс получает снимок и пропадает, не ответив OK
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), handoff.getLocalPort())) {
+            socket.getOutputStream().write("1\n".getBytes(StandardCharsets.UTF_8));
+            new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+        }
+        listener.join(5000);
+
+        BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        ClientConnection client = new ClientConnection("localhost", port);
+        try {
+            client.startListening(inbox::add);
+            await(inbox, MessageType.SESSION);
+            assertEquals(port, oldServer.getLocalPort());
+        } finally {
+            client.close();
+            oldServer.stop();
+        }
+    }
+
+    @Test
+    void startedServerShouldSurviveAbortedHandoff() throws Exception {
+        GameServer oldServer = new GameServer(0, 1, 128);
+        Thread main = new Thread(oldServer::start, "main");
+        main.start();
+        for (int i = 0; i < 100 && oldServer.getLocalPort() == 0; i++) {
+            Thread.sleep(10);
+        }
+        int port = oldServer.getLocalPort();
+        ServerSocket handoff = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread listener = RoomHandoff.listen(oldServer, handoff);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), handoff.getLocalPort())) {
+            socket.getOutputStream().write("1\n".getBytes(StandardCharsets.UTF_8));
+            new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+        }
+        listener.join(5000);
+        assertTrue(main.isAlive());
+
+        BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        ClientConnection client = new ClientConnection("localhost", port);
+        try {
+            client.startListening(inbox::add);
+            await(inbox, MessageType.SESSION);
+            // Комнаты разморожены на живом планировщике: игра продолжается
+            client.send(new Message(MessageType.JOIN, 3, 0, "Bob", "GUESS_DRAWING"));
+            assertTrue(await(inbox, MessageType.PLAYER_STATUS).getPayload().contains("Bob"));
+        } finally {
+            client.close();
+            oldServer.stop();
+        }
+        main.join(5000);
+        assertFalse(main.isAlive());
+    }
+}
@@ -0,0 +1,111 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.client.PlayerState;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomJournalTest {
+
+    @SuppressWarnings("unchecked")
+    private static Map<Integer, GameState> rooms(GameService service) throws Exception {
+        Field field = GameService.class.getDeclaredField("rooms");
+        field.setAccessible(true);
+        return (Map<Integer, GameState>) field.get(service);
+    }
+
+    private static void populate(GameService service, TestPlayer host, TestPlayer guest) {
+        service.onConnect(host);
+        service.onConnect(guest);
+        service.routeMessage(host, new Message(MessageType.JOIN, 4, 1, "Host", "GUESS_DRAWING"));
+        service.routeMessage(guest, new Message(MessageType.JOIN, 4, 2, "Guest", "GUESS_DRAWING"));
+        service.routeMessage(host, new Message(MessageType.READY, 4, 1, "Host", ""));
+        service.routeMessage(guest, new Message(MessageType.READY, 4, 2, "Guest", ""));
+        service.routeMessage(host, new Message(MessageType.START, 4, 1, "Host", "60"));
+    }
+
+    @Test
+    void roomsShouldSurviveRestart() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        TestPlayer host = new TestPlayer(1, "Host");
+        TestPlayer guest = new TestPlayer(2, "Guest");
+
+        try (RoomJournal journal = RoomJournal.open(dir)) {
+            populate(new GameService(Executors.newScheduledThreadPool(1), journal), host, guest);
+            journal.flush();
+        }
+
+        try (RoomJournal journal = RoomJournal.open(dir)) {
+            GameService restarted = new GameService(Executors.newScheduledThreadPool(1), journal);
+            GameState room = rooms(restarted).get(4);
+
+            assertNotNull(room);
+            assertEquals(RoomStatus.IN_ROUND, room.getStatus());
+            assertEquals(2, room.getPlayers().size());
+            assertEquals(1, room.getHostId());
+            assertEquals(1, room.getDrawerId());
+            assertEquals(2, room.getReadyPlayers().size());
+            assertEquals(2, restarted.getMaxPlayerId());
+
+            TestPlayer reconnecting = new TestPlayer(9, "Player9");
+            String payload = "{\"token\":\"" + guest.getSessionToken() + "\",\"lastSeq\":0}";
+            Player resumed = restarted.resume(reconnecting, new Message(MessageType.RESUME, 0, 0, null, payload));
+
+            assertNotNull(resumed);
+            assertEquals(2, resumed.getId());
+            assertEquals(PlayerState.IN_GAME, resumed.getState());
+        }
+    }
+
+    @Test
+    void snapshotShouldTruncateJournalAndKeepLaterEvents() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        TestPlayer host = new TestPlayer(1, "Host");
+        TestPlayer guest = new TestPlayer(2, "Guest");
+
+        try (RoomJournal journal = RoomJournal.open(dir)) {
+            GameService service = new GameService(Executors.newScheduledThreadPool(1), journal);
+            populate(service, host, guest);
+            journal.snapshot(service::snapshotRooms);
+            journal.flush();
+            assertEquals(0, Files.size(dir.resolve("rooms.journal")));
+
+            service.routeMessage(guest, new Message(MessageType.LEAVE, 4, 2, "Guest", ""));
+            journal.flush();
+        }
+
+        try (RoomJournal journal = RoomJournal.open(dir)) {
+            List<RoomSnapshot> recovered = journal.getRecovered();
+            assertEquals(1, recovered.size());
+            assertEquals(1, recovered.get(0).getPlayers().size());
+            assertEquals("Host", recovered.get(0).getPlayers().get(0).getName());
+        }
+    }
+
+    @Test
+    void tornTailShouldBeIgnored() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        try (RoomJournal journal = RoomJournal.open(dir)) {
+            journal.append(JournalEvent.join(3, GameMode.DEAF_PHONE, new TestPlayer(1, "P1")));
+            journal.flush();
+        }
+        Files.writeString(dir.resolve("rooms.journal"), "{\"seq\":2,\"kind\":\"JO", StandardOpenOption.APPEND);
+
+        try (RoomJournal journal = RoomJournal.open(dir)) {
+            assertEquals(1, journal.getRecovered().size());
+            assertEquals(GameMode.DEAF_PHONE, journal.getRecovered().get(0).getMode());
+        }
+    }
+}
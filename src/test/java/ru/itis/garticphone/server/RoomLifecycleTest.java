@@ -0,0 +1,96 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.client.PlayerState;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomLifecycleTest {
+
+    @SuppressWarnings("unchecked")
+    private static <T> T field(GameService service, String name) throws Exception {
+        Field field = GameService.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return (T) field.get(service);
+    }
+
+    @Test
+    void emptyRoomShouldBeEvictedAfterTtl() {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer player = new TestPlayer(1, "P1");
+        service.routeMessage(player, new Message(MessageType.JOIN, 5, 1, "P1", "GUESS_DRAWING"));
+        service.routeMessage(player, new Message(MessageType.LEAVE, 5, 1, "P1", ""));
+
+        long now = System.nanoTime();
+        service.evictRooms(now);
+        assertEquals(1, service.getRoomCount());
+
+        service.evictRooms(now + TimeUnit.MINUTES.toNanos(2));
+        assertEquals(0, service.getRoomCount());
+    }
+
+    @Test
+    void finishedRoomShouldReleaseSecretWordAndPlayers() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        Map<Integer, GameState> rooms = field(service, "rooms");
+        Map<Integer, String> secretWords = field(service, "secretWords");
+
+        GameState room = new GameState(1, GameMode.GUESS_DRAWING);
+        TestPlayer player = new TestPlayer(1, "P1");
+        player.setState(PlayerState.IN_GAME);
+        room.addPlayer(player);
+        room.setStatus(RoomStatus.IN_ROUND);
+        rooms.put(1, room);
+        secretWords.put(1, "tree");
+
+        Method endRound = GameService.class.getDeclaredMethod("endRound", int.class);
+        endRound.setAccessible(true);
+        endRound.invoke(service, 1);
+
+        assertEquals(RoomStatus.FINISHED, room.getStatus());
+        assertFalse(secretWords.containsKey(1));
+
+        service.evictRooms(System.nanoTime() + TimeUnit.MINUTES.toNanos(11));
+        assertTrue(rooms.isEmpty());
+        assertEquals(RoomStatus.EXPIRED, room.getStatus());
+        assertTrue(player.isConnected());
+    }
+
+    @Test
+    void activeRoomShouldStay() {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer player = new TestPlayer(1, "P1");
+        service.routeMessage(player, new Message(MessageType.JOIN, 5, 1, "P1", "GUESS_DRAWING"));
+
+        service.evictRooms(System.nanoTime() + TimeUnit.MINUTES.toNanos(5));
+        assertEquals(1, service.getRoomCount());
+    }
+
+    @Test
+    void chatInFinishedRoomShouldKeepItAlive() throws Exception {
+        long[] now = {0};
+        GameService service = new GameService(Executors.newScheduledThreadPool(1), null, null, () -> now[0], new Random());
+        TestPlayer player = new TestPlayer(1, "P1");
+        service.routeMessage(player, new Message(MessageType.JOIN, 5, 1, "P1", "GUESS_DRAWING"));
+        Map<Integer, GameState> rooms = field(service, "rooms");
+        rooms.get(5).setStatus(RoomStatus.FINISHED);
+
+        now[0] = TimeUnit.MINUTES.toNanos(9);
+        service.routeMessage(player, new Message(MessageType.CHAT, 5, 1, "P1", "gg"));
+        service.evictRooms(TimeUnit.MINUTES.toNanos(11));
+        assertEquals(1, service.getRoomCount());
+
+        service.evictRooms(TimeUnit.MINUTES.toNanos(20));
+        assertEquals(0, service.getRoomCount());
+    }
+}
@@ -0,0 +1,120 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionResumeTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void disconnectShouldKeepPlayerInRoomUntilResume() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        Field roomsField = GameService.class.getDeclaredField("rooms");
+        roomsField.setAccessible(true);
+        Map<Integer, GameState> rooms = (Map<Integer, GameState>) roomsField.get(service);
+
+        TestPlayer p1 = new TestPlayer(1, "P1");
+        service.onConnect(p1);
+        service.routeMessage(p1, new Message(MessageType.JOIN, 1, 1, "P1", "DEAF_PHONE"));
+        String token = p1.getSessionToken();
+        assertNotNull(token);
+
+        service.onDisconnect(p1);
+        assertTrue(rooms.get(1).getPlayers().contains(p1));
+        assertFalse(p1.isDisconnected());
+
+        TestPlayer reconnecting = new TestPlayer(2, "Player2");
+        service.onConnect(reconnecting);
+        Player resumed = service.resume(reconnecting,
+                new Message(MessageType.RESUME, 0, 0, null, "{\"token\":\"" + token + "\",\"lastSeq\":0}"));
+
+        assertSame(p1, resumed);
+        assertTrue(rooms.get(1).getPlayers().contains(p1));
+    }
+
+    @Test
+    void unknownTokenShouldBeRejected() {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer player = new TestPlayer(1, "P1");
+        service.onConnect(player);
+
+        Player resumed = service.resume(player,
+                new Message(MessageType.RESUME, 0, 0, null, "{\"token\":\"missing\",\"lastSeq\":0}"));
+
+        assertNull(resumed);
+        Message error = player.getSent().get(player.getSent().size() - 1);
+        assertEquals(MessageType.ERROR, error.getType());
+        assertTrue(error.getPayload().contains("410"));
+    }
+
+    @Test
+    void explicitLeaveShouldDropSession() {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer player = new TestPlayer(1, "P1");
+        service.onConnect(player);
+        service.routeMessage(player, new Message(MessageType.JOIN, 1, 1, "P1", "GUESS_DRAWING"));
+        service.routeMessage(player, new Message(MessageType.LEAVE, 1, 1, "P1", ""));
+
+        Player resumed = service.resume(new TestPlayer(2, "P2"), new Message(MessageType.RESUME, 0, 0, null,
+                "{\"token\":\"" + player.getSessionToken() + "\",\"lastSeq\":0}"));
+        assertNull(resumed);
+    }
+
+    @Test
+    void replayShouldFailWhenFramesWereEvicted() {
+        Player player = new Player(1, "P1");
+        for (int i = 0; i < 300; i++) {
+            player.send(new Message(MessageType.CHAT, 1, 1, "P1", "m" + i));
+        }
+
+        assertTrue(player.replayFrom(290));
+        assertTrue(player.replayFrom(300));
+        assertFalse(player.replayFrom(10));
+    }
+
+    @Test
+    void invalidLastSeqShouldBeRejectedBeforeReattaching() {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer p1 = new TestPlayer(1, "P1");
+        service.onConnect(p1);
+        service.routeMessage(p1, new Message(MessageType.JOIN, 1, 1, "P1", "DEAF_PHONE"));
+        String token = p1.getSessionToken();
+        service.onDisconnect(p1);
+
+        TestPlayer reconnecting = new TestPlayer(2, "Player2");
+        service.onConnect(reconnecting);
+        for (String lastSeq : new String[]{"", ",\"lastSeq\":-1", ",\"lastSeq\":1000"}) {
+            Player resumed = service.resume(reconnecting,
+                    new Message(MessageType.RESUME, 0, 0, null, "{\"token\":\"" + token + "\"" + lastSeq + "}"));
+            assertNull(resumed);
+            Message error = reconnecting.getSent().get(reconnecting.getSent().size() - 1);
+            assertEquals(MessageType.ERROR, error.getType());
+        }
+        // Сессия осталась ждать переподключения, а соединение не перешло к игроку
+        assertNull(p1.getConnection());
+        assertSame(p1, service.resume(reconnecting,
+                new Message(MessageType.RESUME, 0, 0, null, "{\"token\":\"" + token + "\",\"lastSeq\":0}")));
+    }
+
+    @Test
+    void replayShouldRejectNegativeOrUnknownFrames() {
+        Player player = new Player(1, "P1");
+        assertFalse(player.replayFrom(-1));
+        assertTrue(player.replayFrom(0));
+
+        player.restartSequence(40);
+        assertEquals(40, player.getSentCount());
+        player.send(new Message(MessageType.CHAT, 1, 1, "P1", "m"));
+        assertTrue(player.replayFrom(40));
+        assertFalse(player.replayFrom(39));
+    }
+}
@@ -0,0 +1,99 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.client.PlayerState;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpectatorHubTest {
+
+    private static class Spectator extends Player {
+        private final List<String> frames = new ArrayList<>();
+
+        Spectator(int id) {
+            super(id, "S" + id);
+        }
+
+        @Override
+        public void sendEncoded(String frame) {
+            frames.add(frame);
+        }
+    }
+
+    @Test
+    void messagesShouldBeBatchedIntoOneFramePerTick() {
+        SpectatorHub hub = new SpectatorHub(Runnable::run);
+        Spectator spectator = new Spectator(1);
+        hub.add(spectator);
+
+        for (int i = 0; i < 3; i++) {
+            hub.offer(new Message(MessageType.DRAW, 1, 2, "P2", "{}"));
+        }
+        hub.publish();
+        hub.publish();
+
+        assertEquals(1, spectator.frames.size());
+        String[] lines = spectator.frames.get(0).split("\n");
+        assertEquals(4, lines.length);
+        Message header = Message.parse(lines[0]);
+        assertEquals(MessageType.SPECTATE, header.getType());
+        assertEquals("{\"frames\":3}", header.getPayload());
+    }
+
+    @Test
+    void laggingSpectatorShouldSkipOverwrittenFrames() {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        SpectatorHub hub = new SpectatorHub(tasks::add);
+        Spectator slow = new Spectator(1);
+        hub.add(slow);
+
+        for (int i = 0; i < SpectatorHub.RING_SIZE + 5; i++) {
+            hub.offer(new Message(MessageType.CHAT, 1, 2, "P2", "m" + i));
+            hub.publish();
+        }
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+
+        assertEquals(SpectatorHub.RING_SIZE, slow.frames.size());
+        assertEquals(5, hub.getSkipped());
+        assertTrue(slow.frames.get(0).contains("\"m5\""));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void spectatorShouldNotCountAsPlayer() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer host = new TestPlayer(1, "Host");
+        TestPlayer guest = new TestPlayer(2, "Guest");
+        TestPlayer viewer = new TestPlayer(3, "Viewer");
+        service.routeMessage(host, new Message(MessageType.JOIN, 1, 1, "Host", "GUESS_DRAWING"));
+        service.routeMessage(guest, new Message(MessageType.JOIN, 1, 2, "Guest", "GUESS_DRAWING"));
+        service.routeMessage(viewer, new Message(MessageType.SPECTATE, 1, 3, "Viewer", null));
+
+        Field roomsField = GameService.class.getDeclaredField("rooms");
+        roomsField.setAccessible(true);
+        GameState room = ((Map<Integer, GameState>) roomsField.get(service)).get(1);
+
+        assertEquals(PlayerState.SPECTATING, viewer.getState());
+        assertEquals(2, room.getPlayers().size());
+        assertTrue(room.getSpectatorHub().contains(viewer));
+
+        service.routeMessage(viewer, new Message(MessageType.CHAT, 1, 3, "Viewer", "hi"));
+        assertEquals(MessageType.ERROR, viewer.getSent().get(viewer.getSent().size() - 1).getType());
+
+        service.handleLeave(viewer);
+        assertFalse(room.getSpectatorHub().contains(viewer));
+    }
+}
@@ -0,0 +1,116 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.client.PlayerState;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StageModeTest {
+
+    @SuppressWarnings("unchecked")
+    private static <T> T field(GameService service, String name) throws Exception {
+        Field field = GameService.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return (T) field.get(service);
+    }
+
+    @Test
+    void chatShouldBeSampledPerTick() {
+        StageRound stage = new StageRound(new Random(1));
+        for (int i = 0; i < 100; i++) {
+            stage.offerChat(new Message(MessageType.CHAT, 1, i, "P" + i, "hi"));
+        }
+
+        List<Message> frames = stage.tick(1);
+
+        assertEquals(StageRound.CHAT_SAMPLE + 1, frames.size());
+        Message board = frames.get(frames.size() - 1);
+        assertEquals(MessageType.LEADERBOARD, board.getType());
+        assertTrue(board.getPayload().contains("\"chatMessages\":100"));
+        assertTrue(stage.tick(1).isEmpty());
+    }
+
+    @Test
+    void correctGuessesShouldScoreOnceAndBeBatched() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        Map<Integer, GameState> rooms = field(service, "rooms");
+        Map<Integer, String> secretWords = field(service, "secretWords");
+
+        GameState room = new GameState(1, GameMode.STAGE);
+        TestPlayer drawer = new TestPlayer(1, "Host");
+        room.addPlayer(drawer);
+        TestPlayer[] guessers = new TestPlayer[50];
+        for (int i = 0; i < guessers.length; i++) {
+            guessers[i] = new TestPlayer(i + 2, "G" + i);
+            guessers[i].setState(PlayerState.IN_GAME);
+            room.addPlayer(guessers[i]);
+        }
+        drawer.setState(PlayerState.IN_GAME);
+        room.resetRound();
+        room.setStatus(RoomStatus.IN_ROUND);
+        rooms.put(1, room);
+        secretWords.put(1, "tree");
+
+        for (TestPlayer guesser : guessers) {
+            service.routeMessage(guesser, new Message(MessageType.GUESS, 1, guesser.getId(), guesser.getName(), "tree"));
+        }
+        service.routeMessage(guessers[0], new Message(MessageType.GUESS, 1, guessers[0].getId(), "G0", "tree"));
+
+        assertTrue(drawer.getSent().isEmpty());
+        assertEquals(1, guessers[0].getSent().size());
+        assertTrue(guessers[0].getSent().get(0).getPayload().contains("\"score\":10"));
+        assertEquals(RoomStatus.IN_ROUND, room.getStatus());
+
+        service.tickStage(room);
+
+        assertEquals(1, drawer.getSent().size());
+        Message board = drawer.getSent().get(0);
+        assertEquals(MessageType.LEADERBOARD, board.getType());
+        assertTrue(board.getPayload().contains("\"guessed\":50"));
+        assertTrue(board.getPayload().startsWith("{\"leaders\":[{\"name\":\"G0\",\"score\":10}"));
+    }
+
+    @Test
+    void guesserChatShouldWaitForTick() {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TestPlayer host = new TestPlayer(1, "Host");
+        TestPlayer guest = new TestPlayer(2, "Guest");
+        service.routeMessage(host, new Message(MessageType.JOIN, 1, 1, "Host", "STAGE"));
+        service.routeMessage(guest, new Message(MessageType.JOIN, 1, 2, "Guest", "STAGE"));
+
+        service.routeMessage(guest, new Message(MessageType.CHAT, 1, 2, "Guest", "hello"));
+
+        assertTrue(host.getSent().isEmpty());
+    }
+
+    @Test
+    void lateJoinerShouldGuessInRunningRound() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        Map<Integer, GameState> rooms = field(service, "rooms");
+        Map<Integer, String> secretWords = field(service, "secretWords");
+        GameState room = new GameState(1, GameMode.STAGE);
+        TestPlayer drawer = new TestPlayer(1, "Host");
+        drawer.setState(PlayerState.IN_GAME);
+        room.addPlayer(drawer);
+        room.resetRound();
+        room.setStatus(RoomStatus.IN_ROUND);
+        rooms.put(1, room);
+        secretWords.put(1, "tree");
+
+        TestPlayer late = new TestPlayer(2, "Late");
+        service.routeMessage(late, new Message(MessageType.JOIN, 1, 2, "Late", "STAGE"));
+        service.routeMessage(late, new Message(MessageType.GUESS, 1, 2, "Late", "tree"));
+
+        assertTrue(late.isInGame());
+        assertTrue(late.getSent().stream().anyMatch(m -> m.getPayload() != null && m.getPayload().contains("\"score\":10")));
+    }
+}
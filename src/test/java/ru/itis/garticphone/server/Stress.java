@@ -0,0 +1,76 @@
+package ru.itis.garticphone.server;
+
+import ru.itis.garticphone.client.Player;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// Все потоки стартуют по одной защёлке и гоняют шаг по кругу; первое исключение любого потока валит тест
+final class Stress {
+
+    interface Step {
+        void run(int thread, int iteration) throws Exception;
+    }
+
+    // Потокобезопасный приёмник: считает кадры по типам и пропускает их через настоящую очередь игрока
+    static final class CountingPlayer extends Player {
+        private final Map<MessageType, LongAdder> received = new ConcurrentHashMap<>();
+
+        CountingPlayer(int id) {
+            super(id, "Stress" + id);
+        }
+
+        @Override
+        public void send(Message message) {
+            received.computeIfAbsent(message.getType(), type -> new LongAdder()).increment();
+            super.send(message);
+        }
+
+        long count(MessageType type) {
+            LongAdder adder = received.get(type);
+            return adder == null ? 0 : adder.sum();
+        }
+    }
+
+    private Stress() {
+    }
+
+    static void run(int threads, int iterations, Step step) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations && failure.get() == null; i++) {
+                        step.run(thread, i);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "stress-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+            if (worker.isAlive()) {
+                throw new AssertionError("Stress worker hung: " + worker.getName());
+            }
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Stress step failed", failure.get());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.TestPlayer;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StrokeLogTest {
+
+    private static String segment(int x1, int y1, int x2, int y2) {
+        return "{\"x1\":" + x1 + ",\"y1\":" + y1 + ",\"x2\":" + x2 + ",\"y2\":" + y2
+                + ",\"color\":\"red\",\"size\":2}";
+    }
+
+    @Test
+    void connectedSegmentsShouldBeMergedIntoOnePolyline() {
+        StrokeLog log = new StrokeLog();
+        for (int i = 0; i < StrokeLog.COMPACT_THRESHOLD; i++) {
+            log.append(segment(i, i, i + 1, i + 1));
+        }
+
+        assertTrue(log.getTail().isEmpty());
+        assertEquals(StrokeLog.COMPACT_THRESHOLD + 1, log.getSnapshotPoints());
+        String snapshot = log.getSnapshotPayload();
+        assertTrue(snapshot.startsWith("[{\"points\":[0,0,1,1,2,2"));
+        assertEquals(1, snapshot.split("\"points\"").length - 1);
+    }
+
+    @Test
+    void clearShouldTruncateLog() {
+        StrokeLog log = new StrokeLog();
+        log.append(segment(0, 0, 5, 5));
+        log.append("{\"clear\":true}");
+
+        assertTrue(log.isEmpty());
+        assertEquals("[]", log.getSnapshotPayload());
+    }
+
+    @Test
+    void snapshotShouldStayBounded() {
+        StrokeLog log = new StrokeLog();
+        for (int i = 0; i < StrokeLog.MAX_SNAPSHOT_POINTS * 2; i++) {
+            log.append(segment(i, 0, i + 1, 0));
+        }
+        log.compact();
+
+        assertTrue(log.getSnapshotPoints() <= StrokeLog.MAX_SNAPSHOT_POINTS);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void lateJoinerShouldReceiveSnapshotAndTail() throws Exception {
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        Field roomsField = GameService.class.getDeclaredField("rooms");
+        roomsField.setAccessible(true);
+        Map<Integer, GameState> rooms = (Map<Integer, GameState>) roomsField.get(service);
+
+        GameState room = new GameState(1, GameMode.GUESS_DRAWING);
+        rooms.put(1, room);
+        for (int i = 0; i < StrokeLog.COMPACT_THRESHOLD + 3; i++) {
+            room.getStrokeLog().append(segment(i, 0, i + 1, 0));
+        }
+
+        TestPlayer late = new TestPlayer(7, "Late");
+        service.routeMessage(late, new Message(MessageType.JOIN, 1, 7, "Late", "GUESS_DRAWING"));
+
+        long snapshots = late.getSent().stream()
+                .filter(m -> m.getType() == MessageType.CANVAS_SNAPSHOT)
+                .count();
+        long tail = late.getSent().stream()
+                .filter(m -> m.getType() == MessageType.DRAW)
+                .count();
+        assertEquals(1, snapshots);
+        assertEquals(3, tail);
+    }
+}
@@ -0,0 +1,92 @@
+package ru.itis.garticphone.server;
+
+import org.junit.jupiter.api.Test;
+import ru.itis.garticphone.client.ClientConnection;
+import ru.itis.garticphone.common.Message;
+import ru.itis.garticphone.common.MessageType;
+import ru.itis.garticphone.common.TrafficCapture;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrafficReplayTest {
+
+    @Test
+    void capturedTrafficShouldReplayIntoService() throws Exception {
+        Path file = Files.createTempFile("traffic", ".capture");
+        TrafficCapture capture = new TrafficCapture(file);
+        GameServer server = new GameServer(0, 1, 128);
+        server.setCapture(capture);
+        server.open();
+
+        BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        ClientConnection client = new ClientConnection("localhost", server.getLocalPort());
+        try {
+            client.startListening(inbox::add);
+            client.send(new Message(MessageType.JOIN, 12, 0, "Alice", "GUESS_DRAWING"));
+            client.send(new Message(MessageType.CHAT, 12, 0, "Alice", "hi"));
+            for (int i = 0; i < 3; i++) {
+                assertNotNull(inbox.poll(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            client.close();
+            capture.flush();
+            server.stop();
+        }
+
+        List<TrafficCapture.Frame> frames = TrafficCapture.read(file);
+        assertEquals(2, frames.stream().filter(frame -> !frame.isClose()).count());
+        assertTrue(frames.get(0).line().contains("JOIN"));
+        assertTrue(frames.get(1).nanos() >= frames.get(0).nanos());
+
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TrafficReplay.Result result = new TrafficReplay(frames, 0).replay(service);
+        assertEquals(1, result.connections());
+        assertEquals(1, service.getRoomCount());
+        assertTrue(result.delivered() >= 2);
+    }
+
+    @Test
+    void malformedFrameShouldBeCountedAndCloseRecorded() throws Exception {
+        Path file = Files.createTempFile("traffic", ".capture");
+        TrafficCapture capture = new TrafficCapture(file);
+        GameServer server = new GameServer(0, 1, 128);
+        server.setCapture(capture);
+        server.open();
+
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write("{\"type\":\"JOIN\",\"roomId\":3,\"playerName\":\"Bob\",\"payload\":\"GUESS_DRAWING\"}\nnot json\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            // Сервер сам закрывает соединение после нечитаемого кадра
+            socket.setSoTimeout(5000);
+            InputStream in = socket.getInputStream();
+            while (in.read() >= 0) {
+            }
+        } finally {
+            server.stop();
+            capture.flush();
+        }
+
+        List<TrafficCapture.Frame> frames = TrafficCapture.read(file);
+        assertEquals(3, frames.size());
+        assertTrue(frames.get(2).isClose());
+
+        GameService service = new GameService(Executors.newScheduledThreadPool(1));
+        TrafficReplay.Result result = new TrafficReplay(frames, 0).replay(service);
+        assertEquals(1, result.malformed());
+        assertEquals(1, result.connections());
+    }
+}
@@ -0,0 +1,200 @@
+package ru.itis.garticphone.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Однопоточный планировщик с виртуальным временем: задачи выполняются только внутри advance(), время идёт скачками
+public class VirtualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final PriorityQueue<Task<?>> queue = new PriorityQueue<>();
+    private long now;
+    private long sequence;
+    private long executed;
+    private boolean shutdown;
+
+    private final class Task<V> implements RunnableScheduledFuture<V> {
+        private final Callable<V> callable;
+        private final long period;
+        private final long order = sequence++;
+        private long time;
+        private boolean cancelled;
+        private boolean done;
+        private V result;
+        private Throwable failure;
+
+        Task(Callable<V> callable, long time, long period) {
+            this.callable = callable;
+            this.time = time;
+            this.period = period;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                result = callable.call();
+            } catch (Throwable e) {
+                failure = e;
+                done = true;
+                return;
+            }
+            if (period > 0 && !cancelled) {
+                time += period;
+                queue.add(this);
+            } else {
+                done = true;
+            }
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return period > 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - now, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Task<?> task = (Task<?>) other;
+            int byTime = Long.compare(time, task.time);
+            return byTime != 0 ? byTime : Long.compare(order, task.order);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+            queue.remove(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done || cancelled;
+        }
+
+        @Override
+        public V get() throws ExecutionException {
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return result;
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws ExecutionException {
+            return get();
+        }
+    }
+
+    public long nanoTime() {
+        return now;
+    }
+
+    public long getExecuted() {
+        return executed;
+    }
+
+    public int getPending() {
+        return queue.size();
+    }
+
+    // Выполняет по порядку все задачи, срок которых наступает за это время, и переводит часы вперёд
+    public void advance(long amount, TimeUnit unit) {
+        long target = now + unit.toNanos(amount);
+        Task<?> task;
+        while ((task = queue.peek()) != null && task.time <= target) {
+            queue.poll();
+            now = Math.max(now, task.time);
+            executed++;
+            task.run();
+        }
+        now = target;
+    }
+
+    private <V> ScheduledFuture<V> enqueue(Callable<V> callable, long delay, long period, TimeUnit unit) {
+        Task<V> task = new Task<>(callable, now + Math.max(0, unit.toNanos(delay)), unit.toNanos(period));
+        queue.add(task);
+        return task;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return enqueue(() -> {
+            command.run();
+            return null;
+        }, delay, 0, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return enqueue(callable, delay, 0, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return enqueue(() -> {
+            command.run();
+            return null;
+        }, initialDelay, Math.max(1, period), unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return scheduleAtFixedRate(command, initialDelay, delay, unit);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> pending = new ArrayList<>(queue);
+        queue.clear();
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && queue.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return isTerminated();
+    }
+}